@@ -0,0 +1,19 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 每个线程独立的消息游标，避免多线程基准在共享计数器上产生竞争。
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+    private int index;
+
+    int next(int size) {
+        int i = index;
+        index = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedDictionary;
+import io.github.lsyf.log4j2.desensitization.DesensitizedField;
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import io.github.lsyf.log4j2.desensitization.ScannerStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大词典(数据治理目录中的字段名)的构建耗时与扫描吞吐。
+ * <p>
+ * {@link #build()} 为一次完整的规则集构建，{@link #format()} 为构建后的扫描；
+ * 构建后自动机占用的内存与构建耗时在每次 fork 开始时打印，与 MXBean 中的 matcherBytes、buildMillis 相同。
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DictionaryBenchmark {
+
+    private static final String[] PREFIXES = {"cust", "user", "acct", "emp", "ord", "pay", "loan", "card"};
+    private static final String[] SUFFIXES = {"mobile", "id_no", "name", "addr", "email", "card_no", "birth", "salary"};
+
+    /**
+     * 词典中的关键字数量
+     */
+    @Param({"1000", "10000", "100000"})
+    public int keywordCount;
+
+    /**
+     * 单条消息长度（字符数）
+     */
+    @Param({"512"})
+    public int messageLength;
+
+    /**
+     * 命中密度：每1000个字符平均出现的 keyword=value 个数
+     */
+    @Param({"2"})
+    public double hitsPerKiloChar;
+
+    private String[] keywords;
+    private String[] messages;
+    private DesensitizedReplacement replacement;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        keywords = keywords(keywordCount);
+        List<String> hits = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 256; i++) {
+            hits.add(keywords[random.nextInt(keywords.length)]);
+        }
+        messages = Workload.messages(random, hits, messageLength, hitsPerKiloChar, false);
+        replacement = build();
+        ScannerStats stats = replacement.getStats();
+        System.out.println("keywords=" + stats.getKeywordCount() + ", matcherBytes=" + stats.getMatcherBytes()
+                + ", buildMillis=" + stats.getBuildMillis());
+    }
+
+    /**
+     * 形如 cust_mobile_17 的字段名，前缀、后缀组合后按序号区分
+     */
+    static String[] keywords(int count) {
+        String[] keywords = new String[count];
+        for (int i = 0; i < count; i++) {
+            keywords[i] = PREFIXES[i % PREFIXES.length] + '_' + SUFFIXES[(i / PREFIXES.length) % SUFFIXES.length]
+                    + '_' + Integer.toString(i / (PREFIXES.length * SUFFIXES.length), 36);
+        }
+        return keywords;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public DesensitizedReplacement build() {
+        DesensitizedDictionary dictionary = DesensitizedDictionary.newBuilder().setName("catalog").setKeywords(keywords)
+                .setRule(DesensitizedField.newBuilder().setContent("num").setSkipHead(3).setSkipTail(4).build())
+                .build();
+        return DesensitizedReplacement.newBuilder().setEnable(true)
+                .setDictionaries(new DesensitizedDictionary[]{dictionary}).build();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String format() {
+        String message = messages[index++ & (Workload.MESSAGE_POOL - 1)];
+        return replacement.format(message);
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.MyPatternLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MyPatternLayout#encode} 端到端开销：格式化、脱敏、编码到 {@link NullDestination}。
+ * <p>
+ * desensitized=false 时不配置脱敏，作为同一pattern下的基线。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutBenchmark extends Workload {
+
+    static final String PATTERN = "[%d{yyyy-MM-dd HH:mm:ss.SSS}][%-5level][%thread] %logger - %msg%n";
+
+    @Param({"true", "false"})
+    public boolean desensitized;
+
+    private MyPatternLayout layout;
+    private LogEvent[] events;
+
+    @State(Scope.Thread)
+    public static class Destination {
+        final NullDestination destination = new NullDestination();
+    }
+
+    @Setup
+    public void setUp() {
+        setUpWorkload();
+        MyPatternLayout.Builder builder = MyPatternLayout.newBuilder()
+                .withPattern(PATTERN)
+                .withCharset(StandardCharsets.UTF_8);
+        if (desensitized) {
+            builder.withDesensitizedReplacement(replacement());
+        }
+        layout = builder.build();
+        events = new LogEvent[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            events[i] = Log4jLogEvent.newBuilder()
+                    .setLoggerName(LayoutBenchmark.class.getName())
+                    .setLoggerFqcn(LayoutBenchmark.class.getName())
+                    .setLevel(Level.INFO)
+                    .setThreadName("main")
+                    .setTimeMillis(System.currentTimeMillis())
+                    .setMessage(new SimpleMessage(messages[i]))
+                    .build();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long encode(final Cursor cursor, final Destination destination) {
+        layout.encode(events[cursor.next(events.length)], destination.destination);
+        return destination.destination.written();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long encodeMultiThreaded(final Cursor cursor, final Destination destination) {
+        layout.encode(events[cursor.next(events.length)], destination.destination);
+        return destination.destination.written();
+    }
+}
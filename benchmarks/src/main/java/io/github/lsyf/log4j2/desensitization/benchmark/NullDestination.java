@@ -0,0 +1,45 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBufferDestination} 的替身：丢弃所有数据，只统计写入字节数，用于排除真实IO的干扰。
+ */
+public class NullDestination implements ByteBufferDestination {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+    private long written;
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer drain(final ByteBuffer buf) {
+        buf.flip();
+        written += buf.remaining();
+        buf.clear();
+        return buf;
+    }
+
+    @Override
+    public void writeBytes(final ByteBuffer data) {
+        written += data.remaining();
+        data.position(data.limit());
+    }
+
+    @Override
+    public void writeBytes(final byte[] data, final int offset, final int length) {
+        written += length;
+    }
+
+    /**
+     * 返回累计写入的字节数，包括仍在缓冲区中未drain的部分
+     */
+    public long written() {
+        return written + buffer.position();
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedField;
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 很长的单条日志的耗时：{@code parallelism=0} 为顺序扫描，其他值为并行扫描使用的线程数，
+ * 在多核机器上比较同一消息在不同线程数下的耗时。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelScanBenchmark {
+
+    /**
+     * 单条消息长度（字符数）
+     */
+    @Param({"1048576", "8388608"})
+    public int messageLength;
+
+    /**
+     * 并行线程数，0为顺序扫描
+     */
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    /**
+     * 命中密度：每1000个字符平均出现的 keyword=value 个数
+     */
+    @Param({"2", "20"})
+    public double hitsPerKiloChar;
+
+    private DesensitizedReplacement replacement;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        List<String> keywords = Workload.keywords(16);
+        DesensitizedField[] fields = new DesensitizedField[keywords.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = DesensitizedField.newBuilder().setName(keywords.get(i)).setContent("num").setSkipHead(3)
+                    .setSkipTail(4).build();
+        }
+        replacement = DesensitizedReplacement.newBuilder().setFields(fields).setEnable(true)
+                .setParallelThreshold(parallelism > 0 ? 65536 : 0).setParallelism(parallelism).build();
+        //拼接多条消息，得到一条很长的日志
+        String[] pieces = Workload.messages(new Random(42), keywords, 4096, hitsPerKiloChar, false);
+        StringBuilder sb = new StringBuilder(messageLength);
+        for (int i = 0; sb.length() < messageLength; i++) {
+            sb.append(pieces[i % pieces.length]);
+        }
+        sb.setLength(messageLength);
+        message = sb.toString();
+    }
+
+    @Benchmark
+    public String format() {
+        return replacement.format(message);
+    }
+}
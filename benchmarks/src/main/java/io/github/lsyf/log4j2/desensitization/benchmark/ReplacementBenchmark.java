@@ -0,0 +1,60 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DesensitizedReplacement} 的两种入口：返回新String的 format 与原地脱敏的 mask。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplacementBenchmark extends Workload {
+
+    private DesensitizedReplacement replacement;
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final StringBuilder sb = new StringBuilder(8 * 1024);
+    }
+
+    @Setup
+    public void setUp() {
+        setUpWorkload();
+        replacement = replacement();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String format(final Cursor cursor) {
+        return replacement.format(messages[cursor.next(messages.length)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String formatMultiThreaded(final Cursor cursor) {
+        return replacement.format(messages[cursor.next(messages.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean mask(final Cursor cursor, final Buffer buffer) {
+        StringBuilder sb = buffer.sb;
+        sb.setLength(0);
+        sb.append(messages[cursor.next(messages.length)]);
+        return replacement.mask(sb);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean maskMultiThreaded(final Cursor cursor, final Buffer buffer) {
+        StringBuilder sb = buffer.sb;
+        sb.setLength(0);
+        sb.append(messages[cursor.next(messages.length)]);
+        return replacement.mask(sb);
+    }
+}
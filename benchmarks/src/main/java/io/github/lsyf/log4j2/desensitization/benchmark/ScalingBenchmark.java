@@ -0,0 +1,121 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.MyPatternLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.appender.OutputStreamAppender;
+import org.apache.logging.log4j.core.async.AsyncLoggerContext;
+import org.apache.logging.log4j.core.config.AbstractConfiguration;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.spi.ExtendedLogger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经过完整日志链路的吞吐量与延迟：logger -> appender -> {@link MyPatternLayout} -> 丢弃输出的流。
+ * <p>
+ * setup 为 sync(同步 appender，各线程在同一个 OutputStreamManager 上加锁输出)、
+ * asyncAppender(所有线程写入 {@link AsyncAppender} 的阻塞队列，由一个后台线程格式化)、
+ * asyncLogger(所有 logger 为异步 logger，需要 disruptor)。
+ * 线程数由 JMH 的 {@code -t} 或 {@link ScalingHarness} 指定，用于观察线程数增加时的扩展性。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark extends Workload {
+
+    static final String SYNC = "sync";
+    static final String ASYNC_APPENDER = "asyncAppender";
+    static final String ASYNC_LOGGER = "asyncLogger";
+
+    @Param({SYNC, ASYNC_APPENDER, ASYNC_LOGGER})
+    public String setup;
+
+    @Param({"true", "false"})
+    public boolean desensitized;
+
+    private LoggerContext context;
+    private ExtendedLogger logger;
+
+    @Setup
+    public void setUp() {
+        setUpWorkload();
+        String name = "scaling-" + setup;
+        context = ASYNC_LOGGER.equals(setup) ? new AsyncLoggerContext(name) : new LoggerContext(name);
+        context.start(new Configuration(context));
+        logger = context.getLogger(ScalingBenchmark.class.getName());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void log(final Cursor cursor) {
+        logger.info(messages[cursor.next(messages.length)]);
+    }
+
+    /**
+     * 只有一个 root logger 的配置，输出到丢弃数据的流
+     */
+    private final class Configuration extends AbstractConfiguration {
+
+        private Configuration(final LoggerContext context) {
+            super(context, ConfigurationSource.NULL_SOURCE);
+            setName(context.getName());
+        }
+
+        @Override
+        protected void doConfigure() {
+            MyPatternLayout.Builder layout = MyPatternLayout.newBuilder()
+                    .withConfiguration(this)
+                    .withPattern(LayoutBenchmark.PATTERN)
+                    .withCharset(StandardCharsets.UTF_8);
+            if (desensitized) {
+                layout.withDesensitizedReplacement(replacement());
+            }
+            Appender appender = OutputStreamAppender.newBuilder()
+                    .setName("null")
+                    .setLayout(layout.build())
+                    .setTarget(new NullOutputStream())
+                    .withImmediateFlush(false)
+                    .setConfiguration(this)
+                    .build();
+            appender.start();
+            addAppender(appender);
+            if (ASYNC_APPENDER.equals(setup)) {
+                appender = AsyncAppender.newBuilder()
+                        .setName("async")
+                        .setAppenderRefs(new AppenderRef[]{AppenderRef.createAppenderRef("null", null, null)})
+                        .setBlocking(true)
+                        .setConfiguration(this)
+                        .build();
+                appender.start();
+                addAppender(appender);
+            }
+            LoggerConfig root = getRootLogger();
+            root.setLevel(Level.INFO);
+            root.addAppender(appender, null, null);
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 1、2、4 … N 个线程依次运行 {@link ScalingBenchmark}，输出每种 setup 的吞吐量、相对单线程的加速比和延迟分位数。
+ * <p>
+ * 参数：[最大线程数，默认为CPU核数] [name=value ...] [-- JMH选项]，name=value 覆盖基准的参数，多个值以逗号分隔，
+ * {@code --} 之后的参数交给JMH，如
+ * {@code java -cp target/benchmarks.jar io.github.lsyf.log4j2.desensitization.benchmark.ScalingHarness 8 setup=sync,asyncAppender -- -wi 1 -i 3}
+ * <p>
+ * 未指定时固定负载为 512 字符、16 个关键字、每千字符 2 个命中的 ascii 消息，使用 trie 引擎。
+ */
+public class ScalingHarness {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        int max = Runtime.getRuntime().availableProcessors();
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("messageLength", "512");
+        params.put("keywordCount", "16");
+        params.put("hitsPerKiloChar", "2");
+        params.put("content", "ascii");
+        params.put("engine", "trie");
+        int i = 0;
+        for (; i < args.length && !"--".equals(args[i]); i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            } else {
+                max = Integer.parseInt(arg);
+            }
+        }
+        CommandLineOptions jmh = new CommandLineOptions(Arrays.copyOfRange(args, Math.min(i + 1, args.length), args.length));
+        List<Integer> threads = new ArrayList<>();
+        for (int t = 1; t < max; t *= 2) {
+            threads.add(t);
+        }
+        threads.add(max);
+
+        List<RunResult> results = new ArrayList<>();
+        for (int t : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(jmh)
+                    .include(ScalingBenchmark.class.getName() + ".log$")
+                    .threads(t);
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                options.param(param.getKey(), param.getValue().split(","));
+            }
+            results.addAll(new Runner(options.build()).run());
+        }
+        report(results);
+    }
+
+    /**
+     * 按 setup、desensitized 分组，每个线程数一行
+     */
+    static void report(Collection<RunResult> results) {
+        Map<String, Map<Integer, Result<?>>> throughput = new LinkedHashMap<>();
+        Map<String, Map<Integer, Statistics>> latency = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String key = params.getParam("setup") + " desensitized=" + params.getParam("desensitized");
+            if (params.getMode() == Mode.Throughput) {
+                throughput.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(params.getThreads(), result.getPrimaryResult());
+            } else if (params.getMode() == Mode.SampleTime) {
+                latency.computeIfAbsent(key, k -> new LinkedHashMap<>())
+                        .put(params.getThreads(), result.getPrimaryResult().getStatistics());
+            }
+        }
+        System.out.println();
+        System.out.printf("%-36s %7s %14s %8s %10s %10s %10s%n",
+                "setup", "threads", "ops/us", "speedup", "p50(us)", "p99(us)", "p99.9(us)");
+        for (Map.Entry<String, Map<Integer, Result<?>>> entry : throughput.entrySet()) {
+            Result<?> single = entry.getValue().get(1);
+            for (Map.Entry<Integer, Result<?>> row : entry.getValue().entrySet()) {
+                double score = row.getValue().getScore();
+                Statistics stats = latency.getOrDefault(entry.getKey(), new LinkedHashMap<>()).get(row.getKey());
+                System.out.printf("%-36s %7d %14.3f %8s %10s %10s %10s%n",
+                        entry.getKey(), row.getKey(), score,
+                        single == null ? "-" : String.format("%.2fx", score / single.getScore()),
+                        percentile(stats, 50), percentile(stats, 99), percentile(stats, 99.9));
+            }
+        }
+    }
+
+    private static String percentile(Statistics stats, double p) {
+        return stats == null ? "-" : String.format("%.3f", stats.getPercentile(p));
+    }
+}
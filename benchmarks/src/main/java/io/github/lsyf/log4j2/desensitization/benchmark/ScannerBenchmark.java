@@ -0,0 +1,37 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.LoggingScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LoggingScanner#processLog(String)} 的吞吐量，单线程与多线程共享同一个扫描器。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark extends Workload {
+
+    private LoggingScanner scanner;
+
+    @Setup
+    public void setUp() {
+        setUpWorkload();
+        scanner = scanner();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String processLog(final Cursor cursor) {
+        return scanner.processLog(messages[cursor.next(messages.length)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String processLogMultiThreaded(final Cursor cursor) {
+        return scanner.processLog(messages[cursor.next(messages.length)]);
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.lsyf.log4j2.desensitization.benchmark;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedField;
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import io.github.lsyf.log4j2.desensitization.LoggingScanner;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试的公共负载：按参数生成关键字规则和一批日志消息。
+ * <p>
+ * 规则和消息在 {@link Scope#Benchmark} 范围内共享，多线程基准下所有线程使用同一个编译好的扫描器。
+ * 消息生成使用固定种子，保证每次运行负载一致。
+ */
+@State(Scope.Benchmark)
+public class Workload {
+
+    static final int MESSAGE_POOL = 1024;
+
+    private static final String[] BASE_KEYWORDS = {
+            "phone", "name", "idNo", "email", "bankCard", "address", "mobile", "password", "token", "certNo"
+    };
+
+    /**
+     * 单条消息长度（字符数）
+     */
+    @Param({"64", "512", "4096"})
+    public int messageLength;
+
+    /**
+     * 配置的关键字数量
+     */
+    @Param({"2", "16", "128"})
+    public int keywordCount;
+
+    /**
+     * 命中密度：每1000个字符平均出现的 keyword=value 个数
+     */
+    @Param({"0", "2", "20"})
+    public double hitsPerKiloChar;
+
+    /**
+     * 填充内容：ascii 或 cjk
+     */
+    @Param({"ascii", "cjk"})
+    public String content;
+
+    /**
+     * 关键字匹配引擎
+     */
+    @Param({LoggingScanner.ENGINE_TRIE, LoggingScanner.ENGINE_AHOCORASICK})
+    public String engine;
+
+    public List<String> keywords;
+    public String[] messages;
+
+    /**
+     * 由子类的 {@link Setup} 方法首先调用，JMH不保证父类与子类Setup方法的执行顺序
+     */
+    protected void setUpWorkload() {
+        keywords = keywords(keywordCount);
+        messages = messages(new Random(42), keywords, messageLength, hitsPerKiloChar, "cjk".equals(content));
+    }
+
+    public List<LoggingScanner.Config> configs() {
+        List<LoggingScanner.Config> configs = new ArrayList<>();
+        configs.add(new LoggingScanner.Config("__default__", "en|num", 3, 2, '*', " ", 5));
+        for (String keyword : keywords) {
+            configs.add(new LoggingScanner.Config(keyword, "num", null, null, null, null, null));
+        }
+        return configs;
+    }
+
+    public LoggingScanner scanner() {
+        return new LoggingScanner(true, configs(), engine);
+    }
+
+    public DesensitizedReplacement replacement() {
+        List<DesensitizedField> fields = new ArrayList<>();
+        fields.add(DesensitizedField.newBuilder().setName("__default__").setContent("en|num").setC('*')
+                .setIgnoreSymbols(" ").setSkipHead(3).setSkipTail(2).setMaxMissed(5).build());
+        for (String keyword : keywords) {
+            fields.add(DesensitizedField.newBuilder().setName(keyword).setContent("num").build());
+        }
+        return DesensitizedReplacement.newBuilder().setFields(fields.toArray(new DesensitizedField[0])).setEnable(true)
+                .setEngine(engine).build();
+    }
+
+    static List<String> keywords(int count) {
+        List<String> keywords = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keywords.add(i < BASE_KEYWORDS.length ? BASE_KEYWORDS[i] : "field" + i);
+        }
+        return keywords;
+    }
+
+    static String[] messages(Random random, List<String> keywords, int length, double hitsPerKiloChar, boolean cjk) {
+        String[] messages = new String[MESSAGE_POOL];
+        double hitProbability = hitsPerKiloChar / 1000;
+        for (int m = 0; m < messages.length; m++) {
+            StringBuilder sb = new StringBuilder(length + 32);
+            while (sb.length() < length) {
+                if (random.nextDouble() < hitProbability * 8) {
+                    //一个 keyword=value 约占8个填充字符的位置
+                    sb.append(keywords.get(random.nextInt(keywords.size()))).append('=');
+                    for (int i = 0; i < 11; i++) {
+                        sb.append((char) ('0' + random.nextInt(10)));
+                    }
+                    sb.append(' ');
+                } else {
+                    appendFiller(random, sb, cjk);
+                }
+            }
+            sb.setLength(length);
+            messages[m] = sb.toString();
+        }
+        return messages;
+    }
+
+    private static void appendFiller(Random random, StringBuilder sb, boolean cjk) {
+        int wordLength = 2 + random.nextInt(6);
+        for (int i = 0; i < wordLength; i++) {
+            if (cjk) {
+                sb.append((char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00)));
+            } else {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        sb.append(cjk && random.nextBoolean() ? '，' : ' ');
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.lsyf.log4j2.desensitization.sanitizer;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.util.PluginManager;
+import org.apache.logging.log4j.core.config.plugins.util.PluginType;
+import org.apache.logging.log4j.core.config.xml.XmlConfiguration;
+import org.apache.logging.log4j.core.lookup.StrLookup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 只读取 log4j2.xml 中的脱敏规则集：解析 properties 与所有 {@code <Desensitized>}(包括 layout 内嵌的)，
+ * 不创建 appender、logger，不会打开或滚动配置中的日志文件。
+ */
+final class RulesConfiguration extends XmlConfiguration {
+
+    static {
+        //打包为单个jar时只保留了 log4j-core 的插件清单，脱敏插件按包名查找
+        PluginManager.addPackage(DesensitizedReplacement.class.getPackage().getName());
+    }
+
+    private RulesConfiguration(final ConfigurationSource source) {
+        super(null, source);
+    }
+
+    /**
+     * 加载配置中名为 name 的规则集
+     *
+     * @throws IllegalArgumentException 配置中没有该规则集
+     */
+    static DesensitizedReplacement load(final Path file, final String name) throws IOException {
+        RulesConfiguration configuration = new RulesConfiguration(ConfigurationSource.fromUri(file.toUri()));
+        configuration.initialize();
+        DesensitizedReplacement replacement = DesensitizedReplacement.lookup(configuration, name);
+        if (replacement == null) {
+            throw new IllegalArgumentException("No enabled Desensitized rules named '" + name + "' in " + file);
+        }
+        return replacement;
+    }
+
+    @Override
+    protected void doConfigure() {
+        if (rootNode.hasChildren() && rootNode.getChildren().get(0).getName().equalsIgnoreCase("Properties")) {
+            final Node first = rootNode.getChildren().get(0);
+            createConfiguration(first, null);
+            if (first.getObject() != null) {
+                final StrLookup lookup = first.getObject();
+                getStrSubstitutor().setVariableResolver(lookup);
+                getConfigurationStrSubstitutor().setVariableResolver(lookup);
+            }
+        }
+        build(rootNode);
+    }
+
+    private void build(final Node node) {
+        for (Node child : node.getChildren()) {
+            PluginType<?> type = child.getType();
+            if (type != null && type.getPluginClass() == DesensitizedReplacement.class) {
+                //规则集在创建时注册到配置中，按名称查找
+                createConfiguration(child, null);
+            } else {
+                build(child);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,345 @@
+package io.github.lsyf.log4j2.desensitization.sanitizer;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 离线脱敏已有的日志文件，使用 log4j2.xml 中同一套 {@code <Desensitized>} 规则。
+ * <p>
+ * 输入文件按块内存映射，块边界对齐到换行；各块在工作线程上逐行脱敏，按原顺序写出。
+ * 同时处理的块数不超过线程数的两倍，内存占用与文件大小无关。没有字符被替换的行直接写出映射的原始字节，
+ * 其中不可解码的字节保持原样；有字符被替换的行重新编码，行内不可解码的字节替换为 U+FFFD，行数见 {@link #getRewrittenMalformedLines()}。
+ * 按单字节 {@code '\n'} 切分行，只支持 ASCII 兼容的字符集(UTF-8、GBK、ISO-8859-1 等)。
+ * 离线处理没有 logger、marker 和级别，规则集的 {@code <DesensitizedScope>} 不生效。
+ */
+public final class Sanitizer {
+
+    /**
+     * 默认的块大小(字节)
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final String USAGE = "Usage: java -jar sanitizer.jar -c <log4j2.xml> [-r <rules>] [-t <threads>]"
+            + " [-o <output dir>] [--charset <charset>] [--chunk <bytes>] <file>...";
+
+    private final DesensitizedReplacement replacement;
+    private final Charset charset;
+    private final int threads;
+    private final int chunkSize;
+    private final LongAdder rewrittenMalformedLines = new LongAdder();
+
+    public Sanitizer(final DesensitizedReplacement replacement, final Charset charset, final int threads, final int chunkSize) {
+        if (replacement == null) {
+            throw new IllegalArgumentException("replacement is required");
+        }
+        if (!isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("Unsupported charset " + charset
+                    + ", ASCII characters must be encoded as themselves so that lines end with a single byte '\\n'");
+        }
+        this.replacement = replacement;
+        this.charset = charset;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * ASCII 字符都编码为同值的单字节。UTF-16、UTF-32 中 0x0A 可能是一个字符的一半，EBCDIC 的换行不是 0x0A
+     */
+    static boolean isAsciiCompatible(final Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        char[] ascii = new char[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) i;
+        }
+        byte[] bytes = new String(ascii).getBytes(charset);
+        if (bytes.length != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 有字符被替换、且含不可解码字节的行数，这些字节在输出中为 U+FFFD
+     */
+    public long getRewrittenMalformedLines() {
+        return rewrittenMalformedLines.sum();
+    }
+
+    /**
+     * 脱敏 input 写入 output，output 已存在时覆盖
+     *
+     * @return 输入的字节数
+     */
+    public long sanitize(final Path input, final Path output) throws IOException {
+        if (Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("Output must not be the input file " + input);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "sanitizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            final Deque<Future<ByteBuffer[]>> pending = new ArrayDeque<>();
+            long position = 0;
+            while (position < size) {
+                final long start = position;
+                final long end = lineEnd(in, Math.min(size, start + chunkSize), size);
+                pending.add(executor.submit(() -> process(in, start, end - start)));
+                position = end;
+                if (pending.size() >= threads * 2) {
+                    write(out, pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.poll());
+            }
+            return size;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 从 position 开始的第一个换行之后的位置，没有换行时为文件末尾
+     */
+    private static long lineEnd(final FileChannel in, long position, final long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int n = in.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * 逐行脱敏一个块
+     *
+     * @return 按顺序写出的字节：没有字符被替换的行为映射的原始字节，有字符被替换的行为重新编码的字节
+     */
+    private ByteBuffer[] process(final FileChannel in, final long position, final long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Line too long at offset " + position + ": " + length + " bytes");
+        }
+        ByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        List<ByteBuffer> parts = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        final int limit = mapped.limit();
+        int copied = 0;//之前的字节已加入 parts
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && mapped.get(end) != '\n') {
+                end++;
+            }
+            if (start < end) {
+                boolean malformed = false;
+                line.setLength(0);
+                try {
+                    line.append(decoder.decode(slice(mapped, start, end)));
+                } catch (CharacterCodingException e) {
+                    //只有被脱敏时才需要解码结果
+                    malformed = true;
+                    line.setLength(0);
+                    line.append(charset.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .decode(slice(mapped, start, end)));
+                }
+                if (replacement.mask(line, 0, line.length())) {
+                    if (malformed) {
+                        rewrittenMalformedLines.increment();
+                    }
+                    parts.add(slice(mapped, copied, start));
+                    parts.add(encoder.encode(CharBuffer.wrap(line)));
+                    copied = end;
+                }
+            }
+            start = end + 1;
+        }
+        if (parts.isEmpty()) {
+            return new ByteBuffer[]{mapped};
+        }
+        parts.add(slice(mapped, copied, limit));
+        return parts.toArray(new ByteBuffer[0]);
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int from, final int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice;
+    }
+
+    private static void write(final FileChannel out, final Future<ByteBuffer[]> chunk) throws IOException {
+        ByteBuffer[] buffers;
+        try {
+            buffers = chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 解析参数并处理所有文件，输出每个文件与总的吞吐量和各规则的替换次数
+     *
+     * @return 进程退出码
+     */
+    static int run(String[] args) throws IOException {
+        Path config = null;
+        String rules = DesensitizedReplacement.DEFAULT_NAME;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDir = null;
+        Charset charset = StandardCharsets.UTF_8;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(Paths.get(arg));
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "-c":
+                case "--config":
+                    config = Paths.get(value);
+                    break;
+                case "-r":
+                case "--rules":
+                    rules = value;
+                    break;
+                case "-t":
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-o":
+                case "--output":
+                    outputDir = Paths.get(value);
+                    break;
+                case "--charset":
+                    charset = Charset.forName(value);
+                    break;
+                case "--chunk":
+                    chunkSize = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (config == null || files.isEmpty()) {
+            throw new IllegalArgumentException("Config and at least one file are required");
+        }
+        DesensitizedReplacement replacement = RulesConfiguration.load(config, rules);
+        Sanitizer sanitizer = new Sanitizer(replacement, charset, threads, chunkSize);
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+        long totalBytes = 0;
+        long totalNanos = 0;
+        for (Path file : files) {
+            Path output = outputDir != null ? outputDir.resolve(file.getFileName().toString())
+                    : file.resolveSibling(file.getFileName() + ".masked");
+            long begin = System.nanoTime();
+            long bytes = sanitizer.sanitize(file, output);
+            long nanos = System.nanoTime() - begin;
+            totalBytes += bytes;
+            totalNanos += nanos;
+            System.out.println(file + " -> " + output + ": " + throughput(bytes, nanos));
+        }
+        if (files.size() > 1) {
+            System.out.println("total: " + throughput(totalBytes, totalNanos));
+        }
+        if (sanitizer.getRewrittenMalformedLines() > 0) {
+            System.out.println("masked lines with undecodable bytes (written as U+FFFD): " + sanitizer.getRewrittenMalformedLines());
+        }
+        System.out.println("masks by rule:");
+        for (Map.Entry<String, Long> entry : replacement.getStats().getRuleMasks().entrySet()) {
+            System.out.println("  " + entry.getKey() + "=" + entry.getValue());
+        }
+        return 0;
+    }
+
+    private static String throughput(long bytes, long nanos) {
+        double mb = bytes / (1024.0 * 1024.0);
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("%.1f MB in %.2f s, %.1f MB/s", mb, seconds, mb / seconds);
+    }
+
+}
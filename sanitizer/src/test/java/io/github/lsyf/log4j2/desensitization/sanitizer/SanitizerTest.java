@@ -0,0 +1,155 @@
+package io.github.lsyf.log4j2.desensitization.sanitizer;
+
+import io.github.lsyf.log4j2.desensitization.DesensitizedReplacement;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class SanitizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path config(File logFile) throws Exception {
+        String xml = "<Configuration status=\"WARN\">"
+                + "<Properties><Property name=\"head\">3</Property></Properties>"
+                + "<Desensitized name=\"audit\" enable=\"true\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"0\" skipTail=\"0\" c=\"#\"/>"
+                + "</Desensitized>"
+                + "<Appenders><File name=\"file\" fileName=\"" + logFile.getAbsolutePath() + "\">"
+                + "<MyPatternLayout pattern=\"%m%n\"><Desensitized enable=\"true\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"${head}\" skipTail=\"4\"/>"
+                + "<DesensitizedField name=\"name\" content=\"lang|en\" skipHead=\"1\" skipTail=\"0\"/>"
+                + "<DesensitizedPattern type=\"idcard\"/>"
+                + "</Desensitized></MyPatternLayout></File></Appenders>"
+                + "<Loggers><Root level=\"info\"><AppenderRef ref=\"file\"/></Root></Loggers>"
+                + "</Configuration>";
+        Path path = folder.newFile("log4j2.xml").toPath();
+        Files.write(path, xml.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Test
+    public void testSanitize() throws Exception {
+        File logFile = new File(folder.getRoot(), "app.log");
+        Path config = config(logFile);
+        DesensitizedReplacement replacement = RulesConfiguration.load(config, DesensitizedReplacement.DEFAULT_NAME);
+        //只读取规则，不创建appender
+        Assert.assertFalse(logFile.exists());
+        Assert.assertEquals("phone=138****5678", replacement.format("phone=13812345678"));
+
+        Random random = new Random(7);
+        String[] lines = {"phone=13812345678 name=张三丰", "nothing here", "", "id 11010519491231002X €",
+                "name=zhang\r", "a very long line without keywords but long enough to cross several chunks ......"};
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String line = lines[random.nextInt(lines.length)];
+            input.append(line).append('\n');
+            expected.append(replacement.format(line)).append('\n');
+        }
+        //最后一行没有换行
+        input.append("phone=13812345678");
+        expected.append("phone=138****5678");
+        Path in = folder.newFile("in.log").toPath();
+        Files.write(in, input.toString().getBytes(StandardCharsets.UTF_8));
+        Path out = folder.getRoot().toPath().resolve("out.log");
+        for (int chunk : new int[]{1, 100, 4096, Sanitizer.DEFAULT_CHUNK_SIZE}) {
+            long bytes = new Sanitizer(replacement, StandardCharsets.UTF_8, 3, chunk).sanitize(in, out);
+            Assert.assertEquals(Files.size(in), bytes);
+            Assert.assertEquals("chunk " + chunk, expected.toString(), new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+        }
+        Assert.assertTrue(replacement.getStats().getRuleMasks().get("phone") > 0);
+
+        //空文件
+        Path empty = folder.newFile("empty.log").toPath();
+        new Sanitizer(replacement, StandardCharsets.UTF_8, 2, 10).sanitize(empty, out);
+        Assert.assertEquals(0, Files.size(out));
+    }
+
+    /**
+     * 不可解码的字节：未脱敏的行原样写出，脱敏的行替换为 U+FFFD 并计数
+     */
+    @Test
+    public void testMalformedInput() throws Exception {
+        DesensitizedReplacement replacement = RulesConfiguration.load(config(new File(folder.getRoot(), "app.log")),
+                DesensitizedReplacement.DEFAULT_NAME);
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] invalid = {(byte) 0xFF, 'a', (byte) 0xC3, (byte) 0xE4, (byte) 0xB8, '\n'};
+        for (int i = 0; i < 50; i++) {
+            input.write(invalid);
+            expected.write(invalid);
+            input.write("phone=13812345678 张三\n".getBytes(StandardCharsets.UTF_8));
+            expected.write("phone=138****5678 张三\n".getBytes(StandardCharsets.UTF_8));
+            input.write(new byte[]{(byte) 0xC3, ' '});
+            input.write("phone=13812345678\n".getBytes(StandardCharsets.UTF_8));
+            expected.write("� phone=138****5678\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Path in = folder.newFile("invalid.log").toPath();
+        Files.write(in, input.toByteArray());
+        Path out = folder.getRoot().toPath().resolve("out.log");
+        for (int chunk : new int[]{1, 64, Sanitizer.DEFAULT_CHUNK_SIZE}) {
+            Sanitizer sanitizer = new Sanitizer(replacement, StandardCharsets.UTF_8, 2, chunk);
+            sanitizer.sanitize(in, out);
+            Assert.assertArrayEquals("chunk " + chunk, expected.toByteArray(), Files.readAllBytes(out));
+            Assert.assertEquals(50, sanitizer.getRewrittenMalformedLines());
+        }
+    }
+
+    /**
+     * 0x0A 可能是一个字符的一半的字符集无法按换行分块
+     */
+    @Test
+    public void testCharset() throws Exception {
+        DesensitizedReplacement replacement = RulesConfiguration.load(config(new File(folder.getRoot(), "app.log")),
+                DesensitizedReplacement.DEFAULT_NAME);
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_16, StandardCharsets.UTF_16LE, Charset.forName("UTF-32"),
+                Charset.forName("IBM037")}) {
+            Assert.assertFalse(charset.name(), Sanitizer.isAsciiCompatible(charset));
+            try {
+                new Sanitizer(replacement, charset, 1, 100);
+                Assert.fail(charset.name());
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains(charset.name()));
+            }
+        }
+        for (String name : new String[]{"UTF-8", "GBK", "GB18030", "ISO-8859-1", "US-ASCII"}) {
+            Assert.assertTrue(name, Sanitizer.isAsciiCompatible(Charset.forName(name)));
+        }
+        Path in = folder.newFile("gbk.log").toPath();
+        Files.write(in, "phone=13812345678 name=张三丰\nnothing\n".getBytes("GBK"));
+        Path out = folder.getRoot().toPath().resolve("gbk.masked");
+        new Sanitizer(replacement, Charset.forName("GBK"), 2, 10).sanitize(in, out);
+        Assert.assertEquals("phone=138****5678 name=张**\nnothing\n", new String(Files.readAllBytes(out), "GBK"));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        Path config = config(new File(folder.getRoot(), "app.log"));
+        Path in = folder.newFile("in.log").toPath();
+        Files.write(in, "phone=13812345678\nname=zhang\n".getBytes(StandardCharsets.UTF_8));
+        Path dir = folder.getRoot().toPath().resolve("masked");
+        Assert.assertEquals(0, Sanitizer.run(new String[]{"-c", config.toString(), "-r", "audit", "-t", "2",
+                "-o", dir.toString(), in.toString()}));
+        Assert.assertEquals("phone=###########\nname=zhang\n",
+                new String(Files.readAllBytes(dir.resolve("in.log")), StandardCharsets.UTF_8));
+
+        try {
+            Sanitizer.run(new String[]{"-c", config.toString(), "-r", "missing", in.toString()});
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.ahocorasick.trie.Emit;
+import org.ahocorasick.trie.Trie;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 org.ahocorasick 的匹配引擎，作为 {@link KeywordAutomaton} 的备选。每次扫描都会创建 Emit 对象。
+ */
+final class AhoCorasickMatcher implements KeywordMatcher {
+
+    private final Trie trie;
+    private final Trie anyTrie;//不要求整词，命中即停止
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final Set<Character> chars = new HashSet<>();//关键字中的字符，小写
+    private final int maxLength;
+
+    AhoCorasickMatcher(String[] keywords) {
+        int longest = 0;
+        for (int i = 0; i < keywords.length; i++) {
+            indexes.put(keywords[i], i);
+            for (int j = 0; j < keywords[i].length(); j++) {
+                chars.add(Character.toLowerCase(keywords[i].charAt(j)));
+            }
+            longest = Math.max(longest, keywords[i].length());
+        }
+        this.maxLength = longest;
+        this.trie = Trie.builder().addKeywords(keywords).onlyWholeWords().ignoreCase().build();
+        this.anyTrie = Trie.builder().addKeywords(keywords).ignoreCase().stopOnHit().build();
+    }
+
+    @Override
+    public void match(CharSequence text, int from, int to, int scanFrom, int scanTo, MatchList matches) {
+        CharSequence region = from == 0 && to == text.length() ? text : text.subSequence(from, to);
+        Collection<Emit> emits = trie.parseText(region);
+        for (Emit emit : emits) {
+            Integer index = indexes.get(emit.getKeyword());
+            int start = from + emit.getStart();
+            int end = from + emit.getEnd();
+            if (index != null && start >= scanFrom && end < scanTo) {
+                matches.add(start, end, index);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        return anyTrie.containsMatch(text);
+    }
+
+    @Override
+    public boolean isKeywordChar(char c) {
+        return chars.contains(Character.toLowerCase(c));
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+}
@@ -0,0 +1,200 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 编译后的字符集合，配置时构建，之后只读。
+ * <p>
+ * BMP内的字符用一个65536位的位图表示，判断只需一次数组读取；BMP外的码点(如扩展区汉字)用有序区间表示。
+ * 每个实例占8KB，同一配置字符串构建的实例全局共用，上千个字段(如词典)只有几种 content 时不重复占用内存。
+ */
+final class CharClass {
+
+    private static final int BMP_WORDS = 1 << 10;//65536 / 64
+
+    static final CharClass EMPTY = new CharClass(new long[BMP_WORDS], new int[0]);
+
+    private static final int MAX_INTERNED = 256;//共用实例的最大数量，超过后新的配置字符串每次构建
+    private static final ConcurrentHashMap<String, CharClass> CONTENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CharClass> SYMBOLS = new ConcurrentHashMap<>();
+
+    private final long[] bmp;
+    private final int[] supplementary;//[from0, to0, from1, to1 ...]，闭区间
+    private final char[] ranges;//BMP内除代理字符外的成员组成的闭区间，没有或区间过多时为null，用于批量判断
+
+    private CharClass(long[] bmp, int[] supplementary) {
+        this.bmp = bmp;
+        this.supplementary = supplementary;
+        this.ranges = ranges(bmp);
+    }
+
+    private static char[] ranges(long[] bmp) {
+        char[] ranges = new char[CharRuns.MAX_RANGES * 2];
+        int n = 0;
+        int lo = -1;
+        for (int c = 0; c <= Character.MAX_VALUE + 1; c++) {
+            boolean member = c <= Character.MAX_VALUE && !Character.isSurrogate((char) c)
+                    && (bmp[c >>> 6] & (1L << c)) != 0;
+            if (member && lo < 0) {
+                lo = c;
+            } else if (!member && lo >= 0) {
+                if (n == ranges.length) {
+                    return null;
+                }
+                ranges[n++] = (char) lo;
+                ranges[n++] = (char) (c - 1);
+                lo = -1;
+            }
+        }
+        return n == 0 ? null : Arrays.copyOf(ranges, n);
+    }
+
+    /**
+     * 按content配置构建，如 num|en|x
+     */
+    static CharClass ofContent(String content) {
+        if (content == null) {
+            return EMPTY;
+        }
+        return intern(CONTENTS, content, CharClass::buildContent);
+    }
+
+    private static CharClass buildContent(String content) {
+        Builder builder = new Builder();
+        for (String s : content.split("\\|")) {
+            if (s.length() == 1 || (s.length() == 2 && s.codePointCount(0, 2) == 1)) {
+                builder.add(s.codePointAt(0), s.codePointAt(0));
+                continue;
+            }
+            LoggingScanner.CharType type = LoggingScanner.CharType.nameOf(s.trim().toLowerCase());
+            if (type == null) {
+                continue;
+            }
+            switch (type) {
+                case num:
+                    builder.add('0', '9');
+                    break;
+                case low:
+                    builder.add('a', 'z');
+                    break;
+                case up:
+                    builder.add('A', 'Z');
+                    break;
+                case en:
+                    builder.add('a', 'z');
+                    builder.add('A', 'Z');
+                    break;
+                case cn:
+                    builder.add(19968, 171941);
+                    break;
+                case lang:
+                    builder.add(128, Character.MAX_CODE_POINT);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按字符列表构建，每个字符(码点)即一个成员
+     */
+    static CharClass ofSymbols(String symbols) {
+        if (symbols == null || symbols.isEmpty()) {
+            return EMPTY;
+        }
+        return intern(SYMBOLS, symbols, CharClass::buildSymbols);
+    }
+
+    private static CharClass buildSymbols(String symbols) {
+        Builder builder = new Builder();
+        for (int i = 0; i < symbols.length(); ) {
+            int cp = symbols.codePointAt(i);
+            builder.add(cp, cp);
+            i += Character.charCount(cp);
+        }
+        return builder.build();
+    }
+
+    private static CharClass intern(ConcurrentHashMap<String, CharClass> interned, String key,
+                                    Function<String, CharClass> build) {
+        CharClass cached = interned.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        CharClass built = build.apply(key);
+        if (interned.size() < MAX_INTERNED) {
+            CharClass previous = interned.putIfAbsent(key, built);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return built;
+    }
+
+    boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * 从from开始连续属于本集合的BMP字符之后的位置，遇到代理字符时停止，由调用方按码点判断
+     */
+    int skipRun(CharSequence text, int from, int to) {
+        if (ranges != null && CharRuns.ACCELERATED) {
+            return CharRuns.skipRun(ranges, text, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c) || !contains(c)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    char[] ranges() {
+        return ranges;
+    }
+
+    boolean contains(char c) {
+        return (bmp[c >>> 6] & (1L << c)) != 0;
+    }
+
+    boolean contains(int codePoint) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return contains((char) codePoint);
+        }
+        for (int i = 0; i < supplementary.length; i += 2) {
+            if (supplementary[i] <= codePoint && codePoint <= supplementary[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Builder {
+        private final long[] bmp = new long[BMP_WORDS];
+        private int[] supplementary = new int[0];
+        private boolean empty = true;
+
+        void add(int from, int to) {
+            empty = false;
+            for (int c = from; c <= to && c < Character.MIN_SUPPLEMENTARY_CODE_POINT; c++) {
+                bmp[c >>> 6] |= 1L << c;
+            }
+            if (to >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                int n = supplementary.length;
+                supplementary = Arrays.copyOf(supplementary, n + 2);
+                supplementary[n] = Math.max(from, Character.MIN_SUPPLEMENTARY_CODE_POINT);
+                supplementary[n + 1] = to;
+            }
+        }
+
+        CharClass build() {
+            return empty ? EMPTY : new CharClass(bmp, supplementary);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.lsyf.log4j2.desensitization;
+
+/**
+ * 批量跳过字符：查找关键字首字符、计算内容字符连续出现的长度。
+ * <p>
+ * 本类为 Java 8 的逐字符实现，{@link #ACCELERATED} 为false，调用方使用各自原有的循环。
+ * 发布的jar为 multi-release jar，Java 17 及以上使用 META-INF/versions/17 中的同名类：
+ * 启动参数包含 {@code --add-modules jdk.incubator.vector} 时一次比较16~32个字符。
+ */
+final class CharRuns {
+
+    /**
+     * 是否可以批量比较，为false时调用方使用各自原有的循环。不能是编译期常量，否则调用方编译时会被内联
+     */
+    static final boolean ACCELERATED = available();
+
+    /**
+     * 批量查找时最多支持的字符数
+     */
+    static final int MAX_CHARS = 8;
+
+    /**
+     * 批量判断时最多支持的区间数
+     */
+    static final int MAX_RANGES = 4;
+
+    private CharRuns() {
+    }
+
+    private static boolean available() {
+        return false;
+    }
+
+    /**
+     * @param chars 要查找的字符，不超过 {@link #MAX_CHARS} 个
+     * @return [from, to) 中第一个属于 chars 的位置，没有则返回to
+     */
+    static int indexOfAny(char[] chars, CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            for (char x : chars) {
+                if (c == x) {
+                    return i;
+                }
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @param ranges 闭区间 [lo0, hi0, lo1, hi1 ...]，不超过 {@link #MAX_RANGES} 个，不含代理字符
+     * @return [from, to) 中第一个不在区间内的位置，都在区间内时返回to
+     */
+    static int skipRun(char[] ranges, CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!inRanges(ranges, text.charAt(i))) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static boolean inRanges(char[] ranges, char c) {
+        for (int r = 0; r < ranges.length; r += 2) {
+            if (ranges[r] <= c && c <= ranges[r + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
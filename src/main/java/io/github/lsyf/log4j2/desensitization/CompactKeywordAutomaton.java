@@ -0,0 +1,309 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 关键字很多(如数据治理目录中上万个字段名)时使用的 Aho-Corasick 自动机，匹配结果与 {@link KeywordAutomaton} 相同。
+ * <p>
+ * 平铺转移表的大小为 状态数 x 字母表大小，上万个关键字时达到数百MB，且构建时需要同样大小的临时表。
+ * 这里只有根状态保留完整的转移行，其他状态的转移按 CSR 格式存放：每个状态的子节点在 edgeClasses/edgeTargets
+ * 中连续且按分类升序，没有转移时沿失败指针回退，每个字符平摊仍为常数次查找；每个状态约占22字节。
+ * <p>
+ * 构建时按折叠后的关键字排序，相邻关键字共享公共前缀，依次追加状态即得到trie，不需要按状态分配转移表。
+ * 与 {@link KeywordAutomaton} 相同，转移值为目标状态，目标状态有输出时取反存储。
+ */
+final class CompactKeywordAutomaton implements IdentifierMatcher.Automaton {
+
+    private static final int LINEAR_EDGES = 8;//子节点不超过该数量时顺序查找，否则二分查找
+
+    private final char[][] classPages;//字符 -> 分类，与 KeywordAutomaton 相同
+    private final int[] root;//根状态的转移，0为回到根状态
+    private final int[] edgeStart;//状态i的子节点为 [edgeStart[i], edgeStart[i + 1])
+    private final char[] edgeClasses;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[] own;//状态自身对应的关键字下标，无则-1
+    private final int[] dictLink;//沿失败链最近的有输出状态，无则-1
+    private final int[] lengths;//关键字长度
+    private final int maxLength;
+
+    CompactKeywordAutomaton(String[] keywords) {
+        this(keywords, KeywordAutomaton.classes(keywords));
+    }
+
+    /**
+     * @param classes 字母表，见 {@link KeywordAutomaton#classes(String[])}
+     */
+    CompactKeywordAutomaton(String[] keywords, Map<Character, Character> classes) {
+        this.classPages = KeywordAutomaton.pages(classes);
+        int alphabet = classes.size() + 1;
+
+        //1. 关键字折叠为分类序列后排序，相同的关键字保持原顺序，先出现的下标优先
+        char[][] folded = new char[keywords.length][];
+        this.lengths = new int[keywords.length];
+        int totalChars = 0;
+        int longest = 0;
+        Integer[] order = new Integer[keywords.length];
+        for (int k = 0; k < keywords.length; k++) {
+            String keyword = keywords[k];
+            folded[k] = new char[keyword.length()];
+            for (int i = 0; i < keyword.length(); i++) {
+                folded[k][i] = classOf(keyword.charAt(i));
+            }
+            lengths[k] = keyword.length();
+            totalChars += keyword.length();
+            longest = Math.max(longest, keyword.length());
+            order[k] = k;
+        }
+        this.maxLength = longest;
+        Arrays.sort(order, (a, b) -> compare(folded[a], folded[b]));
+
+        //2. trie：与前一个关键字的公共前缀沿用已有状态，其余部分追加新状态
+        int[] parent = new int[totalChars + 1];
+        char[] label = new char[totalChars + 1];
+        int[] ownOut = new int[totalChars + 1];
+        Arrays.fill(ownOut, -1);
+        int[] path = new int[longest + 1];
+        char[] previous = new char[0];
+        int states = 1;
+        for (int k : order) {
+            char[] keyword = folded[k];
+            int common = 0;
+            while (common < keyword.length && common < previous.length && keyword[common] == previous[common]) {
+                common++;
+            }
+            int s = path[common];
+            for (int i = common; i < keyword.length; i++) {
+                int t = states++;
+                parent[t] = s;
+                label[t] = keyword[i];
+                path[i + 1] = t;
+                s = t;
+            }
+            if (ownOut[s] == -1) {
+                ownOut[s] = k;
+            }
+            previous = keyword;
+        }
+
+        //3. 子节点按父状态归并，同一父状态的子节点按创建顺序即分类升序
+        this.edgeStart = new int[states + 1];
+        for (int t = 1; t < states; t++) {
+            edgeStart[parent[t] + 1]++;
+        }
+        for (int s = 0; s < states; s++) {
+            edgeStart[s + 1] += edgeStart[s];
+        }
+        this.edgeClasses = new char[states - 1];
+        int[] targets = new int[states - 1];
+        int[] fill = Arrays.copyOf(edgeStart, states);
+        for (int t = 1; t < states; t++) {
+            int e = fill[parent[t]]++;
+            edgeClasses[e] = label[t];
+            targets[e] = t;
+        }
+        this.root = new int[alphabet];
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            root[edgeClasses[e]] = targets[e];
+        }
+
+        //4. BFS 计算失败指针与输出链，转移值改为有输出时取反
+        this.fail = new int[states];
+        this.dictLink = new int[states];
+        Arrays.fill(dictLink, -1);
+        this.edgeTargets = targets;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue[tail++] = targets[e];
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int t = targets[e];
+                int f = s == 0 ? 0 : plain(step(fail[s], edgeClasses[e]));
+                fail[t] = s == 0 ? 0 : f;
+                dictLink[t] = ownOut[fail[t]] != -1 ? fail[t] : dictLink[fail[t]];
+                queue[tail++] = t;
+            }
+        }
+        this.own = Arrays.copyOf(ownOut, states);
+        //按BFS顺序处理，取反前所有状态的失败指针都已确定
+        for (int e = 0; e < targets.length; e++) {
+            targets[e] = encode(targets[e]);
+        }
+        for (int a = 0; a < alphabet; a++) {
+            root[a] = encode(root[a]);
+        }
+    }
+
+    private static int compare(char[] a, char[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private int encode(int t) {
+        return t != 0 && (own[t] != -1 || dictLink[t] != -1) ? ~t : t;
+    }
+
+    private static int plain(int t) {
+        return t < 0 ? ~t : t;
+    }
+
+    private char classOf(char c) {
+        return classPages[c >>> 8][c & 0xFF];
+    }
+
+    /**
+     * 状态 s 读入分类 a 后的状态，没有转移时沿失败指针回退
+     */
+    private int step(int s, int a) {
+        while (s != 0) {
+            int t = child(s, a);
+            if (t != 0) {
+                return t;
+            }
+            s = fail[s];
+        }
+        return root[a];
+    }
+
+    /**
+     * @return 子节点，没有时为0
+     */
+    private int child(int s, int a) {
+        int lo = edgeStart[s];
+        int hi = edgeStart[s + 1];
+        if (hi - lo <= LINEAR_EDGES) {
+            for (int e = lo; e < hi; e++) {
+                if (edgeClasses[e] == a) {
+                    return edgeTargets[e];
+                }
+            }
+            return 0;
+        }
+        hi--;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = edgeClasses[mid];
+            if (c < a) {
+                lo = mid + 1;
+            } else if (c > a) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void match(CharSequence text, int from, int to, int scanFrom, int scanTo, MatchList matches) {
+        final char[][] pages = this.classPages;
+        int s = 0;
+        for (int i = scanFrom; i < scanTo; i++) {
+            char c = text.charAt(i);
+            int a = pages[c >>> 8][c & 0xFF];
+            if (a == 0) {
+                s = 0;
+                continue;
+            }
+            int t = s == 0 ? root[a] : step(s, a);
+            if (t >= 0) {
+                s = t;
+                continue;
+            }
+            s = ~t;
+            emit(text, from, to, i, s, matches);
+        }
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        final char[][] pages = this.classPages;
+        int s = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            int a = pages[c >>> 8][c & 0xFF];
+            if (a == 0) {
+                s = 0;
+                continue;
+            }
+            s = s == 0 ? root[a] : step(s, a);
+            if (s < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isKeywordChar(char c) {
+        return classOf(c) != 0;
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return KeywordAutomaton.pagesBytes(classPages) + 2L * edgeClasses.length
+                + 4L * (root.length + edgeStart.length + edgeTargets.length + fail.length + own.length
+                + dictLink.length + lengths.length);
+    }
+
+    @Override
+    public int next(int state, char c) {
+        int a = classOf(c);
+        if (a == 0) {
+            return 0;
+        }
+        return state == 0 ? root[a] : step(state, a);
+    }
+
+    @Override
+    public int output(int state) {
+        return own[state] != -1 ? state : dictLink[state];
+    }
+
+    @Override
+    public int nextOutput(int output) {
+        return dictLink[output];
+    }
+
+    @Override
+    public int keyword(int output) {
+        return own[output];
+    }
+
+    @Override
+    public int length(int keyword) {
+        return lengths[keyword];
+    }
+
+    private void emit(CharSequence text, int from, int to, int end, int state, MatchList matches) {
+        //关键字之后的字符为字母则不是完整单词，该位置的所有输出都不成立
+        if (end + 1 < to && Character.isAlphabetic(text.charAt(end + 1))) {
+            return;
+        }
+        int s = own[state] != -1 ? state : dictLink[state];
+        while (s != -1) {
+            int k = own[s];
+            int start = end - lengths[k] + 1;
+            if (start == from || !Character.isAlphabetic(text.charAt(start - 1))) {
+                matches.add(start, end, k);
+            }
+            s = dictLink[s];
+        }
+    }
+
+}
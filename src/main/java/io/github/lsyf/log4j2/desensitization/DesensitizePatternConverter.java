@@ -0,0 +1,124 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.impl.LocationAware;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.pattern.ConverterKeys;
+import org.apache.logging.log4j.core.pattern.LogEventPatternConverter;
+import org.apache.logging.log4j.core.pattern.MessagePatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternFormatter;
+import org.apache.logging.log4j.core.pattern.PatternParser;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.List;
+
+/**
+ * 只对子pattern的输出脱敏，可用于原生的 PatternLayout，如 {@code %d [%t] %p %c - %desensitize{%m}%n}。
+ * <p>
+ * 第二个参数为规则集名称，缺省为 {@value DesensitizedReplacement#DEFAULT_NAME}，即 {@code <Desensitized name="...">}。
+ * 规则集可直接声明在 configuration 下，也可以是某个 MyPatternLayout 中的配置。
+ */
+@Plugin(name = "desensitize", category = PatternConverter.CATEGORY)
+@ConverterKeys({"desensitize", "dm"})
+public final class DesensitizePatternConverter extends LogEventPatternConverter implements LocationAware {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    private final Configuration configuration;
+    private final String name;
+    private final PatternFormatter[] formatters;
+    private volatile DesensitizedReplacement replacement;
+    private volatile boolean missingReported;
+
+    private DesensitizePatternConverter(final Configuration configuration, final String name,
+                                        final List<PatternFormatter> formatters) {
+        super("desensitize", "desensitize");
+        this.configuration = configuration;
+        this.name = name;
+        this.formatters = formatters.toArray(new PatternFormatter[0]);
+    }
+
+    /**
+     * @param options pattern 与可选的规则集名称
+     */
+    public static DesensitizePatternConverter newInstance(final Configuration config, final String[] options) {
+        if (options.length < 1 || options.length > 2) {
+            LOGGER.error("Incorrect number of options on desensitize. Expected 1 or 2, received " + options.length);
+            return null;
+        }
+        if (options[0] == null) {
+            LOGGER.error("No pattern supplied on desensitize");
+            return null;
+        }
+        final String name = options.length > 1 && options[1] != null ? options[1].trim() : DesensitizedReplacement.DEFAULT_NAME;
+        final PatternParser parser = PatternLayout.createPatternParser(config);
+        final List<PatternFormatter> formatters = parser.parse(options[0]);
+        return new DesensitizePatternConverter(config, name, formatters);
+    }
+
+    @Override
+    public void format(final LogEvent event, final StringBuilder toAppendTo) {
+        final int start = toAppendTo.length();
+        final DesensitizedReplacement named = resolve();
+        final DesensitizedReplacement r = named != null ? named.resolve(event) : null;
+        final LoggingScanner scanner = r != null ? r.getScanner() : null;
+        final LogEvent mapped = scanner != null ? r.maskMap(scanner, event) : null;
+        final LogEvent source = mapped != null ? mapped : event;
+        //MapMessage 已按键脱敏时只扫描消息以外的输出
+        final boolean clean = mapped != null || scanner != null && r.isClean(scanner, source.getMessage());
+        int cleanFrom = -1;
+        int cleanTo = -1;
+        for (PatternFormatter formatter : formatters) {
+            final int before = toAppendTo.length();
+            formatter.format(source, toAppendTo);
+            if (clean && cleanFrom < 0 && formatter.getConverter() instanceof MessagePatternConverter) {
+                cleanFrom = before;
+                cleanTo = toAppendTo.length();
+            }
+        }
+        if (scanner != null) {
+            scanner.mask(toAppendTo, start, toAppendTo.length(), cleanFrom, cleanTo);
+        }
+    }
+
+    /**
+     * 规则集在第一次输出时查找，不依赖配置中元素的声明顺序
+     */
+    private DesensitizedReplacement resolve() {
+        DesensitizedReplacement r = replacement;
+        if (r == null) {
+            r = DesensitizedReplacement.lookup(configuration, name);
+            if (r != null) {
+                replacement = r;
+            } else if (!missingReported) {
+                missingReported = true;
+                LOGGER.error("No Desensitized rules named '{}' for %desensitize, output is not masked", name);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public boolean handlesThrowable() {
+        for (PatternFormatter formatter : formatters) {
+            if (formatter.handlesThrowable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean requiresLocation() {
+        for (PatternFormatter formatter : formatters) {
+            if (formatter.requiresLocation()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
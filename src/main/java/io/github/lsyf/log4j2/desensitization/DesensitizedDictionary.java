@@ -0,0 +1,159 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 关键字词典：从外部文件加载大量字段名(如数据治理目录中的上万个列名)，所有关键字共用同一个规则。
+ * <p>
+ * 文件为UTF-8文本，每行一个关键字，空行与 # 开头的行忽略。规则为内嵌的 {@code <DesensitizedField>}，其 name 不生效；
+ * 未配置时使用规则集的默认配置。与 {@code <DesensitizedField>} 同名时以单独配置的字段为准。
+ * 词典在配置加载时读取一次，关键字很多时自动使用 {@link CompactKeywordAutomaton}。
+ * <pre>
+ * &lt;DesensitizedDictionary name="catalog" file="conf/sensitive-fields.txt"&gt;
+ *     &lt;DesensitizedField content="num|en" skipHead="2" skipTail="2"/&gt;
+ * &lt;/DesensitizedDictionary&gt;
+ * </pre>
+ */
+@Plugin(name = "DesensitizedDictionary", category = Node.CATEGORY, printObject = true)
+public final class DesensitizedDictionary {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    private static final String DEFAULT_NAME = "dictionary";
+
+    private final String name;//词典名，用于统计
+    private final String file;//关键字文件
+    private final DesensitizedField rule;//共用的规则，可为null
+    private final String[] keywords;
+
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<DesensitizedDictionary> {
+
+        @PluginBuilderAttribute
+        private String name = DEFAULT_NAME;//词典名，用于统计
+        @PluginBuilderAttribute
+        private String file;//关键字文件，每行一个
+        @PluginElement("rule")
+        private DesensitizedField rule;//共用的规则
+        private String[] keywords;//直接指定的关键字，代码中构建时使用
+
+        public Builder setName(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder setFile(final String file) {
+            this.file = file;
+            return this;
+        }
+
+        public Builder setRule(final DesensitizedField rule) {
+            this.rule = rule;
+            return this;
+        }
+
+        public Builder setKeywords(final String[] keywords) {
+            this.keywords = keywords;
+            return this;
+        }
+
+        @Override
+        public DesensitizedDictionary build() {
+            String[] loaded = keywords;
+            if (loaded == null) {
+                if (file == null) {
+                    LOGGER.error("file is required for DesensitizedDictionary '{}'", name);
+                    return null;
+                }
+                try (InputStream in = new FileInputStream(new File(file))) {
+                    loaded = load(new InputStreamReader(in, StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    LOGGER.error("Unable to load DesensitizedDictionary '{}' from {}", name, file, e);
+                    return null;
+                }
+            }
+            return new DesensitizedDictionary(name == null ? DEFAULT_NAME : name, file, rule, loaded);
+        }
+    }
+
+    private DesensitizedDictionary(final String name, final String file, final DesensitizedField rule, final String[] keywords) {
+        this.name = name;
+        this.file = file;
+        this.rule = rule;
+        this.keywords = keywords;
+    }
+
+    /**
+     * 每行一个关键字，忽略空行与 # 开头的行
+     */
+    static String[] load(Reader reader) throws IOException {
+        List<String> keywords = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            String keyword = line.trim();
+            if (!keyword.isEmpty() && keyword.charAt(0) != '#') {
+                keywords.add(keyword);
+            }
+        }
+        return keywords.toArray(new String[0]);
+    }
+
+    /**
+     * 编译为扫描器的规则，所有关键字共用同一个实例
+     */
+    LoggingScanner.Config toConfig() {
+        DesensitizedField f = rule == null ? DesensitizedField.newBuilder().build() : rule;
+        LoggingScanner.Config config = new LoggingScanner.Config(name, f.getContent(), f.getSkipHead(), f.getSkipTail(),
+                f.getC(), f.getIgnoreSymbols(), f.getMaxMissed());
+        config.setMode(f.getMode());
+        config.setStrategy(f.getStrategy());
+        config.setKey(f.getKey());
+        config.setKeywords(keywords);
+        return config;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getFile() {
+        return this.file;
+    }
+
+    public DesensitizedField getRule() {
+        return this.rule;
+    }
+
+    public String[] getKeywords() {
+        return this.keywords;
+    }
+
+    @Override
+    public String toString() {
+        return "DesensitizedDictionary(name=" + this.getName() + ", file=" + this.getFile() + ", keywords="
+                + this.keywords.length + ", rule=" + this.getRule() + ")";
+    }
+
+}
@@ -16,6 +16,9 @@ public final class DesensitizedField {
     private final Character c;//替换字符
     private final String ignoreSymbols;//不计入未命中数量的字符
     private final Integer maxMissed;//最大未命中数。超过数量则该字段脱敏失败
+    private final String mode;//匹配方式：text(默认)按字符格式查找内容，json 只替换 json 键对应的值
+    private final String strategy;//替换策略：mask(默认)逐字符替换，hmac、hash、fpe 替换为同一值总是相同的令牌
+    private final String key;//hmac、fpe 策略的密钥，hash 策略的盐
 
 
     @PluginBuilderFactory
@@ -39,6 +42,12 @@ public final class DesensitizedField {
         private String ignoreSymbols;//不计入未命中数量的字符
         @PluginBuilderAttribute
         private Integer maxMissed;//最大未命中数。超过数量则该字段脱敏失败
+        @PluginBuilderAttribute
+        private String mode;//匹配方式：text 或 json
+        @PluginBuilderAttribute
+        private String strategy;//替换策略：mask、hmac、hash 或 fpe
+        @PluginBuilderAttribute(sensitive = true)
+        private String key;//密钥
 
         public Builder setName(final String name) {
             this.name = name;
@@ -75,14 +84,37 @@ public final class DesensitizedField {
             return this;
         }
 
+        public Builder setMode(final String mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder setStrategy(final String strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        public Builder setKey(final String key) {
+            this.key = key;
+            return this;
+        }
+
         @Override
         public DesensitizedField build() {
-            return new DesensitizedField(name, content, skipHead, skipTail, c, ignoreSymbols, maxMissed);
+            return new DesensitizedField(name, content, skipHead, skipTail, c, ignoreSymbols, maxMissed, mode, strategy, key);
         }
 
     }
 
     public DesensitizedField(final String name, final String content, final Integer skipHead, final Integer skipTail, final Character c, final String ignoreSymbols, final Integer maxMissed) {
+        this(name, content, skipHead, skipTail, c, ignoreSymbols, maxMissed, null);
+    }
+
+    public DesensitizedField(final String name, final String content, final Integer skipHead, final Integer skipTail, final Character c, final String ignoreSymbols, final Integer maxMissed, final String mode) {
+        this(name, content, skipHead, skipTail, c, ignoreSymbols, maxMissed, mode, null, null);
+    }
+
+    public DesensitizedField(final String name, final String content, final Integer skipHead, final Integer skipTail, final Character c, final String ignoreSymbols, final Integer maxMissed, final String mode, final String strategy, final String key) {
         this.name = name;
         this.content = content;
         this.skipHead = skipHead;
@@ -90,6 +122,9 @@ public final class DesensitizedField {
         this.c = c;
         this.ignoreSymbols = ignoreSymbols;
         this.maxMissed = maxMissed;
+        this.mode = mode;
+        this.strategy = strategy;
+        this.key = key;
     }
 
     public String getName() {
@@ -120,9 +155,21 @@ public final class DesensitizedField {
         return this.maxMissed;
     }
 
+    public String getMode() {
+        return this.mode;
+    }
+
+    public String getStrategy() {
+        return this.strategy;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
     @Override
     public String toString() {
-        return "DesensitizedField(name=" + this.getName() + ", content=" + this.getContent() + ", skipHead=" + this.getSkipHead() + ", skipTail=" + this.getSkipTail() + ", c=" + this.getC() + ", ignoreSymbols=" + this.getIgnoreSymbols() + ", maxMissed=" + this.getMaxMissed() + ")";
+        return "DesensitizedField(name=" + this.getName() + ", content=" + this.getContent() + ", skipHead=" + this.getSkipHead() + ", skipTail=" + this.getSkipTail() + ", c=" + this.getC() + ", ignoreSymbols=" + this.getIgnoreSymbols() + ", maxMissed=" + this.getMaxMissed() + ", mode=" + this.getMode() + ", strategy=" + this.getStrategy() + ")";
     }
 
     @Override
@@ -219,6 +266,36 @@ public final class DesensitizedField {
                 return false;
             }
 
+            Object this$mode = this.getMode();
+            Object other$mode = other.getMode();
+            if (this$mode == null) {
+                if (other$mode != null) {
+                    return false;
+                }
+            } else if (!this$mode.equals(other$mode)) {
+                return false;
+            }
+
+            Object this$strategy = this.getStrategy();
+            Object other$strategy = other.getStrategy();
+            if (this$strategy == null) {
+                if (other$strategy != null) {
+                    return false;
+                }
+            } else if (!this$strategy.equals(other$strategy)) {
+                return false;
+            }
+
+            Object this$key = this.getKey();
+            Object other$key = other.getKey();
+            if (this$key == null) {
+                if (other$key != null) {
+                    return false;
+                }
+            } else if (!this$key.equals(other$key)) {
+                return false;
+            }
+
             return true;
         }
     }
@@ -240,6 +317,12 @@ public final class DesensitizedField {
         result = result * 59 + ($ignoreSymbols == null ? 43 : $ignoreSymbols.hashCode());
         Object $maxMissed = this.getMaxMissed();
         result = result * 59 + ($maxMissed == null ? 43 : $maxMissed.hashCode());
+        Object $mode = this.getMode();
+        result = result * 59 + ($mode == null ? 43 : $mode.hashCode());
+        Object $strategy = this.getStrategy();
+        result = result * 59 + ($strategy == null ? 43 : $strategy.hashCode());
+        Object $key = this.getKey();
+        result = result * 59 + ($key == null ? 43 : $key.hashCode());
         return result;
     }
 
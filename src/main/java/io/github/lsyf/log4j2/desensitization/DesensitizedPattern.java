@@ -0,0 +1,222 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+
+import java.util.Objects;
+
+/**
+ * 按值的格式脱敏，不需要关键字，如日志中单独出现的手机号、身份证号。
+ * <p>
+ * type 为内置格式，pattern 为自定义格式(正则表达式的子集，见 {@link PatternAutomaton})，同时配置时 pattern 优先。
+ */
+@Plugin(name = "DesensitizedPattern", category = Node.CATEGORY, printObject = true)
+public final class DesensitizedPattern {
+
+    public static final String TYPE_PHONE = "phone";
+    public static final String TYPE_IDCARD = "idcard";
+    public static final String TYPE_BANKCARD = "bankcard";
+    public static final String TYPE_EMAIL = "email";
+
+    private final String name;//规则名，用于统计
+    private final String type;//内置格式：phone、idcard、bankcard、email
+    private final String pattern;//自定义格式
+    private final String check;//校验：luhn、idcard
+    private final Integer skipHead;//跳过前n个字符
+    private final Integer skipTail;//跳过后n个字符
+    private final Character c;//替换字符
+
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<DesensitizedPattern> {
+
+        @PluginBuilderAttribute
+        private String name;//规则名，用于统计
+        @PluginBuilderAttribute
+        private String type;//内置格式：phone、idcard、bankcard、email
+        @PluginBuilderAttribute
+        private String pattern;//自定义格式
+        @PluginBuilderAttribute
+        private String check;//校验：luhn、idcard
+        @PluginBuilderAttribute
+        private Integer skipHead;//跳过前n个字符
+        @PluginBuilderAttribute
+        private Integer skipTail;//跳过后n个字符
+        @PluginBuilderAttribute
+        private Character c;//替换字符
+
+        public Builder setName(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder setType(final String type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder setPattern(final String pattern) {
+            this.pattern = pattern;
+            return this;
+        }
+
+        public Builder setCheck(final String check) {
+            this.check = check;
+            return this;
+        }
+
+        public Builder setSkipHead(final Integer skipHead) {
+            this.skipHead = skipHead;
+            return this;
+        }
+
+        public Builder setSkipTail(final Integer skipTail) {
+            this.skipTail = skipTail;
+            return this;
+        }
+
+        public Builder setC(final Character c) {
+            this.c = c;
+            return this;
+        }
+
+        @Override
+        public DesensitizedPattern build() {
+            return new DesensitizedPattern(name, type, pattern, check, skipHead, skipTail, c);
+        }
+
+    }
+
+    public DesensitizedPattern(final String name, final String type, final String pattern, final String check,
+                               final Integer skipHead, final Integer skipTail, final Character c) {
+        this.name = name;
+        this.type = type;
+        this.pattern = pattern;
+        this.check = check;
+        this.skipHead = skipHead;
+        this.skipTail = skipTail;
+        this.c = c;
+    }
+
+    /**
+     * 未配置时依次取 type、pattern
+     */
+    public String getName() {
+        return this.name != null ? this.name : this.type != null ? this.type : this.pattern;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    public String getCheck() {
+        return this.check;
+    }
+
+    public Integer getSkipHead() {
+        return this.skipHead;
+    }
+
+    public Integer getSkipTail() {
+        return this.skipTail;
+    }
+
+    public Character getC() {
+        return this.c;
+    }
+
+    /**
+     * 实际使用的格式，未配置 pattern 时取内置格式
+     *
+     * @throws IllegalArgumentException 两者都未配置，或内置格式不存在
+     */
+    String effectivePattern() {
+        if (pattern != null) {
+            return pattern;
+        }
+        String t = type == null ? "" : type.trim().toLowerCase();
+        switch (t) {
+            case TYPE_PHONE:
+                return "1[3-9]\\d{9}";
+            case TYPE_IDCARD:
+                return "\\d{17}[\\dXx]";
+            case TYPE_BANKCARD:
+                return "\\d{16,19}";
+            case TYPE_EMAIL:
+                return "[A-Za-z0-9._%+-]+@[A-Za-z0-9-]+(\\.[A-Za-z0-9-]+)+";
+            default:
+                throw new IllegalArgumentException("Unknown pattern type " + type);
+        }
+    }
+
+    /**
+     * 实际使用的校验，未配置时 idcard、bankcard 分别使用身份证校验码与 Luhn 校验
+     */
+    String effectiveCheck() {
+        if (check != null) {
+            String c = check.trim().toLowerCase();
+            return c.isEmpty() || "none".equals(c) ? null : c;
+        }
+        if (pattern != null || type == null) {
+            return null;
+        }
+        switch (type.trim().toLowerCase()) {
+            case TYPE_IDCARD:
+                return PatternAutomaton.CHECK_IDCARD;
+            case TYPE_BANKCARD:
+                return PatternAutomaton.CHECK_LUHN;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 未配置时按内置格式保留的前后字符数
+     */
+    int effectiveSkipHead() {
+        return skipHead != null ? skipHead : TYPE_PHONE.equalsIgnoreCase(type) ? 3
+                : TYPE_IDCARD.equalsIgnoreCase(type) || TYPE_BANKCARD.equalsIgnoreCase(type) ? 6
+                : TYPE_EMAIL.equalsIgnoreCase(type) ? 2 : 0;
+    }
+
+    int effectiveSkipTail() {
+        return skipTail != null ? skipTail : TYPE_PHONE.equalsIgnoreCase(type) || TYPE_IDCARD.equalsIgnoreCase(type)
+                || TYPE_BANKCARD.equalsIgnoreCase(type) || TYPE_EMAIL.equalsIgnoreCase(type) ? 4 : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DesensitizedPattern(name=" + this.getName() + ", type=" + this.getType() + ", pattern=" + this.getPattern() + ", check=" + this.getCheck() + ", skipHead=" + this.getSkipHead() + ", skipTail=" + this.getSkipTail() + ", c=" + this.getC() + ")";
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof DesensitizedPattern)) {
+            return false;
+        }
+        DesensitizedPattern other = (DesensitizedPattern) o;
+        return Objects.equals(name, other.name) && Objects.equals(type, other.type)
+                && Objects.equals(pattern, other.pattern) && Objects.equals(check, other.check)
+                && Objects.equals(skipHead, other.skipHead) && Objects.equals(skipTail, other.skipTail)
+                && Objects.equals(c, other.c);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type, pattern, check, skipHead, skipTail, c);
+    }
+
+}
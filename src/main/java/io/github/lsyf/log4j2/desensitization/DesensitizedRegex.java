@@ -0,0 +1,193 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * {@link MyPatternLayout} 的正则替换，配置同 {@code <Replace regex="" replacement=""/>}，在脱敏之前执行。
+ * <p>
+ * 替换串在配置时解析为文本与分组引用，语义同 {@link Matcher#appendReplacement}，
+ * 由 {@link RewritePipeline} 直接在输出 buffer 上匹配与替换，不创建 String。
+ */
+@Plugin(name = "DesensitizedRegex", category = Node.CATEGORY, printObject = true)
+public final class DesensitizedRegex {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    static final int GROUP_LITERAL = -1;
+    static final int GROUP_NAMED = -2;
+
+    private final Pattern pattern;
+    private final String replacement;
+    private final String[] texts;//文本或分组名
+    private final int[] groups;//分组序号，GROUP_LITERAL 为文本，GROUP_NAMED 为命名分组
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<DesensitizedRegex> {
+
+        @PluginBuilderAttribute
+        private String regex;//正则表达式
+        @PluginBuilderAttribute
+        private String replacement = "";//替换串，可以引用分组 $1、${name}
+
+        public Builder setRegex(final String regex) {
+            this.regex = regex;
+            return this;
+        }
+
+        public Builder setReplacement(final String replacement) {
+            this.replacement = replacement;
+            return this;
+        }
+
+        /**
+         * @return 正则或替换串不合法时返回null
+         */
+        @Override
+        public DesensitizedRegex build() {
+            if (regex == null) {
+                LOGGER.error("A regular expression is required for DesensitizedRegex");
+                return null;
+            }
+            final Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                LOGGER.error("Invalid regular expression '{}' for DesensitizedRegex", regex, e);
+                return null;
+            }
+            final String substitution = replacement == null ? "" : replacement;
+            final List<String> texts = new ArrayList<>();
+            final List<Integer> groups = new ArrayList<>();
+            if (!parse(substitution, pattern.matcher("").groupCount(), texts, groups)) {
+                LOGGER.error("Invalid replacement '{}' for regular expression '{}' in DesensitizedRegex", substitution, regex);
+                return null;
+            }
+            final int[] g = new int[groups.size()];
+            for (int i = 0; i < g.length; i++) {
+                g[i] = groups.get(i);
+            }
+            return new DesensitizedRegex(pattern, substitution, texts.toArray(new String[0]), g);
+        }
+    }
+
+    private DesensitizedRegex(final Pattern pattern, final String replacement, final String[] texts, final int[] groups) {
+        this.pattern = pattern;
+        this.replacement = replacement;
+        this.texts = texts;
+        this.groups = groups;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    String[] getTexts() {
+        return texts;
+    }
+
+    int[] getGroups() {
+        return groups;
+    }
+
+    /**
+     * 按 {@link Matcher#appendReplacement} 的规则解析替换串
+     *
+     * @return 替换串是否合法
+     */
+    private static boolean parse(final String substitution, final int groupCount,
+                                 final List<String> texts, final List<Integer> groups) {
+        final StringBuilder literal = new StringBuilder();
+        int cursor = 0;
+        while (cursor < substitution.length()) {
+            char c = substitution.charAt(cursor);
+            if (c == '\\') {
+                if (++cursor == substitution.length()) {
+                    return false;
+                }
+                literal.append(substitution.charAt(cursor++));
+            } else if (c == '$') {
+                if (++cursor == substitution.length()) {
+                    return false;
+                }
+                if (literal.length() > 0) {
+                    texts.add(literal.toString());
+                    groups.add(GROUP_LITERAL);
+                    literal.setLength(0);
+                }
+                c = substitution.charAt(cursor);
+                if (c == '{') {
+                    final int end = substitution.indexOf('}', ++cursor);
+                    if (end <= cursor || !isGroupName(substitution, cursor, end)) {
+                        return false;
+                    }
+                    texts.add(substitution.substring(cursor, end));
+                    groups.add(GROUP_NAMED);
+                    cursor = end + 1;
+                } else {
+                    if (c < '0' || c > '9') {
+                        return false;
+                    }
+                    int group = c - '0';
+                    cursor++;
+                    //尽量多读数字，直到超过分组数
+                    while (cursor < substitution.length()) {
+                        final char d = substitution.charAt(cursor);
+                        if (d < '0' || d > '9' || group * 10 + (d - '0') > groupCount) {
+                            break;
+                        }
+                        group = group * 10 + (d - '0');
+                        cursor++;
+                    }
+                    if (group > groupCount) {
+                        return false;
+                    }
+                    texts.add(null);
+                    groups.add(group);
+                }
+            } else {
+                literal.append(c);
+                cursor++;
+            }
+        }
+        if (literal.length() > 0) {
+            texts.add(literal.toString());
+            groups.add(GROUP_LITERAL);
+        }
+        return true;
+    }
+
+    private static boolean isGroupName(final String s, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final char c = s.charAt(i);
+            final boolean letter = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+            if (!letter && (i == from || c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "DesensitizedRegex(regex=" + pattern.pattern() + ", replacement=" + replacement + ")";
+    }
+}
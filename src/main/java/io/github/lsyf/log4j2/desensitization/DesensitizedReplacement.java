@@ -2,14 +2,46 @@ package io.github.lsyf.log4j2.desensitization;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.ConfigurationScheduler;
+import org.apache.logging.log4j.core.config.Node;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
-import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
-import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginNode;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.jmx.Server;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.MapMessage;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterConsumer;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.message.StringMapMessage;
 import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.IndexedReadOnlyStringMap;
+import org.apache.logging.log4j.util.PropertiesUtil;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 
 
 @Plugin(name = "desensitized", category = Core.CATEGORY_NAME, printObject = true)
@@ -17,17 +49,85 @@ public final class DesensitizedReplacement {
 
     private static final Logger LOGGER = StatusLogger.getLogger();
 
-    private final DesensitizedField[] fields;
+    /**
+     * 未指定name时的规则集名称
+     */
+    public static final String DEFAULT_NAME = "default";
+
+    private static final String COMPONENT_PREFIX = "Desensitized:";
+    private static final String MBEAN_DOMAIN = "io.github.lsyf.log4j2.desensitization";
+    private static final int SCOPE_CACHE_SIZE = 4096;//缓存的 logger 数，超过后不再缓存新的 logger
+
+    private final String name;
+    private final boolean mapKeys;//MapMessage 按字段名直接脱敏
+    private final LoggingScanner.Options scannerOptions;//引擎、缓存、分段扫描等设置，每次编译规则共用
+    private final int parallelThreshold;
+    private final ForkJoinPool parallelPool;//并行扫描使用的线程池，未启用并行时为null；配置了 parallelism 时为自有线程池，随配置停止
+    private final ScannerStats stats = new ScannerStats();//规则替换后继续累加
+    private final Object updateLock = new Object();//只在替换规则的线程之间互斥，输出日志不加锁
+
+    private final DesensitizedPattern[] patterns;//按值的格式脱敏，不随规则文件替换
+    private final DesensitizedScope[] scopes;//按 logger、marker、级别选择规则集
+    private final DesensitizedDictionary[] dictionaries;//关键字词典，不随规则文件替换
+    private final Configuration configuration;//查找范围引用的规则集
+    private final ConcurrentHashMap<String, DesensitizedScope[]> scopeCache = new ConcurrentHashMap<>();//logger 名 -> 可能适用的范围
+    private volatile DesensitizedField[] fields;
+    //编译好的规则，替换时整体换成新的实例，正在输出的日志继续使用读到的旧实例
+    private volatile LoggingScanner loggingScanner;
 
 
-    private final LoggingScanner loggingScanner;
+    private DesensitizedReplacement(final Builder builder) {
+        this.name = builder.name == null ? DEFAULT_NAME : builder.name;
+        this.patterns = builder.patterns == null ? new DesensitizedPattern[0] : builder.patterns;
+        this.scopes = builder.scopes == null ? new DesensitizedScope[0] : builder.scopes;
+        this.dictionaries = builder.dictionaries == null ? new DesensitizedDictionary[0] : builder.dictionaries;
+        this.configuration = builder.configuration;
+        this.mapKeys = builder.mapKeys;
+        this.scannerOptions = new LoggingScanner.Options()
+                .setPatterns(Arrays.asList(patterns))
+                .setEngine(builder.engine)
+                .setTemplateCacheSize(builder.templateCacheSize)
+                .setTokenCacheSize(builder.tokenCacheSize)
+                .setStreamThreshold(builder.streamThreshold)
+                .setKeywordMatch(builder.keywordMatch)
+                .setPrefixWords(builder.prefixWords)
+                .setSuffixWords(builder.suffixWords)
+                .setStats(stats);
+        this.parallelThreshold = builder.parallelThreshold;
+        this.parallelPool = parallelThreshold <= 0 ? null
+                : builder.parallelism > 0 ? newPool(name, builder.parallelism) : ForkJoinPool.commonPool();
+        this.fields = builder.fields == null ? new DesensitizedField[0] : builder.fields;
+        this.loggingScanner = compile(fields);
+    }
+
+    /**
+     * 线程以规则集命名，便于在线程转储中区分
+     */
+    private static ForkJoinPool newPool(final String name, final int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Desensitized-" + name + "-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
 
+    /**
+     * 关闭自有的并行扫描线程池，之后超长的日志顺序扫描。配置被替换(重新加载、reconfigure)时自动调用
+     */
+    public void stop() {
+        if (parallelPool != null && parallelPool != ForkJoinPool.commonPool()) {
+            parallelPool.shutdown();
+        }
+    }
 
-    private DesensitizedReplacement(DesensitizedField[] fields) {
-        this.fields = fields;
-        List<LoggingScanner.Config> configs = new ArrayList<>(fields.length);
+    private LoggingScanner compile(DesensitizedField[] fields) {
+        List<LoggingScanner.Config> configs = new ArrayList<>(dictionaries.length + fields.length);
+        //词典在前，同名时单独配置的字段优先
+        for (DesensitizedDictionary dictionary : dictionaries) {
+            configs.add(dictionary.toConfig());
+        }
         for (DesensitizedField f : fields) {
-            configs.add(new LoggingScanner.Config(
+            LoggingScanner.Config config = new LoggingScanner.Config(
                     f.getName(),
                     f.getContent(),
                     f.getSkipHead(),
@@ -35,35 +135,559 @@ public final class DesensitizedReplacement {
                     f.getC(),
                     f.getIgnoreSymbols(),
                     f.getMaxMissed()
-            ));
+            );
+            config.setMode(f.getMode());
+            config.setStrategy(f.getStrategy());
+            config.setKey(f.getKey());
+            configs.add(config);
+        }
+        LoggingScanner scanner = new LoggingScanner(true, configs, scannerOptions);
+        scanner.setParallel(parallelThreshold, parallelPool);
+        return scanner;
+    }
+
+    /**
+     * 替换脱敏规则，不需要重新加载log4j配置。
+     * <p>
+     * 新规则在调用线程上编译，完成后一次性替换；输出日志的线程不会被阻塞，已开始输出的日志仍使用旧规则。
+     */
+    public void update(final DesensitizedField[] fields) {
+        if (fields == null) {
+            return;
+        }
+        synchronized (updateLock) {
+            LoggingScanner scanner = compile(fields);
+            this.fields = fields;
+            this.loggingScanner = scanner;
+        }
+        LOGGER.debug("Desensitized rules '{}' updated, {} fields", name, fields.length);
+    }
+
+    /**
+     * 当前规则编译后的扫描器。同一条日志的各个步骤应使用同一个实例
+     */
+    LoggingScanner getScanner() {
+        return loggingScanner;
+    }
+
+    /**
+     * 按范围选择 event 使用的规则集，未声明范围时为本身。
+     * 同一 logger 可能适用的范围只计算一次，只有 marker、级别需要逐条判断
+     *
+     * @return 不脱敏时返回null
+     */
+    DesensitizedReplacement resolve(final LogEvent event) {
+        if (scopes.length == 0) {
+            return this;
+        }
+        final String loggerName = event.getLoggerName() == null ? "" : event.getLoggerName();
+        DesensitizedScope[] candidates = scopeCache.get(loggerName);
+        if (candidates == null) {
+            candidates = candidates(loggerName);
+            if (scopeCache.size() < SCOPE_CACHE_SIZE) {
+                scopeCache.put(loggerName, candidates);
+            }
+        }
+        for (DesensitizedScope scope : candidates) {
+            if (!scope.isEventSpecific() || scope.matchesEvent(event)) {
+                return scope.target(configuration, this);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * logger 名匹配的范围，截止到第一个不限制 marker、级别的范围
+     */
+    private DesensitizedScope[] candidates(final String loggerName) {
+        final List<DesensitizedScope> list = new ArrayList<>();
+        for (DesensitizedScope scope : scopes) {
+            //未能创建的范围(如级别不存在)为null
+            if (scope != null && scope.matchesLogger(loggerName)) {
+                list.add(scope);
+                if (!scope.isEventSpecific()) {
+                    break;
+                }
+            }
         }
-        loggingScanner = new LoggingScanner(true, configs);
+        return list.toArray(new DesensitizedScope[0]);
+    }
+
+    public DesensitizedScope[] getScopes() {
+        return scopes.clone();
+    }
+
+    public DesensitizedField[] getFields() {
+        return fields.clone();
+    }
+
+    public DesensitizedPattern[] getPatterns() {
+        return patterns.clone();
     }
 
+    public DesensitizedDictionary[] getDictionaries() {
+        return dictionaries.clone();
+    }
 
     public String format(final String msg) {
         return loggingScanner.processLog(msg);
     }
 
-    @Override
-    public String toString() {
-        return "desensitized(fields=" + fields + ')';
+    /**
+     * 分段读取in，脱敏后写入out，内存占用与内容长度无关，见 {@link LoggingScanner#processLog(Reader, Appendable)}
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean format(final Reader in, final Appendable out) throws IOException {
+        return loggingScanner.processLog(in, out);
+    }
+
+    /**
+     * 在原buffer上脱敏，未命中关键字时buffer保持不变
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean mask(final StringBuilder buffer) {
+        return loggingScanner.mask(buffer);
+    }
+
+    /**
+     * 只对buffer的 [from, to) 区间脱敏，见 {@link DesensitizePatternConverter}
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean mask(final StringBuilder buffer, final int from, final int to) {
+        return loggingScanner.mask(buffer, from, to);
+    }
+
+    /**
+     * 只对buffer的 [from, to) 区间脱敏，[cleanFrom, cleanTo) 为 {@link #isClean(Message)} 判定过的消息输出，
+     * 只扫描其两侧；cleanFrom为负数时扫描整个区间
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean mask(final StringBuilder buffer, final int from, final int to, final int cleanFrom, final int cleanTo) {
+        return loggingScanner.mask(buffer, from, to, cleanFrom, cleanTo);
     }
 
+    /**
+     * 消息输出的文本是否必然不含关键字。只判断 ParameterizedMessage/ReusableParameterizedMessage：
+     * 模板的分析结果按模板缓存，参数为字符串、null或整数时逐个快速判断
+     */
+    public boolean isClean(final Message message) {
+        return isClean(loggingScanner, message);
+    }
+
+    boolean isClean(final LoggingScanner loggingScanner, final Message message) {
+        if (message == null) {
+            return false;
+        }
+        if (message.getClass() == ReusableParameterizedMessage.class) {
+            final ReusableParameterizedMessage reusable = (ReusableParameterizedMessage) message;
+            final int placeholders = loggingScanner.templatePlaceholders(reusable.getFormat());
+            if (placeholders < 0) {
+                return false;
+            }
+            //getParameters()会复制数组，遍历参数不产生对象
+            final ParameterCheck check = ParameterCheck.get(loggingScanner, placeholders);
+            reusable.forEachParameter(CHECK_PARAMETER, check);
+            return check.clean;
+        }
+        if (message.getClass() == ParameterizedMessage.class) {
+            final ParameterizedMessage parameterized = (ParameterizedMessage) message;
+            final int placeholders = loggingScanner.templatePlaceholders(parameterized.getFormat());
+            if (placeholders < 0) {
+                return false;
+            }
+            final Object[] parameters = parameterized.getParameters();
+            final int count = parameters == null ? 0 : Math.min(placeholders, parameters.length);
+            for (int i = 0; i < count; i++) {
+                if (!loggingScanner.isParameterClean(parameters[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final ParameterConsumer<ParameterCheck> CHECK_PARAMETER = (parameter, index, check) -> {
+        //超出占位符个数的参数(如异常)不输出到消息中
+        if (check.clean && index < check.placeholders && !check.scanner.isParameterClean(parameter)) {
+            check.clean = false;
+        }
+    };
 
-    @PluginFactory
-    public static DesensitizedReplacement createRegexReplacement(
-            @PluginElement("desensitizedFields") final DesensitizedField[] fields,
-            @PluginAttribute("enable") final Boolean enable) {
-        if (!Boolean.TRUE.equals(enable)) {
+    private static final class ParameterCheck {
+        private static final ThreadLocal<ParameterCheck> THREAD_LOCAL = new ThreadLocal<>();
+
+        private LoggingScanner scanner;
+        private int placeholders;
+        private boolean clean;
+
+        static ParameterCheck get(LoggingScanner scanner, int placeholders) {
+            ParameterCheck check = Constants.ENABLE_THREADLOCALS ? THREAD_LOCAL.get() : null;
+            if (check == null) {
+                check = new ParameterCheck();
+                if (Constants.ENABLE_THREADLOCALS) {
+                    THREAD_LOCAL.set(check);
+                }
+            }
+            check.scanner = scanner;
+            check.placeholders = placeholders;
+            check.clean = true;
+            return check;
+        }
+    }
+
+    /**
+     * mapKeys 模式下，MapMessage/StringMapMessage 的每个键直接按字段名查找规则并对值脱敏，
+     * 开销与键值对数量相关，与输出行长度无关；此时调用方只需扫描消息以外的输出(MDC、异常、模式中的文本等)。
+     * <p>
+     * 只处理这两个类本身，子类(如 StructuredDataMessage)的输出格式不同，仍按文本扫描。
+     *
+     * @return 不适用时返回null；没有值需要脱敏时返回原event；否则返回消息已脱敏的event副本
+     */
+    public LogEvent maskMap(final LogEvent event) {
+        return maskMap(loggingScanner, event);
+    }
+
+    LogEvent maskMap(final LoggingScanner loggingScanner, final LogEvent event) {
+        if (!mapKeys || event == null) {
             return null;
         }
-        if (fields == null) {
-            LOGGER.error("fields is required for rules");
+        final Message message = event.getMessage();
+        if (message == null || (message.getClass() != MapMessage.class && message.getClass() != StringMapMessage.class)) {
             return null;
         }
+        final MapMessage<?, ?> masked = maskMap(loggingScanner, (MapMessage<?, ?>) message);
+        return masked == null ? event : new Log4jLogEvent.Builder(event).setMessage(masked).build();
+    }
+
+    /**
+     * @return 没有值需要脱敏时返回null
+     */
+    private static MapMessage<?, ?> maskMap(final LoggingScanner loggingScanner, final MapMessage<?, ?> message) {
+        final IndexedReadOnlyStringMap data = message.getIndexedReadOnlyStringMap();
+        final int size = data.size();
+        String[] values = null;//脱敏后的值，未命中的键为null
+        for (int i = 0; i < size; i++) {
+            LoggingScanner.Config rule = loggingScanner.ruleOf(data.getKeyAt(i));
+            Object value = data.getValueAt(i);
+            if (rule == null && !(value instanceof CharSequence)) {
+                continue;
+            }
+            String origin = value == null ? null : value.toString();
+            //没有对应字段的值只按值格式脱敏
+            String masked = rule != null ? loggingScanner.maskValue(rule, origin) : loggingScanner.maskPatterns(origin);
+            if (masked != origin) {
+                if (values == null) {
+                    values = new String[size];
+                }
+                values[i] = masked;
+            }
+        }
+        if (values == null) {
+            return null;
+        }
+        final MapMessage<?, ?> copy = message instanceof StringMapMessage ? new StringMapMessage(size) : new MapMessage<>(size);
+        for (int i = 0; i < size; i++) {
+            String key = data.getKeyAt(i);
+            if (values[i] != null) {
+                copy.with(key, values[i]);
+            } else {
+                //getValueAt 为泛型方法，声明为 Object 才会选中 with(String, Object)，保留原值的类型
+                final Object value = data.getValueAt(i);
+                copy.with(key, value);
+            }
+        }
+        return copy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 按名称查找在配置中注册过的规则集
+     */
+    public static DesensitizedReplacement lookup(final Configuration configuration, final String name) {
+        return configuration == null ? null : configuration.getComponent(COMPONENT_PREFIX + name);
+    }
+
+    /**
+     * 扫描统计，如前置过滤跳过的行数占比、各字段的命中次数，同时注册为 JMX 的 {@link ScannerStatsMXBean}
+     */
+    public ScannerStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 注册统计的 MBean，配置被替换时注销。同一配置中重名的规则集(如各layout内嵌的默认规则集)以实例区分
+     */
+    private static void registerMBean(final Configuration configuration, final DesensitizedReplacement replacement) {
+        if (PropertiesUtil.getProperties().getBooleanProperty("log4j2.disable.jmx")) {
+            return;
+        }
+        try {
+            LoggerContext context = configuration.getLoggerContext();
+            String name = replacement.getName();
+            if (lookup(configuration, name) != null) {
+                name += "@" + Integer.toHexString(System.identityHashCode(replacement));
+            }
+            final ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=Desensitized,context="
+                    + Server.escape(context == null ? configuration.getName() : context.getName())
+                    + ",name=" + Server.escape(name));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(replacement.stats, objectName);
+            onReplaced(configuration, () -> {
+                try {
+                    if (server.isRegistered(objectName)) {
+                        server.unregisterMBean(objectName);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Unable to unregister {}", objectName, e);
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.warn("Unable to register desensitized stats MBean for {}", replacement.getName(), e);
+        }
+    }
+
+    /**
+     * 配置被替换时(重新加载、reconfigure)执行 action；未关联 LoggerContext 的配置不执行
+     */
+    private static void onReplaced(final Configuration configuration, final Runnable action) {
+        final LoggerContext context = configuration.getLoggerContext();
+        if (context == null) {
+            return;
+        }
+        context.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                if (LoggerContext.PROPERTY_CONFIG.equals(event.getPropertyName()) && event.getOldValue() == configuration) {
+                    context.removePropertyChangeListener(this);
+                    action.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "desensitized(name=" + name + ", fields=" + Arrays.toString(fields) + ", patterns=" + Arrays.toString(patterns) + ", scopes=" + Arrays.toString(scopes) + ')';
+    }
+
+
+    /**
+     * @deprecated Use {@link #newBuilder()} instead.
+     */
+    @Deprecated
+    public static DesensitizedReplacement createRegexReplacement(final DesensitizedField[] fields, final Boolean enable) {
+        return newBuilder().setFields(fields).setEnable(enable).build();
+    }
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<DesensitizedReplacement> {
+
+        @PluginElement("desensitizedFields")
+        private DesensitizedField[] fields;
+        @PluginElement("desensitizedPatterns")
+        private DesensitizedPattern[] patterns;
+        @PluginElement("desensitizedScopes")
+        private DesensitizedScope[] scopes;
+        @PluginElement("desensitizedDictionaries")
+        private DesensitizedDictionary[] dictionaries;
+        @PluginBuilderAttribute
+        private String name = DEFAULT_NAME;//规则集名称，%desensitize{pattern}{name} 按名称引用
+        @PluginConfiguration
+        private Configuration configuration;
+        @PluginNode
+        private Node node;
+        @PluginBuilderAttribute
+        private Boolean enable;//开关
+        @PluginBuilderAttribute
+        private String engine = LoggingScanner.ENGINE_TRIE;//关键字匹配引擎：trie 或 ahocorasick
+        @PluginBuilderAttribute
+        private boolean mapKeys;//MapMessage/StringMapMessage 按键名直接脱敏，不扫描输出文本
+        @PluginBuilderAttribute
+        private int templateCacheSize = LoggingScanner.DEFAULT_TEMPLATE_CACHE_SIZE;//缓存的消息模板数，0为不缓存
+        @PluginBuilderAttribute
+        private int tokenCacheSize = LoggingScanner.DEFAULT_TOKEN_CACHE_SIZE;//令牌化策略缓存的值的数量，0为不缓存
+        @PluginBuilderAttribute
+        private String keywordMatch = LoggingScanner.MATCH_WORD;//关键字匹配方式：word 整词匹配，identifier 按标识符匹配命名变体
+        @PluginBuilderAttribute
+        private int prefixWords = LoggingScanner.DEFAULT_PREFIX_WORDS;//按标识符匹配时关键字之前允许的单词数
+        @PluginBuilderAttribute
+        private int suffixWords = LoggingScanner.DEFAULT_SUFFIX_WORDS;//按标识符匹配时关键字之后允许的单词数
+        @PluginBuilderAttribute
+        private int streamThreshold = LoggingScanner.DEFAULT_STREAM_THRESHOLD;//超过该长度(字符数)的日志分段扫描
+        @PluginBuilderAttribute
+        private int parallelThreshold;//超过该长度(字符数)的日志分段并行扫描，0为不并行
+        @PluginBuilderAttribute
+        private int parallelism;//并行扫描的线程数，0为使用公共的ForkJoinPool
+        @PluginBuilderAttribute
+        private String rulesFile;//外部规则文件，修改后自动替换规则
+        @PluginBuilderAttribute
+        private int refreshInterval = 30;//检查规则文件修改的间隔秒数，0为只在启动时加载
+
+        public Builder setFields(final DesensitizedField[] fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        public Builder setPatterns(final DesensitizedPattern[] patterns) {
+            this.patterns = patterns;
+            return this;
+        }
+
+        public Builder setScopes(final DesensitizedScope[] scopes) {
+            this.scopes = scopes;
+            return this;
+        }
+
+        public Builder setDictionaries(final DesensitizedDictionary[] dictionaries) {
+            this.dictionaries = dictionaries;
+            return this;
+        }
 
-        return new DesensitizedReplacement(fields);
+        public Builder setName(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder setConfiguration(final Configuration configuration) {
+            this.configuration = configuration;
+            return this;
+        }
+
+        public Builder setEnable(final Boolean enable) {
+            this.enable = enable;
+            return this;
+        }
+
+        public Builder setEngine(final String engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        public Builder setMapKeys(final boolean mapKeys) {
+            this.mapKeys = mapKeys;
+            return this;
+        }
+
+        public Builder setTemplateCacheSize(final int templateCacheSize) {
+            this.templateCacheSize = templateCacheSize;
+            return this;
+        }
+
+        public Builder setTokenCacheSize(final int tokenCacheSize) {
+            this.tokenCacheSize = tokenCacheSize;
+            return this;
+        }
+
+        public Builder setKeywordMatch(final String keywordMatch) {
+            this.keywordMatch = keywordMatch;
+            return this;
+        }
+
+        public Builder setPrefixWords(final int prefixWords) {
+            this.prefixWords = prefixWords;
+            return this;
+        }
+
+        public Builder setSuffixWords(final int suffixWords) {
+            this.suffixWords = suffixWords;
+            return this;
+        }
+
+        public Builder setStreamThreshold(final int streamThreshold) {
+            this.streamThreshold = streamThreshold;
+            return this;
+        }
+
+        public Builder setParallelThreshold(final int parallelThreshold) {
+            this.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        public Builder setParallelism(final int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder setRulesFile(final String rulesFile) {
+            this.rulesFile = rulesFile;
+            return this;
+        }
+
+        public Builder setRefreshInterval(final int refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        @Override
+        public DesensitizedReplacement build() {
+            if (!Boolean.TRUE.equals(enable)) {
+                return null;
+            }
+            if (fields == null && patterns == null && scopes == null && dictionaries == null && rulesFile == null) {
+                LOGGER.error("fields, patterns, scopes, dictionaries or rulesFile is required for rules");
+                return null;
+            }
+            if (keywordMatch != null && !LoggingScanner.MATCH_WORD.equalsIgnoreCase(keywordMatch)
+                    && !LoggingScanner.MATCH_IDENTIFIER.equalsIgnoreCase(keywordMatch)) {
+                LOGGER.warn("Unknown keywordMatch '{}' in rules '{}', expected {} or {}; matching whole words",
+                        keywordMatch, name, LoggingScanner.MATCH_WORD, LoggingScanner.MATCH_IDENTIFIER);
+                keywordMatch = LoggingScanner.MATCH_WORD;
+            }
+            if (engine != null && !LoggingScanner.ENGINE_TRIE.equalsIgnoreCase(engine)
+                    && !LoggingScanner.ENGINE_AHOCORASICK.equalsIgnoreCase(engine)) {
+                LOGGER.warn("Unknown engine '{}' in rules '{}', expected {} or {}; using {}", engine, name,
+                        LoggingScanner.ENGINE_TRIE, LoggingScanner.ENGINE_AHOCORASICK, LoggingScanner.ENGINE_TRIE);
+                engine = LoggingScanner.ENGINE_TRIE;
+            } else if (LoggingScanner.MATCH_IDENTIFIER.equalsIgnoreCase(keywordMatch)
+                    && LoggingScanner.ENGINE_AHOCORASICK.equalsIgnoreCase(engine)) {
+                LOGGER.warn("Engine '{}' in rules '{}' is ignored, keywordMatch {} always uses the {} engine",
+                        engine, name, LoggingScanner.MATCH_IDENTIFIER, LoggingScanner.ENGINE_TRIE);
+            }
+            DesensitizedReplacement replacement;
+            try {
+                replacement = new DesensitizedReplacement(this);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid DesensitizedPattern in rules '{}': {}", name, e.getMessage());
+                return null;
+            }
+            if (rulesFile != null) {
+                RulesFile watcher = new RulesFile(new File(rulesFile), replacement);
+                watcher.run();
+                //在配置的调度线程上检查文件，配置停止时一并停止
+                if (configuration != null && refreshInterval > 0) {
+                    ConfigurationScheduler scheduler = configuration.getScheduler();
+                    if (!scheduler.isExecutorServiceSet()) {
+                        scheduler.incrementScheduledItems();
+                    }
+                    scheduler.scheduleWithFixedDelay(watcher, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+                }
+            }
+            if (configuration != null) {
+                registerMBean(configuration, replacement);
+                onReplaced(configuration, replacement::stop);
+                configuration.addComponent(COMPONENT_PREFIX + replacement.getName(), replacement);
+            }
+            //直接声明在configuration下的规则集只注册，不作为顶层对象返回，否则log4j会报告未知元素
+            if (node != null && node.getParent() != null && node.getParent().getParent() == null) {
+                return null;
+            }
+            return replacement;
+        }
     }
 
 }
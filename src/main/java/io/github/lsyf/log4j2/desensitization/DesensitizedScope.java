@@ -0,0 +1,216 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 规则集的适用范围：按 logger 名前缀、marker 和级别选择脱敏使用的规则集，如框架内部、监控上报的 logger 不脱敏。
+ * <p>
+ * 声明在 {@code <Desensitized>} 内，按声明顺序取第一个匹配的范围；都不匹配时使用所在规则集本身的规则。
+ * 各条件未配置时不限制，同一条件的多个值以逗号分隔，满足其一即可。
+ * rules 为另一个规则集的名称，{@value #RULES_NONE} 为不脱敏，未配置时为所在规则集；引用的规则集不再按其范围选择。
+ */
+@Plugin(name = "DesensitizedScope", category = Node.CATEGORY, printObject = true)
+public final class DesensitizedScope {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    /**
+     * 不脱敏
+     */
+    public static final String RULES_NONE = "none";
+
+    private final String[] loggers;//logger 名前缀，按 . 分隔的层级匹配
+    private final String[] markers;//marker 名，包含父 marker
+    private final Level[] levels;//级别
+    private final String rules;//使用的规则集名称
+    private volatile DesensitizedReplacement target;
+    private volatile boolean missingReported;
+
+
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<DesensitizedScope> {
+
+        @PluginBuilderAttribute
+        private String loggers;//logger 名前缀，逗号分隔
+        @PluginBuilderAttribute
+        private String markers;//marker 名，逗号分隔
+        @PluginBuilderAttribute
+        private String levels;//级别，逗号分隔
+        @PluginBuilderAttribute
+        private String rules;//规则集名称，none 为不脱敏
+
+        public Builder setLoggers(final String loggers) {
+            this.loggers = loggers;
+            return this;
+        }
+
+        public Builder setMarkers(final String markers) {
+            this.markers = markers;
+            return this;
+        }
+
+        public Builder setLevels(final String levels) {
+            this.levels = levels;
+            return this;
+        }
+
+        public Builder setRules(final String rules) {
+            this.rules = rules;
+            return this;
+        }
+
+        @Override
+        public DesensitizedScope build() {
+            String[] levelNames = split(levels);
+            Level[] parsed = null;
+            if (levelNames != null) {
+                parsed = new Level[levelNames.length];
+                for (int i = 0; i < levelNames.length; i++) {
+                    parsed[i] = Level.getLevel(levelNames[i].toUpperCase());
+                    if (parsed[i] == null) {
+                        LOGGER.error("Unknown level '{}' in DesensitizedScope", levelNames[i]);
+                        return null;
+                    }
+                }
+            }
+            String name = rules == null || rules.trim().isEmpty() ? null : rules.trim();
+            return new DesensitizedScope(split(loggers), split(markers), parsed, name);
+        }
+    }
+
+    private DesensitizedScope(final String[] loggers, final String[] markers, final Level[] levels, final String rules) {
+        this.loggers = loggers;
+        this.markers = markers;
+        this.levels = levels;
+        this.rules = rules;
+    }
+
+    /**
+     * @return 未配置或为空时返回null
+     */
+    private static String[] split(final String value) {
+        if (value == null) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        for (String s : value.split(",")) {
+            if (!s.trim().isEmpty()) {
+                list.add(s.trim());
+            }
+        }
+        return list.isEmpty() ? null : list.toArray(new String[0]);
+    }
+
+    /**
+     * logger 名是否在范围内：与前缀相同，或以 前缀. 开头
+     */
+    boolean matchesLogger(final String loggerName) {
+        if (loggers == null) {
+            return true;
+        }
+        final String name = loggerName == null ? "" : loggerName;
+        for (String prefix : loggers) {
+            if (name.startsWith(prefix) && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否有随每条日志变化的条件(marker、级别)，没有时同一 logger 的结果可以缓存
+     */
+    boolean isEventSpecific() {
+        return markers != null || levels != null;
+    }
+
+    /**
+     * marker 与级别是否满足，logger 名已由 {@link #matchesLogger(String)} 判断
+     */
+    boolean matchesEvent(final LogEvent event) {
+        if (levels != null) {
+            final Level level = event.getLevel();
+            boolean matched = false;
+            for (Level l : levels) {
+                matched |= l.equals(level);
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        if (markers != null) {
+            final Marker marker = event.getMarker();
+            if (marker == null) {
+                return false;
+            }
+            for (String name : markers) {
+                if (marker.isInstanceOf(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    boolean isNone() {
+        return RULES_NONE.equalsIgnoreCase(rules);
+    }
+
+    /**
+     * 使用的规则集，在第一次使用时查找，不依赖配置中元素的声明顺序
+     *
+     * @param owner 所在规则集
+     * @return 不脱敏时返回null；引用的规则集不存在时返回所在规则集
+     */
+    DesensitizedReplacement target(final Configuration configuration, final DesensitizedReplacement owner) {
+        if (rules == null) {
+            return owner;
+        }
+        if (isNone()) {
+            return null;
+        }
+        DesensitizedReplacement r = target;
+        if (r == null) {
+            r = DesensitizedReplacement.lookup(configuration, rules);
+            if (r != null) {
+                target = r;
+            } else {
+                if (!missingReported) {
+                    missingReported = true;
+                    LOGGER.error("No Desensitized rules named '{}' for DesensitizedScope, using rules '{}'", rules, owner.getName());
+                }
+                return owner;
+            }
+        }
+        return r;
+    }
+
+    public String getRules() {
+        return this.rules;
+    }
+
+    @Override
+    public String toString() {
+        return "DesensitizedScope(loggers=" + Arrays.toString(loggers) + ", markers=" + Arrays.toString(markers)
+                + ", levels=" + Arrays.toString(levels) + ", rules=" + rules + ")";
+    }
+
+}
@@ -0,0 +1,280 @@
+package io.github.lsyf.log4j2.desensitization;
+
+/**
+ * 按标识符匹配关键字：一个关键字同时匹配其常见的命名变体，如 phone 匹配 userPhone、user_phone、mobilePhoneNo、PHONE_NUMBER，
+ * phoneNumber 匹配 phone_number、phone-number、PhoneNumber。
+ * <p>
+ * 规则在遍历自动机的同一遍中完成，不生成小写或去掉分隔符的副本：
+ * <ul>
+ * <li>关键字编译前去掉分隔符 {@code _ -}；扫描时标识符内部的分隔符不读入自动机，状态保持不变，
+ * 最近读入的字符位置记录在环形数组中，用于还原关键字在原文中的起点；</li>
+ * <li>关键字的起点与终点需要落在单词边界上：非字母、小写后接大写(camelCase)、连续大写后接小写的前一个字符(HTTPServer)、
+ * 大小写字母与无大小写的文字(如汉字)之间；</li>
+ * <li>关键字前后相连的字母与分隔符为前缀、后缀，各自不超过 prefixWords、suffixWords 个单词且不超过 {@link #MAX_AFFIX} 个字符，
+ * 数字不属于前后缀，因此 phone13812345678 中的号码仍是内容。</li>
+ * </ul>
+ * 命中的区间为整个标识符(前缀、关键字、后缀)，之后的内容查找从标识符之后开始；同一个标识符只取最先结束的一个关键字。
+ * 全小写连写的标识符(userphone)无法区分单词，不匹配。
+ */
+final class IdentifierMatcher implements KeywordMatcher {
+
+    /**
+     * 前缀、后缀的最大长度(字符数)
+     */
+    static final int MAX_AFFIX = 32;
+
+    /**
+     * 可逐字符驱动的关键字自动机，匹配结果与整词匹配共用同一份编译结果
+     */
+    interface Automaton extends KeywordMatcher {
+
+        /**
+         * 状态 state 读入 c 后的状态，初始状态为0；目标状态有输出时取反
+         */
+        int next(int state, char c);
+
+        /**
+         * 在 state(取反前)结束的最长关键字的输出节点，没有时为-1
+         */
+        int output(int state);
+
+        /**
+         * 同一位置结束的下一个(更短的)关键字的输出节点，没有时为-1
+         */
+        int nextOutput(int output);
+
+        int keyword(int output);
+
+        int length(int keyword);
+    }
+
+    private final Automaton automaton;
+    private final int prefixWords;
+    private final int suffixWords;
+    private final int trailSize;//2的幂，不小于最长关键字的长度
+    private final int maxLength;
+
+    /**
+     * @param automaton 由 {@link #normalize(String)} 后的关键字编译
+     */
+    IdentifierMatcher(Automaton automaton, int prefixWords, int suffixWords) {
+        this.automaton = automaton;
+        this.prefixWords = prefixWords;
+        this.suffixWords = suffixWords;
+        this.trailSize = Integer.highestOneBit(Math.max(1, automaton.maxLength()) * 2 - 1);
+        //关键字内部每个字符之后最多跳过一个分隔符，两侧各有前后缀及其边界字符
+        this.maxLength = 2 * automaton.maxLength() + 2 * MAX_AFFIX + 4;
+    }
+
+    /**
+     * 去掉关键字中的分隔符，只由分隔符组成时保持不变
+     */
+    static String normalize(String keyword) {
+        StringBuilder sb = new StringBuilder(keyword.length());
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (!isSeparator(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.length() == 0 ? keyword : sb.toString();
+    }
+
+    static boolean isSeparator(char c) {
+        return c == '_' || c == '-';
+    }
+
+    /**
+     * 位置 i 的分隔符是否在标识符内部：前一个字符为字母或数字，后一个字符为字母(_ 之后也可以是数字)
+     */
+    private static boolean joins(CharSequence text, int from, int to, int i, char c) {
+        if (i == from || i + 1 >= to || !Character.isLetterOrDigit(text.charAt(i - 1))) {
+            return false;
+        }
+        char n = text.charAt(i + 1);
+        return c == '_' ? Character.isLetterOrDigit(n) : Character.isLetter(n);
+    }
+
+    /**
+     * 相邻的字符 a、b 之间是否为单词边界，c 为 b 之后的字符(没有时为0)
+     */
+    private static boolean boundary(char a, char b, char c) {
+        if (!Character.isLetter(a) || !Character.isLetter(b)) {
+            return true;
+        }
+        if (Character.isUpperCase(b) && (Character.isLowerCase(a) || Character.isUpperCase(a) && Character.isLowerCase(c))) {
+            return true;
+        }
+        return cased(a) != cased(b);
+    }
+
+    private static boolean cased(char c) {
+        return Character.isUpperCase(c) || Character.isLowerCase(c);
+    }
+
+    /**
+     * 不读取 b 之后的字符时，a、b 之间是否可能为单词边界，用于 {@link KeywordPrefilter}
+     */
+    static boolean mayStartWord(char a, char b) {
+        return !Character.isLetter(a) || !Character.isLetter(b) || Character.isUpperCase(b) || cased(a) != cased(b);
+    }
+
+    private static char charAt(CharSequence text, int i, int to) {
+        return i < to ? text.charAt(i) : 0;
+    }
+
+    private static boolean wordStart(CharSequence text, int from, int to, int p) {
+        return p == from || boundary(text.charAt(p - 1), text.charAt(p), charAt(text, p + 1, to));
+    }
+
+    private static boolean wordEnd(CharSequence text, int to, int q) {
+        return q + 1 >= to || boundary(text.charAt(q), text.charAt(q + 1), charAt(text, q + 2, to));
+    }
+
+    /**
+     * [from, to) 中单词的个数，from、to 为标识符中的字母或分隔符
+     */
+    private static int words(CharSequence text, int from, int to, int limit) {
+        int words = 0;
+        for (int i = from; i < to; i++) {
+            char b = text.charAt(i);
+            if (Character.isLetter(b)
+                    && (i == from || boundary(text.charAt(i - 1), b, charAt(text, i + 1, limit)))) {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return 起点为 p 的关键字所在标识符的起点，前缀过长时返回-1
+     */
+    private int prefix(CharSequence text, int from, int to, int p) {
+        int q = p;
+        while (q > from) {
+            char a = text.charAt(q - 1);
+            if (!Character.isLetter(a) && !(isSeparator(a) && q - 1 > from
+                    && Character.isLetter(text.charAt(q - 2)) && Character.isLetter(text.charAt(q)))) {
+                break;
+            }
+            if (p - --q > MAX_AFFIX) {
+                return -1;
+            }
+        }
+        return q == p || words(text, q, p, to) <= prefixWords ? q : -1;
+    }
+
+    /**
+     * @return 终点为 end 的关键字所在标识符的终点，后缀过长时返回-1
+     */
+    private int suffix(CharSequence text, int to, int end) {
+        int q = end;
+        while (q + 1 < to) {
+            char b = text.charAt(q + 1);
+            if (!Character.isLetter(b) && !(isSeparator(b) && q + 2 < to
+                    && Character.isLetterOrDigit(text.charAt(q)) && Character.isLetter(text.charAt(q + 2)))) {
+                break;
+            }
+            if (++q - end > MAX_AFFIX) {
+                return -1;
+            }
+        }
+        return q == end || words(text, end + 1, q + 1, to) <= suffixWords ? q : -1;
+    }
+
+    @Override
+    public void match(CharSequence text, int from, int to, int scanFrom, int scanTo, MatchList matches) {
+        final Automaton automaton = this.automaton;
+        final int[] trail = matches.trail(trailSize);
+        final int mask = trailSize - 1;
+        int fed = 0;
+        int handledTo = -1;//已处理的标识符的终点，其中之后结束的关键字不再输出
+        int s = 0;
+        for (int i = scanFrom; i < scanTo; i++) {
+            char c = text.charAt(i);
+            if (isSeparator(c) && joins(text, from, to, i, c)) {
+                continue;
+            }
+            trail[fed++ & mask] = i;
+            int t = automaton.next(s, c);
+            if (t >= 0) {
+                s = t;
+                continue;
+            }
+            s = ~t;
+            if (i > handledTo && wordEnd(text, to, i)) {
+                handledTo = emit(text, from, to, scanTo, i, s, trail, fed, matches, handledTo);
+            }
+        }
+    }
+
+    /**
+     * 按从长到短取第一个前后缀符合要求的关键字，终点不早于 scanTo 的标识符留给之后的扫描
+     *
+     * @return 已处理的标识符的终点
+     */
+    private int emit(CharSequence text, int from, int to, int scanTo, int end, int state, int[] trail, int fed,
+                     MatchList matches, int handledTo) {
+        int identifierEnd = -2;
+        for (int o = automaton.output(state); o != -1; o = automaton.nextOutput(o)) {
+            int k = automaton.keyword(o);
+            int start = trail[(fed - automaton.length(k)) & (trailSize - 1)];
+            if (!wordStart(text, from, to, start)) {
+                continue;
+            }
+            int identifierStart = prefix(text, from, to, start);
+            if (identifierStart < 0) {
+                continue;
+            }
+            if (identifierEnd == -2) {
+                identifierEnd = suffix(text, to, end);
+            }
+            if (identifierEnd < 0) {
+                return handledTo;
+            }
+            if (identifierEnd < scanTo) {
+                matches.add(identifierStart, identifierEnd, k);
+            }
+            return identifierEnd;
+        }
+        return handledTo;
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        int s = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (isSeparator(c) && joins(text, 0, length, i, c)) {
+                continue;
+            }
+            s = automaton.next(s, c);
+            if (s < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 分隔符可能在关键字内部，也视为关键字字符
+     */
+    @Override
+    public boolean isKeywordChar(char c) {
+        return isSeparator(c) || automaton.isKeywordChar(c);
+    }
+
+    /**
+     * 命中区间(整个标识符)的最大长度，分段扫描、并行扫描按此重叠
+     */
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return automaton.memoryBytes();
+    }
+
+}
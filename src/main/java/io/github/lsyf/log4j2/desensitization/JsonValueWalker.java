@@ -0,0 +1,453 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * json 模式的字段：关键字恰好是 json 的键(如 {@code "phone":})时，逐字符识别其后的值，只替换字符串和数字值本身；
+ * 值为对象或数组时替换其中所有的字符串和数字值，不替换其中的键。true/false/null 不替换。
+ * 字符串可以用单引号；整个 json 在另一个字符串中(引号写作 {@code \"})时按转义后的引号识别。
+ * 关键字不是键(之前没有引号或之后没有冒号)时 {@link #keyed} 为false，由调用方按文本模式处理。
+ * <p>
+ * 不构建对象树，状态只有嵌套栈和当前值的位置，字符逐个输入，一次性扫描与 {@link StreamingMasker} 共用。
+ * 每个值的前 skipHead、后 skipTail 个字符不替换，保留部分不拆开转义序列与代理对。
+ * 替换区间按顺序追加到 ranges，已确定的部分在值结束前即可取出，文本在值的中间结束时以文本末尾为值的终点。
+ */
+final class JsonValueWalker {
+
+    private static final ThreadLocal<JsonValueWalker> THREAD_LOCAL = new ThreadLocal<>();
+
+    private static final int KEY_QUOTE = 0;//关键字之后的引号
+    private static final int BEFORE_COLON = 1;
+    private static final int BEFORE_VALUE = 2;
+    private static final int CONTAINER = 3;//对象或数组内，字符串之外
+    private static final int STRING = 4;
+    private static final int NUMBER = 5;
+    private static final int DONE = 6;
+
+    private static final int MAX_ESCAPE = 6;//最长的转义序列 backslash-u-XXXX
+
+    /**
+     * 关键字之前为转义的双引号
+     */
+    static final char ESCAPED_QUOTE = '\\';
+
+    private int state = DONE;
+    private char keyQuote;//键的引号
+    private boolean escaped;//json 在另一个字符串中，双引号写作 \"，反斜杠写作 \\
+    private int maxEscape;//原文中最长的转义序列
+    private long backslash = -1;//escaped 时尚未确定含义的反斜杠
+    private long tokenStart;//当前字符的起点，转义的引号为反斜杠的位置
+    private int skipHead;
+    private int skipTail;
+    private long[] objects = new long[1];//嵌套栈，第i位表示第i层是否为对象
+    private int depth;
+    private boolean expectKey;//对象内下一个字符串是键
+    private boolean started;//值已开始
+    long coveredTo;//值的终点，值未开始时为-1
+    boolean masked;
+    boolean keyed;//关键字之后为冒号，是 json 的键
+
+
+    //当前字符串或数字
+    private boolean scalarValue;//是值而不是键
+    private char stringQuote;//字符串的引号
+    private long contentStart;
+    private long head;
+    private long headFrom;//调整后的替换起点，未读到 head 时为-1
+    private long maskedTo;
+    private long escapeStart = -1;//正在读取的转义序列
+    private long escapeEnd;
+    private char previous;
+    //最近的转义序列与字符，用于确定替换终点，长度与 skipTail 有关
+    private int escapeHead;
+    private int escapeCount;
+    private long[] escapeStarts = new long[8];
+    private long[] escapeEnds = new long[8];
+    private char[] recent = new char[64];
+
+    int rangeSize;
+    long[] rangeStarts = new long[16];
+    long[] rangeEnds = new long[16];
+
+    /**
+     * 获取当前线程的实例；未启用ThreadLocal时(如web应用)每次新建
+     */
+    static JsonValueWalker get() {
+        if (!Constants.ENABLE_THREADLOCALS) {
+            return new JsonValueWalker();
+        }
+        JsonValueWalker walker = THREAD_LOCAL.get();
+        if (walker == null) {
+            walker = new JsonValueWalker();
+            THREAD_LOCAL.set(walker);
+        }
+        return walker;
+    }
+
+    /**
+     * 关键字之前的引号
+     *
+     * @param before      关键字的前一个字符，没有时为0
+     * @param beforeQuote 再前一个字符，没有时为0
+     * @return 双引号、单引号或 {@link #ESCAPED_QUOTE}，不是引号时返回0
+     */
+    static char keyQuote(char before, char beforeQuote) {
+        if (before == '\'') {
+            return before;
+        }
+        if (before != '"') {
+            return 0;
+        }
+        return beforeQuote == '\\' ? ESCAPED_QUOTE : '"';
+    }
+
+    /**
+     * @param quote {@link #keyQuote(char, char)} 的结果，为0时关键字不是键，不做处理
+     */
+    JsonValueWalker begin(LoggingScanner.Config config, char quote) {
+        this.state = quote != 0 ? KEY_QUOTE : DONE;
+        this.escaped = quote == ESCAPED_QUOTE;
+        this.keyQuote = escaped ? '"' : quote;
+        this.maxEscape = escaped ? MAX_ESCAPE + 1 : MAX_ESCAPE;
+        this.backslash = -1;
+        this.keyed = false;
+        this.skipHead = config.getSkipHead();
+        this.skipTail = config.getSkipTail();
+        this.depth = 0;
+        this.started = false;
+        this.coveredTo = -1;
+        this.masked = false;
+        this.rangeSize = 0;
+        int size = Integer.highestOneBit(Math.max(skipTail, 1) + 2 * maxEscape) << 1;
+        if (recent.length < size) {
+            recent = new char[size];
+        }
+        return this;
+    }
+
+    boolean active() {
+        return state != DONE;
+    }
+
+    /**
+     * 值已开始且未结束，之前读过的位置都在值的范围内
+     */
+    boolean covering() {
+        return started && state != DONE;
+    }
+
+    /**
+     * 之前的位置不会再被替换
+     *
+     * @param index 下一个要输入的位置
+     */
+    long pending(long index) {
+        if (scalarValue && (state == STRING || state == NUMBER)) {
+            return Math.min(index, headFrom < 0 ? head : Math.max(headFrom, maskedTo));
+        }
+        return index;
+    }
+
+    /**
+     * 输入 position 处的字符
+     *
+     * @return 是否需要继续输入
+     */
+    boolean next(char ch, long position) {
+        recent[(int) (position & (recent.length - 1))] = ch;
+        tokenStart = position;
+        if (escaped && !(state == STRING && escapeStart >= 0)) {
+            if (backslash >= 0) {
+                //反斜杠与其后的字符：\" 为引号，字符串中的 \\ 为转义序列的开始，字符串外的 \n 等为空白
+                tokenStart = backslash;
+                backslash = -1;
+                if (ch != '"' && ch != '\\' && state != STRING) {
+                    ch = ' ';
+                }
+            } else if (ch == '\\') {
+                backslash = position;
+                previous = ch;
+                return true;
+            } else if (ch == '"') {
+                //未转义的双引号是外层字符串的终点
+                finish(position);
+                return false;
+            }
+        }
+        switch (state) {
+            case KEY_QUOTE:
+                state = ch == keyQuote ? BEFORE_COLON : DONE;
+                break;
+            case BEFORE_COLON:
+                if (ch == ':') {
+                    keyed = true;
+                    state = BEFORE_VALUE;
+                } else if (!isWhitespace(ch)) {
+                    state = DONE;
+                }
+                break;
+            case BEFORE_VALUE:
+                if (ch == '"' || ch == '\'') {
+                    started = true;
+                    beginString(ch, position, true);
+                } else if (ch == '{' || ch == '[') {
+                    started = true;
+                    push(ch == '{');
+                    state = CONTAINER;
+                } else if (ch == '-' || ch >= '0' && ch <= '9') {
+                    started = true;
+                    beginNumber(ch, position);
+                } else if (!isWhitespace(ch)) {
+                    state = DONE;
+                }
+                break;
+            case CONTAINER:
+                container(ch, position);
+                break;
+            case STRING:
+                string(ch, position);
+                break;
+            default:
+                if (ch >= '0' && ch <= '9' || ch == '.' || ch == '-' || ch == '+' || ch == 'e' || ch == 'E') {
+                    content(ch, position);
+                } else {
+                    endScalar(tokenStart);
+                    if (depth == 0) {
+                        coveredTo = tokenStart;
+                        state = DONE;
+                    } else {
+                        state = CONTAINER;
+                        container(ch, position);
+                    }
+                }
+                break;
+        }
+        previous = ch;
+        return state != DONE;
+    }
+
+    /**
+     * 文本在 end 处结束
+     */
+    void finish(long end) {
+        if (state == STRING || state == NUMBER) {
+            endScalar(end);
+        }
+        if (started && state != DONE) {
+            coveredTo = end;
+        }
+        state = DONE;
+    }
+
+    private void container(char ch, long position) {
+        if (ch == '"' || ch == '\'') {
+            beginString(ch, position, !expectKey);
+        } else if (ch == '{' || ch == '[') {
+            push(ch == '{');
+        } else if (ch == '}' || ch == ']') {
+            if (--depth == 0) {
+                coveredTo = position + 1;
+                state = DONE;
+            } else {
+                expectKey = false;
+            }
+        } else if (ch == ',') {
+            expectKey = (objects[(depth - 1) >>> 6] & (1L << (depth - 1))) != 0;
+        } else if (ch == ':') {
+            expectKey = false;
+        } else if (!expectKey && (ch == '-' || ch >= '0' && ch <= '9')) {
+            beginNumber(ch, position);
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth >>> 6 == objects.length) {
+            objects = Arrays.copyOf(objects, objects.length << 1);
+        }
+        if (object) {
+            objects[depth >>> 6] |= 1L << depth;
+        } else {
+            objects[depth >>> 6] &= ~(1L << depth);
+        }
+        depth++;
+        expectKey = object;
+    }
+
+    private void beginString(char quote, long position, boolean value) {
+        state = STRING;
+        stringQuote = quote;
+        beginScalar(position + 1, value);
+    }
+
+    private void beginNumber(char ch, long position) {
+        state = NUMBER;
+        beginScalar(position, true);
+        content(ch, position);
+    }
+
+    private void beginScalar(long start, boolean value) {
+        scalarValue = value;
+        contentStart = start;
+        head = start + skipHead;
+        headFrom = -1;
+        maskedTo = head;
+        escapeStart = -1;
+        escapeHead = 0;
+        escapeCount = 0;
+    }
+
+    private void string(char ch, long position) {
+        if (escapeStart >= 0) {
+            if (position == escapeLetter()) {
+                if (ch == 'u') {
+                    escapeEnd = escapeStart + maxEscape;
+                } else if (escaped && ch == '\\') {
+                    //原文 \\\" 或 \\\\
+                    escapeEnd = escapeStart + 4;
+                }
+            }
+            content(ch, position);
+            if (position + 1 >= escapeEnd) {
+                addEscape(escapeStart, escapeEnd, position);
+                escapeStart = -1;
+            }
+        } else if (ch == '\\') {
+            escapeStart = tokenStart;
+            escapeEnd = tokenStart + (escaped ? 3 : 2);
+            content(ch, position);
+        } else if (ch == stringQuote) {
+            endScalar(tokenStart);
+            if (depth == 0) {
+                coveredTo = position + 1;
+                state = DONE;
+            } else {
+                state = CONTAINER;
+            }
+        } else {
+            content(ch, position);
+        }
+    }
+
+    /**
+     * 转义序列中决定其长度的字符(u 或 escaped 时的反斜杠)的位置
+     */
+    private long escapeLetter() {
+        return escapeStart + (escaped ? 2 : 1);
+    }
+
+    /**
+     * 值中的字符：读到 head 时确定替换起点，之后替换终点之前已确定的部分
+     */
+    private void content(char ch, long position) {
+        if (!scalarValue) {
+            return;
+        }
+        //head 在转义序列中间时，等读到决定其长度的字符再确定
+        if (headFrom < 0 && position >= head && !(escapeStart >= 0 && escapeStart < head && position < escapeLetter())) {
+            if (escapeStart >= 0 && escapeStart < head) {
+                //head 在转义序列中间
+                headFrom = escapeEnd;
+            } else if (head > contentStart && Character.isLowSurrogate(ch) && Character.isHighSurrogate(previous)) {
+                headFrom = head + 1;
+            } else {
+                headFrom = head;
+            }
+        }
+        //值至少延伸到 position+1，替换终点最多因转义序列后退 maxEscape-1 个字符
+        long sure = position + 1 - skipTail - (maxEscape - 1);
+        if (headFrom >= 0 && sure > Math.max(headFrom, maskedTo)) {
+            addRange(Math.max(headFrom, maskedTo), sure);
+            maskedTo = sure;
+        }
+    }
+
+    private void endScalar(long end) {
+        if (!scalarValue) {
+            return;
+        }
+        long to = end - skipTail;
+        long from = headFrom < 0 ? head : headFrom;
+        long inEscape = escapeOf(to);
+        if (inEscape >= 0) {
+            to = inEscape;
+        } else if (to < end && to > from && Character.isHighSurrogate(charAt(to - 1))
+                && Character.isLowSurrogate(charAt(to))) {
+            to--;
+        }
+        if (from < to) {
+            long rangeFrom = Math.max(from, maskedTo);
+            if (rangeFrom < to) {
+                addRange(rangeFrom, to);
+            }
+        }
+        scalarValue = false;
+    }
+
+    /**
+     * @return position 落在转义序列中间时返回转义序列的起点，否则-1
+     */
+    private long escapeOf(long position) {
+        if (escapeStart >= 0 && escapeStart < position && position < escapeEnd) {
+            return escapeStart;
+        }
+        for (int i = 0; i < escapeCount; i++) {
+            int k = (escapeHead + i) & (escapeStarts.length - 1);
+            if (escapeStarts[k] < position && position < escapeEnds[k]) {
+                return escapeStarts[k];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 只保留可能包含替换终点的转义序列
+     */
+    private void addEscape(long start, long end, long position) {
+        long keepFrom = position - skipTail - 2 * maxEscape;
+        while (escapeCount > 0 && escapeEnds[escapeHead] <= keepFrom) {
+            escapeHead = (escapeHead + 1) & (escapeStarts.length - 1);
+            escapeCount--;
+        }
+        if (escapeCount == escapeStarts.length) {
+            long[] starts = new long[escapeCount << 1];
+            long[] ends = new long[escapeCount << 1];
+            for (int i = 0; i < escapeCount; i++) {
+                int k = (escapeHead + i) & (escapeStarts.length - 1);
+                starts[i] = escapeStarts[k];
+                ends[i] = escapeEnds[k];
+            }
+            escapeStarts = starts;
+            escapeEnds = ends;
+            escapeHead = 0;
+        }
+        int k = (escapeHead + escapeCount++) & (escapeStarts.length - 1);
+        escapeStarts[k] = start;
+        escapeEnds[k] = end;
+    }
+
+    private char charAt(long position) {
+        return recent[(int) (position & (recent.length - 1))];
+    }
+
+    private void addRange(long from, long to) {
+        masked = true;
+        if (rangeSize > 0 && rangeEnds[rangeSize - 1] == from) {
+            rangeEnds[rangeSize - 1] = to;
+            return;
+        }
+        if (rangeSize == rangeStarts.length) {
+            rangeStarts = Arrays.copyOf(rangeStarts, rangeSize << 1);
+            rangeEnds = Arrays.copyOf(rangeEnds, rangeSize << 1);
+        }
+        rangeStarts[rangeSize] = from;
+        rangeEnds[rangeSize] = to;
+        rangeSize++;
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n';
+    }
+
+}
@@ -0,0 +1,271 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于平铺 int[] 转移表的 Aho-Corasick 自动机。
+ * <p>
+ * 构建时把失败指针展开成完整的DFA，并把大小写折叠进字符分类表，扫描时每个字符只需一次分类查表和一次转移查表，
+ * 不转换小写、不装箱、不创建 Emit。转移值为目标状态在表中的偏移，目标状态有输出时取反存储，
+ * 因此热循环只需判断符号位。
+ * <p>
+ * 转移表的大小为 状态数 x 字母表大小，关键字很多(数千以上)时由 {@link #compile(String[])} 改用 {@link CompactKeywordAutomaton}。
+ */
+final class KeywordAutomaton implements IdentifierMatcher.Automaton {
+
+    private static final char[] EMPTY_PAGE = new char[256];
+
+    /**
+     * 平铺转移表的上限(int个数)，超过时使用 {@link CompactKeywordAutomaton}
+     */
+    static final int DENSE_LIMIT = 1 << 21;
+
+    private final char[][] classPages;//字符 -> 分类，按高8位分页，无关键字字符的页共享空页
+    private final int stride;//每个状态的转移数 = 分类数 + 1(分类0为非关键字字符)
+    private final int[] next;
+    private final int[] own;//状态自身对应的关键字下标，无则-1
+    private final int[] dictLink;//沿失败链最近的有输出状态，无则-1
+    private final int[] lengths;//关键字长度
+    private final int maxLength;
+
+    /**
+     * 按平铺转移表的大小选择实现
+     */
+    static IdentifierMatcher.Automaton compile(String[] keywords) {
+        Map<Character, Character> classes = classes(keywords);
+        long totalChars = 0;
+        for (String keyword : keywords) {
+            totalChars += keyword.length();
+        }
+        return (totalChars + 1) * (classes.size() + 1) > DENSE_LIMIT
+                ? new CompactKeywordAutomaton(keywords, classes)
+                : new KeywordAutomaton(keywords, classes);
+    }
+
+    KeywordAutomaton(String[] keywords) {
+        this(keywords, classes(keywords));
+    }
+
+    /**
+     * @param classes 字母表，见 {@link #classes(String[])}
+     */
+    private KeywordAutomaton(String[] keywords, Map<Character, Character> classes) {
+        //1. 字母表：关键字中出现的字符(折叠为小写)
+        this.stride = classes.size() + 1;
+        this.classPages = pages(classes);
+        int totalChars = 0;
+        for (String keyword : keywords) {
+            totalChars += keyword.length();
+        }
+
+        //2. trie
+        int[] go = new int[(totalChars + 1) * stride];
+        Arrays.fill(go, -1);
+        int[] ownOut = new int[totalChars + 1];
+        Arrays.fill(ownOut, -1);
+        this.lengths = new int[keywords.length];
+        int states = 1;
+        for (int k = 0; k < keywords.length; k++) {
+            String keyword = keywords[k];
+            int s = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int idx = s * stride + classOf(keyword.charAt(i));
+                if (go[idx] == -1) {
+                    go[idx] = states++;
+                }
+                s = go[idx];
+            }
+            if (ownOut[s] == -1) {
+                ownOut[s] = k;
+            }
+            lengths[k] = keyword.length();
+        }
+        int longest = 0;
+        for (int length : lengths) {
+            longest = Math.max(longest, length);
+        }
+        this.maxLength = longest;
+
+        //3. BFS 计算失败指针并展开为DFA
+        int[] fail = new int[states];
+        int[] dict = new int[states];
+        Arrays.fill(dict, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int a = 0; a < stride; a++) {
+            if (go[a] == -1) {
+                go[a] = 0;
+            } else if (go[a] != 0) {
+                fail[go[a]] = 0;
+                queue.add(go[a]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int a = 0; a < stride; a++) {
+                int t = go[s * stride + a];
+                int viaFail = go[fail[s] * stride + a];
+                if (t == -1) {
+                    go[s * stride + a] = viaFail;
+                } else {
+                    fail[t] = viaFail;
+                    dict[t] = ownOut[viaFail] != -1 ? viaFail : dict[viaFail];
+                    queue.add(t);
+                }
+            }
+        }
+
+        //4. 转移值改为偏移，有输出的目标取反
+        this.next = new int[states * stride];
+        for (int i = 0; i < next.length; i++) {
+            int t = go[i];
+            next[i] = ownOut[t] != -1 || dict[t] != -1 ? ~(t * stride) : t * stride;
+        }
+        this.own = Arrays.copyOf(ownOut, states);
+        this.dictLink = dict;
+    }
+
+    /**
+     * 关键字中出现的字符(折叠为小写) -> 分类，分类从1开始
+     */
+    static Map<Character, Character> classes(String[] keywords) {
+        Map<Character, Character> classes = new HashMap<>();
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char f = Character.toLowerCase(keyword.charAt(i));
+                if (!classes.containsKey(f)) {
+                    classes.put(f, (char) (classes.size() + 1));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 字符 -> 分类的分页表，大小写折叠到同一分类
+     */
+    static char[][] pages(Map<Character, Character> classes) {
+        char[][] pages = new char[256][];
+        Arrays.fill(pages, EMPTY_PAGE);
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            Character cls = classes.get(Character.toLowerCase((char) c));
+            if (cls != null) {
+                char[] page = pages[c >>> 8];
+                if (page == EMPTY_PAGE) {
+                    page = pages[c >>> 8] = new char[256];
+                }
+                page[c & 0xFF] = cls;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * 分页表占用的字节数，空页共享不计
+     */
+    static long pagesBytes(char[][] pages) {
+        long bytes = 16 + pages.length * 8L;
+        for (char[] page : pages) {
+            if (page != EMPTY_PAGE) {
+                bytes += 16 + page.length * 2L;
+            }
+        }
+        return bytes;
+    }
+
+    private int classOf(char c) {
+        return classPages[c >>> 8][c & 0xFF];
+    }
+
+    @Override
+    public void match(CharSequence text, int from, int to, int scanFrom, int scanTo, MatchList matches) {
+        final char[][] pages = this.classPages;
+        final int[] next = this.next;
+        int s = 0;
+        for (int i = scanFrom; i < scanTo; i++) {
+            char c = text.charAt(i);
+            int t = next[s + pages[c >>> 8][c & 0xFF]];
+            if (t >= 0) {
+                s = t;
+                continue;
+            }
+            s = ~t;
+            emit(text, from, to, i, s / stride, matches);
+        }
+    }
+
+    @Override
+    public boolean containsAny(CharSequence text) {
+        final char[][] pages = this.classPages;
+        final int[] next = this.next;
+        int s = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            s = next[s + pages[c >>> 8][c & 0xFF]];
+            if (s < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isKeywordChar(char c) {
+        return classOf(c) != 0;
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return pagesBytes(classPages) + 4L * (next.length + own.length + dictLink.length + lengths.length);
+    }
+
+    @Override
+    public int next(int state, char c) {
+        return next[state + classOf(c)];
+    }
+
+    @Override
+    public int output(int state) {
+        int s = state / stride;
+        return own[s] != -1 ? s : dictLink[s];
+    }
+
+    @Override
+    public int nextOutput(int output) {
+        return dictLink[output];
+    }
+
+    @Override
+    public int keyword(int output) {
+        return own[output];
+    }
+
+    @Override
+    public int length(int keyword) {
+        return lengths[keyword];
+    }
+
+    private void emit(CharSequence text, int from, int to, int end, int state, MatchList matches) {
+        //关键字之后的字符为字母则不是完整单词，该位置的所有输出都不成立
+        if (end + 1 < to && Character.isAlphabetic(text.charAt(end + 1))) {
+            return;
+        }
+        int s = own[state] != -1 ? state : dictLink[state];
+        while (s != -1) {
+            int k = own[s];
+            int start = end - lengths[k] + 1;
+            if (start == from || !Character.isAlphabetic(text.charAt(start - 1))) {
+                matches.add(start, end, k);
+            }
+            s = dictLink[s];
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package io.github.lsyf.log4j2.desensitization;
+
+/**
+ * 关键字匹配引擎。构建后只读，可被多线程共享。
+ * <p>
+ * 匹配规则与 ahocorasick 的 {@code onlyWholeWords().ignoreCase()} 一致：忽略大小写，
+ * 关键字前后相邻字符不能是字母。{@link IdentifierMatcher} 按标识符的单词边界匹配，命中为整个标识符。
+ */
+interface KeywordMatcher {
+
+    /**
+     * 扫描 text 的 [from, to) 区间，命中按结束位置升序追加到 matches，规则下标即关键字下标
+     *
+     * @param scanFrom 开始扫描的位置，调用方保证其之前不存在关键字(如 {@link KeywordPrefilter} 给出的候选位置)，
+     *                 整词判断仍以 from 为边界
+     */
+    default void match(CharSequence text, int from, int to, int scanFrom, MatchList matches) {
+        match(text, from, to, scanFrom, to, matches);
+    }
+
+    /**
+     * 同上，但只输出起点不早于 scanFrom、终点早于 scanTo 的命中，整词判断仍以 [from, to) 为边界
+     */
+    void match(CharSequence text, int from, int to, int scanFrom, int scanTo, MatchList matches);
+
+    /**
+     * 不做整词判断，text 中是否出现任一关键字
+     */
+    boolean containsAny(CharSequence text);
+
+    /**
+     * 字符(忽略大小写)是否出现在某个关键字中
+     */
+    boolean isKeywordChar(char c);
+
+    /**
+     * 最长关键字的长度
+     */
+    int maxLength();
+
+    /**
+     * 编译后的结构占用的内存(字节，估算)，未知时为-1
+     */
+    default long memoryBytes() {
+        return -1;
+    }
+
+}
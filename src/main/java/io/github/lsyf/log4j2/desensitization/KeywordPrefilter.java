@@ -0,0 +1,205 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.Arrays;
+
+/**
+ * 自动机之前的快速过滤：找出第一个可能是关键字开头的位置，找不到则整行无需扫描。
+ * <p>
+ * 依次检查三个条件，均为构建时预计算的位图(大小写已折叠)：
+ * <ol>
+ * <li>当前字符是某个关键字的首字符</li>
+ * <li>下一个字符是某个关键字的第二个字符，且(首字符, 第二字符)组合出现在关键字中(哈希位图，可能误判不会漏判)</li>
+ * <li>前一个字符不是字母(整词匹配)；按标识符匹配时为可能的单词边界，第二个字符也可以是分隔符</li>
+ * </ol>
+ * 存在单字符关键字时跳过第2步。两个字符都是ASCII时，前两步合并为一次 128x128 位图查表。
+ * 首字符(含大小写)不多且 {@link CharRuns#ACCELERATED} 时，先批量跳过不是首字符的位置。
+ */
+final class KeywordPrefilter {
+
+    private static final int WORDS = 1 << 10;//65536 / 64
+
+    private final long[] first = new long[WORDS];
+    private final long[] second;//存在单字符关键字时为null
+    private final long[] pairs;
+    private final long[] asciiPairs;//(c0 << 7 | c1) -> 是否为某关键字的前两个字符，存在单字符关键字时为null
+    private final char[] firstChars;//所有首字符(含大小写)，不超过 CharRuns.MAX_CHARS 个时用于批量跳过，否则为null
+    private final boolean identifiers;//按标识符匹配，见 IdentifierMatcher
+
+    KeywordPrefilter(String[] keywords) {
+        this(keywords, false);
+    }
+
+    /**
+     * @param identifiers 按标识符匹配，keywords 为去掉分隔符后的关键字
+     */
+    KeywordPrefilter(String[] keywords, boolean identifiers) {
+        this.identifiers = identifiers;
+        boolean single = false;
+        long[] firstFolded = new long[WORDS];
+        long[] secondFolded = new long[WORDS];
+        long[] pairBits = new long[WORDS];
+        for (String keyword : keywords) {
+            char f0 = Character.toLowerCase(keyword.charAt(0));
+            set(firstFolded, f0);
+            if (keyword.length() == 1) {
+                single = true;
+                continue;
+            }
+            char f1 = Character.toLowerCase(keyword.charAt(1));
+            set(secondFolded, f1);
+            set(pairBits, pairHash(f0, f1));
+            if (identifiers) {
+                //首字符之后可能是被跳过的分隔符
+                for (char separator : new char[]{'_', '-'}) {
+                    set(secondFolded, separator);
+                    set(pairBits, pairHash(f0, separator));
+                }
+            }
+        }
+        long[] secondBits = single ? null : new long[WORDS];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char f = Character.toLowerCase((char) c);
+            if (get(firstFolded, f)) {
+                set(first, c);
+            }
+            if (secondBits != null && get(secondFolded, f)) {
+                set(secondBits, c);
+            }
+        }
+        char[] chars = new char[CharRuns.MAX_CHARS];
+        int n = 0;
+        for (int c = 0; c <= Character.MAX_VALUE && n <= chars.length; c++) {
+            if (get(first, c)) {
+                if (n < chars.length) {
+                    chars[n] = (char) c;
+                }
+                n++;
+            }
+        }
+        this.firstChars = n > 0 && n <= chars.length ? Arrays.copyOf(chars, n) : null;
+        this.second = secondBits;
+        this.pairs = single ? null : pairBits;
+        this.asciiPairs = single ? null : new long[128 * 128 / 64];
+        if (asciiPairs != null) {
+            for (int c = 0; c < 128; c++) {
+                for (int d = 0; d < 128; d++) {
+                    if (get(first, c) && get(secondBits, d)
+                            && get(pairBits, pairHash(Character.toLowerCase((char) c), Character.toLowerCase((char) d)))) {
+                        set(asciiPairs, c << 7 | d);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return [from, to) 中第一个候选位置，没有则返回-1
+     */
+    int find(CharSequence text, int from, int to) {
+        if (firstChars != null && CharRuns.ACCELERATED) {
+            return findAccelerated(text, from, to);
+        }
+        if (second == null) {
+            return findFirst(text, from, to);
+        }
+        final long[] first = this.first;
+        final long[] second = this.second;
+        final long[] asciiPairs = this.asciiPairs;
+        if (from >= to) {
+            return -1;
+        }
+        char d = text.charAt(from);
+        for (int i = from; i < to - 1; i++) {
+            char c = d;
+            d = text.charAt(i + 1);
+            if ((c | d) < 128) {
+                int pair = c << 7 | d;
+                if ((asciiPairs[pair >>> 6] & (1L << pair)) == 0) {
+                    continue;
+                }
+            } else if ((first[c >>> 6] & (1L << c)) == 0
+                    || (second[d >>> 6] & (1L << d)) == 0
+                    || !get(pairs, pairHash(Character.toLowerCase(c), Character.toLowerCase(d)))) {
+                continue;
+            }
+            if (startsWord(text, from, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 批量跳过不是首字符的位置，候选位置的判断同 {@link #find(CharSequence, int, int)}
+     */
+    private int findAccelerated(CharSequence text, int from, int to) {
+        final int limit = second == null ? to : to - 1;
+        for (int i = from; i < limit; i++) {
+            i = CharRuns.indexOfAny(firstChars, text, i, limit);
+            if (i == limit) {
+                break;
+            }
+            if (second != null) {
+                char c = text.charAt(i);
+                char d = text.charAt(i + 1);
+                if ((c | d) < 128) {
+                    int pair = c << 7 | d;
+                    if ((asciiPairs[pair >>> 6] & (1L << pair)) == 0) {
+                        continue;
+                    }
+                } else if ((second[d >>> 6] & (1L << d)) == 0
+                        || !get(pairs, pairHash(Character.toLowerCase(c), Character.toLowerCase(d)))) {
+                    continue;
+                }
+            }
+            if (startsWord(text, from, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findFirst(CharSequence text, int from, int to) {
+        final long[] first = this.first;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if ((first[c >>> 6] & (1L << c)) != 0 && startsWord(text, from, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWord(CharSequence text, int from, int i) {
+        if (i == from) {
+            return true;
+        }
+        char a = text.charAt(i - 1);
+        return identifiers ? IdentifierMatcher.mayStartWord(a, text.charAt(i)) : !Character.isAlphabetic(a);
+    }
+
+    private static int pairHash(char a, char b) {
+        return (((a << 16) | b) * 0x9E3779B1) >>> 16;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * 位图占用的字节数
+     */
+    long memoryBytes() {
+        return 8L * (first.length + length(second) + length(pairs) + length(asciiPairs))
+                + (firstChars == null ? 0 : 2L * firstChars.length);
+    }
+
+    private static int length(long[] bits) {
+        return bits == null ? 0 : bits.length;
+    }
+
+}
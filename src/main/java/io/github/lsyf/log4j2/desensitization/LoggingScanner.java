@@ -1,127 +1,818 @@
 package io.github.lsyf.log4j2.desensitization;
 
-import org.ahocorasick.trie.Emit;
-import org.ahocorasick.trie.Trie;
-
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class LoggingScanner {
 
+    /**
+     * 默认引擎：内置的平铺转移表自动机，扫描不产生对象
+     */
+    public static final String ENGINE_TRIE = "trie";
+    /**
+     * 备选引擎：org.ahocorasick
+     */
+    public static final String ENGINE_AHOCORASICK = "ahocorasick";
+    /**
+     * 默认缓存的消息模板数
+     */
+    public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 4096;
+    /**
+     * 默认分段扫描的长度阈值(字符数)
+     */
+    public static final int DEFAULT_STREAM_THRESHOLD = 65536;
+    /**
+     * 默认匹配方式：关键字之后按字符格式查找内容
+     */
+    public static final String MODE_TEXT = "text";
+    /**
+     * 关键字为 json 的键时只替换对应的值，见 {@link JsonValueWalker}
+     */
+    public static final String MODE_JSON = "json";
+    /**
+     * 默认替换策略：每个字符替换为替换字符
+     */
+    public static final String STRATEGY_MASK = "mask";
+    /**
+     * 替换为 HMAC-SHA256 令牌，同一值的令牌相同，见 {@link Tokenizer}
+     */
+    public static final String STRATEGY_HMAC = "hmac";
+    /**
+     * 替换为 SHA-256 摘要，key 可选
+     */
+    public static final String STRATEGY_HASH = "hash";
+    /**
+     * 保留格式的替换：数字、字母、汉字替换为同类字符
+     */
+    public static final String STRATEGY_FPE = "fpe";
+    /**
+     * 默认缓存的令牌数
+     */
+    public static final int DEFAULT_TOKEN_CACHE_SIZE = 4096;
+    /**
+     * 默认的关键字匹配方式：整词匹配，关键字前后相邻的字符不能是字母
+     */
+    public static final String MATCH_WORD = "word";
+    /**
+     * 按标识符匹配：关键字同时匹配 camelCase、snake_case、kebab-case 的变体及带前后缀的字段名，见 {@link IdentifierMatcher}
+     */
+    public static final String MATCH_IDENTIFIER = "identifier";
+    /**
+     * 按标识符匹配时默认允许的前缀单词数
+     */
+    public static final int DEFAULT_PREFIX_WORDS = 2;
+    /**
+     * 按标识符匹配时默认允许的后缀单词数
+     */
+    public static final int DEFAULT_SUFFIX_WORDS = 1;
+
     private Map<String, Config> configMap = new HashMap<>();
     private Set<String> keywords = new HashSet<>();
     private boolean enable;
+    //关键字自动机，构造时编译一次，之后只读，可被多线程共享
+    private KeywordMatcher matcher;
+    private KeywordPrefilter prefilter;//自动机前的快速过滤，绝大多数不含关键字的行在此放行
+    private final ScannerStats stats;
+    private Config[] rules;//与自动机中的关键字下标一一对应
+    private TemplateCache templateCache;//消息模板分析结果，容量为0时为null
+    private boolean templateSafe;//'{' '}' 与填充用的空格都不是关键字字符时才分析模板
+    private boolean nullClean;//参数为null时输出的"null"不含关键字
+    private boolean digitsClean;//整数参数的输出不含关键字
+    private int streamThreshold = DEFAULT_STREAM_THRESHOLD;//超过该长度的文本分段扫描，命中列表等内存不随长度增长
+    private PatternAutomaton patterns;//值格式，未配置时为null
+    private Config[] patternRules;//与值格式下标一一对应
+    private int parallelThreshold;//超过该长度的文本分段并行扫描，0为不并行
+    private ParallelScan parallel;
+    private boolean identifiers;//按标识符匹配
 
 
     private static final String DEFAULT_NAME = "__default__";
     private Config DEFAULT = new Config(DEFAULT_NAME, "num|en|lang", 0, 0, '*', " \t", 5);
 
+    {
+        DEFAULT.setMode(MODE_TEXT);
+    }
+
 
     public LoggingScanner(boolean enable, List<Config> configs) {
+        this(enable, configs, ENGINE_TRIE);
+    }
+
+    public LoggingScanner(boolean enable, List<Config> configs, String engine) {
+        this(enable, configs, engine, DEFAULT_TEMPLATE_CACHE_SIZE);
+    }
+
+    /**
+     * @param templateCacheSize 缓存的消息模板数，0为不缓存
+     */
+    public LoggingScanner(boolean enable, List<Config> configs, String engine, int templateCacheSize) {
+        this(enable, configs, new Options().setEngine(engine).setTemplateCacheSize(templateCacheSize));
+    }
+
+    /**
+     * @throws IllegalArgumentException 值格式不合法
+     */
+    LoggingScanner(boolean enable, List<Config> configs, Options options) {
+        this.stats = options.stats == null ? new ScannerStats() : options.stats;
+        long started = System.nanoTime();
+        if (options.patterns != null && !options.patterns.isEmpty()) {
+            compilePatterns(options.patterns);
+        }
         try {
             this.enable = enable;
+            this.streamThreshold = options.streamThreshold;
             if (configs == null || configs.size() == 0) {
                 return;
             }
-            configMap = configs.stream()
-                    .filter(Objects::nonNull)
-                    .filter(f -> f.getName() != null && f.getName().trim().length() > 0)
-                    .peek(f -> {
-                        f.setName(f.getName().toLowerCase());
-                        keywords.add(f.getName());
-                    })
-                    .collect(Collectors.toMap(Config::getName, a -> a, (a, b) -> b));
+            //同名时后面的规则覆盖前面的，词典在前，单独配置的字段可以覆盖词典中的同名关键字
+            for (Config f : configs) {
+                if (f == null) {
+                    continue;
+                }
+                if (f.getKeywords() != null) {
+                    //词典中的关键字共用同一个规则
+                    for (String keyword : f.getKeywords()) {
+                        if (keyword != null && keyword.trim().length() > 0) {
+                            String name = keyword.trim().toLowerCase();
+                            configMap.put(name, f);
+                            keywords.add(name);
+                        }
+                    }
+                } else if (f.getName() != null && f.getName().trim().length() > 0) {
+                    f.setName(f.getName().toLowerCase());
+                    configMap.put(f.getName(), f);
+                    keywords.add(f.getName());
+                }
+            }
             //自定义默认配置覆盖，并移除map
             if (configMap.containsKey(DEFAULT_NAME)) {
                 DEFAULT.override(configMap.get(DEFAULT_NAME));
                 configMap.remove(DEFAULT_NAME);
                 keywords.remove(DEFAULT_NAME);
             }
-            //未配置则使用默认配置
-            configMap.forEach((k, v) -> v.extend(DEFAULT));
+            //未配置则使用默认配置，共用的规则只处理一次
+            Set<Config> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            distinct.addAll(configMap.values());
+            distinct.forEach(v -> v.extend(DEFAULT));
+            compileTokenizers(distinct, options.tokenCacheSize);
+            if (!keywords.isEmpty()) {
+                String[] names = keywords.toArray(new String[0]);
+                rules = new Config[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    rules[i] = configMap.get(names[i]);
+                    //词典按词典名统计
+                    rules[i].stats = stats.rule(rules[i].getKeywords() != null && rules[i].getName() != null
+                            ? rules[i].getName() : names[i]);
+                }
+                identifiers = MATCH_IDENTIFIER.equalsIgnoreCase(options.keywordMatch);
+                if (identifiers) {
+                    //关键字去掉分隔符后编译，扫描时跳过标识符内部的分隔符
+                    String[] normalized = new String[names.length];
+                    for (int i = 0; i < names.length; i++) {
+                        normalized[i] = IdentifierMatcher.normalize(names[i]);
+                    }
+                    matcher = new IdentifierMatcher(KeywordAutomaton.compile(normalized), options.prefixWords, options.suffixWords);
+                    prefilter = new KeywordPrefilter(normalized, true);
+                } else {
+                    matcher = ENGINE_AHOCORASICK.equalsIgnoreCase(options.engine)
+                            ? new AhoCorasickMatcher(names)
+                            : KeywordAutomaton.compile(names);
+                    prefilter = new KeywordPrefilter(names);
+                }
+                long matcherBytes = matcher.memoryBytes();
+                stats.keywordCount = names.length;
+                stats.matcherBytes = matcherBytes < 0 ? -1 : matcherBytes + prefilter.memoryBytes();
+                stats.buildNanos = System.nanoTime() - started;
+                templateSafe = !matcher.isKeywordChar('{') && !matcher.isKeywordChar('}') && !matcher.isKeywordChar(' ');
+                nullClean = !matcher.containsAny("null");
+                digitsClean = !matcher.isKeywordChar('-');
+                for (char c = '0'; c <= '9'; c++) {
+                    digitsClean &= !matcher.isKeywordChar(c);
+                }
+                if (options.templateCacheSize > 0) {
+                    templateCache = new TemplateCache(options.templateCacheSize, stats);
+                    stats.templateCache = templateCache;
+                }
+            }
         } catch (Throwable e) {
             //ignore, do nothing.
         }
     }
 
+    /**
+     * 策略与 key 相同的字段共用一个 {@link Tokenizer}，不同字段中的同一个值得到同一个令牌。
+     * json 模式的值可能被转义序列拆开、在值结束前分段输出，仍按替换字符处理
+     */
+    private void compileTokenizers(Set<Config> configs, int tokenCacheSize) {
+        Map<String, Tokenizer> tokenizers = new HashMap<>();
+        for (Config config : configs) {
+            String strategy = config.getStrategy();
+            if (strategy == null || STRATEGY_MASK.equalsIgnoreCase(strategy) || config.isJson()) {
+                continue;
+            }
+            String id = strategy.toLowerCase() + ':' + config.getKey();
+            if (!tokenizers.containsKey(id)) {
+                tokenizers.put(id, Tokenizer.of(strategy, config.getKey(), tokenCacheSize, stats));
+            }
+            config.tokenizer = tokenizers.get(id);
+        }
+    }
+
+    private void compilePatterns(List<DesensitizedPattern> valuePatterns) {
+        String[] expressions = new String[valuePatterns.size()];
+        String[] checks = new String[valuePatterns.size()];
+        patternRules = new Config[valuePatterns.size()];
+        for (int i = 0; i < expressions.length; i++) {
+            DesensitizedPattern p = valuePatterns.get(i);
+            expressions[i] = p.effectivePattern();
+            checks[i] = p.effectiveCheck();
+            patternRules[i] = new Config(p.getName(), null, p.effectiveSkipHead(), p.effectiveSkipTail(),
+                    p.getC() == null ? '*' : p.getC(), null, 0);
+            patternRules[i].stats = stats.rule(p.getName());
+        }
+        patterns = new PatternAutomaton(expressions, checks);
+    }
+
+    /**
+     * 超过 threshold 的文本按段在 pool 上并行扫描，结果与顺序扫描一致。
+     * 只用于 trie 引擎且文本中没有值格式的值时，其他情况仍顺序扫描
+     *
+     * @param threshold 0为不并行
+     */
+    void setParallel(int threshold, ForkJoinPool pool) {
+        if (threshold > 0 && pool != null && matcher != null && !(matcher instanceof AhoCorasickMatcher)) {
+            this.parallelThreshold = Math.max(threshold, 2 * ParallelScan.MIN_SEGMENT);
+            this.parallel = new ParallelScan(pool, matcher, prefilter, rules);
+        }
+    }
+
+    /**
+     * 是否并行扫描 [from, to)
+     */
+    private boolean parallel(int from, int to, int candidate) {
+        return parallel != null && candidate >= 0 && to - from > parallelThreshold && parallel.segments(to - candidate) > 1;
+    }
+
+    /**
+     * 是否配置了关键字或值格式
+     */
+    private boolean hasRules() {
+        return matcher != null || patterns != null;
+    }
+
 
     public String processLog(String originMessage) {
-        if (!this.enable || originMessage == null || originMessage.length() == 0 || keywords.size() == 0) {
+        if (!this.enable || originMessage == null || originMessage.length() == 0 || !hasRules()) {
             return originMessage;
         }
-        char[] chars = originMessage.toCharArray();
+        boolean sampled = ScannerStats.sample();
+        long started = sampled ? System.nanoTime() : 0L;
+        String result = originMessage;
         try {
-            Trie trie = Trie.builder().addKeywords(keywords).onlyWholeWords().ignoreCase().build();
-            List<Emit> emits = (List<Emit>) trie.parseText(originMessage);
-            if (emits.size() == 0) {
-                return originMessage;
-            }
-            //增加一个配置方便计算
-            emits.add(new Emit(chars.length, chars.length, ""));
-
-            for (int i = 0; i < emits.size() - 1; i++) {
-                Emit emit = emits.get(i);
-                String keyword = emit.getKeyword();
-                Config config = this.configMap.get(keyword);
-
-                char x = config.getC();
-                int maxMissed = config.getMaxMissed();
-                boolean isHit = false;
-                int skipHead = config.getSkipHead();
-                int skipTail = config.getSkipTail();
-                int start = -1;
-                int end = -1;
-                int index;
-                int missNum = 0;//未匹配字符数
-                int continuousIgnoreNum = 0;//连续跳过字符数
-                int curTail = emit.getEnd();//匹配到的字符尾部
-                int nextHead = emits.get(i + 1).getStart();//下一个匹配字符的首部
-                for (index = curTail + 1; missNum <= maxMissed && index < nextHead; index++) {
-                    char c = chars[index];
-                    boolean hitIgnoreSymbol = config.hitIgnoreSymbol(c);
-                    boolean hitContent = config.hitContent(c);
-
-                    //非首次命中，或，首次命中且非忽略字符
-                    if ((isHit || !hitIgnoreSymbol) && hitContent) {
-                        isHit = true;
-                        if (start == -1) {
-                            start = index;
-                        }
-                    } else {
-                        //如果上个字符符合脱敏内容格式，下一个未命中，则视为结束
-                        if (isHit) {
-                            end = index;
-                            break;
-                        } else {
-                            if (hitIgnoreSymbol) {
-                                //对于免去筛查的字符，连续多个时视为只有一个字符
-                                if (++continuousIgnoreNum == 1) {
-                                    missNum++;
-                                }
-                            } else {
-                                //既非免筛字符也非脱敏内容，则清空连续免筛数，增加未命中数
-                                continuousIgnoreNum = 0;
-                                missNum++;
-                            }
-                        }
-                    }
+            stats.scannedChars.add(originMessage.length());
+            boolean values = hasValues(originMessage, 0, originMessage.length());
+            int candidate = prefilter(originMessage, 0, originMessage.length(), values);
+            if (!values && parallel(0, originMessage.length(), candidate)) {
+                StringBuilder buffer = new StringBuilder(originMessage);
+                if (parallel.process(buffer, 0, buffer.length(), candidate, null)) {
+                    result = buffer.toString();
                 }
-                if (isHit) {
-                    if (end == -1) {
-                        end = index;
-                    }
-                    for (int k = start + skipHead; k < end - skipTail; k++) {
-                        chars[k] = x;
+            } else if (values || candidate >= 0 && originMessage.length() > streamThreshold) {
+                StringBuilder buffer = new StringBuilder(originMessage);
+                if (streaming().process(buffer, 0, buffer.length(), candidate < 0 ? buffer.length() : candidate, null)) {
+                    result = buffer.toString();
+                }
+            } else if (candidate >= 0) {
+                MatchList matches = MatchList.get();
+                matcher.match(originMessage, 0, originMessage.length(), candidate, matches);
+                if (!matches.isEmpty()) {
+                    StringBuilder buffer = new StringBuilder(originMessage);
+                    if (maskMatches(rules, buffer, matches, 0, buffer.length(), null)) {
+                        result = buffer.toString();
                     }
                 }
             }
         } catch (Throwable e) {
             //ignore, do nothing.
         }
-        return new String(chars);
+        if (sampled) {
+            stats.recordLatency(System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    /**
+     * 分段读取in，脱敏后写入out，结果与 {@link #processLog(String)} 一致。
+     * 内存占用只与窗口大小和规则有关，与内容长度无关，用于很大的内容，如请求报文、批量导出的数据
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean processLog(Reader in, Appendable out) throws IOException {
+        if (!this.enable || !hasRules()) {
+            char[] chunk = new char[StreamingMasker.WINDOW];
+            for (int n; (n = in.read(chunk)) >= 0; ) {
+                out.append(CharBuffer.wrap(chunk, 0, n));
+            }
+            return false;
+        }
+        StreamingMasker masker = new StreamingMasker().reset(matcher, prefilter, rules, patterns, patternRules);
+        boolean masked = masker.process(in, out);
+        stats.lines.increment();
+        stats.scannedChars.add(masker.length());
+        if (!masker.hasCandidate()) {
+            stats.prefilterSkipped.increment();
+        }
+        return masked;
+    }
+
+    private StreamingMasker streaming() {
+        return StreamingMasker.get().reset(matcher, prefilter, rules, patterns, patternRules);
+    }
+
+    /**
+     * 直接在buffer上脱敏，替换字符原地写入，不产生中间String
+     *
+     * @param buffer 待脱敏内容
+     * @return 是否有字符被替换
+     */
+    public boolean mask(StringBuilder buffer) {
+        return buffer != null && mask(buffer, 0, buffer.length());
+    }
+
+    /**
+     * 只对buffer的 [from, to) 区间脱敏，区间两端视为文本边界
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean mask(StringBuilder buffer, int from, int to) {
+        return mask(buffer, from, to, -1, -1);
+    }
+
+    /**
+     * 按字段名直接查找规则，用于键值已知的结构化日志，如 MapMessage
+     *
+     * @param key 字段名，忽略大小写；按标识符匹配时也可以是字段名的命名变体
+     * @return 未配置该字段时返回null
+     */
+    public Config ruleOf(String key) {
+        if (!this.enable || key == null || matcher == null) {
+            return null;
+        }
+        //已是小写时 toLowerCase 返回原对象
+        Config config = configMap.get(key.toLowerCase());
+        if (config == null && identifiers) {
+            //按标识符匹配时，字段名整体为一个命中即可，如 userPhone
+            MatchList matches = MatchList.get();
+            matcher.match(key, 0, key.length(), 0, matches);
+            if (matches.size == 1 && matches.starts[0] == 0 && matches.ends[0] == key.length() - 1) {
+                config = rules[matches.rules[0]];
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 对已知字段的值脱敏，值的开头视为紧跟在字段名之后
+     *
+     * @return 未替换任何字符时返回原value
+     */
+    public String maskValue(Config rule, String value) {
+        if (rule == null || value == null || value.length() == 0) {
+            return value;
+        }
+        try {
+            StringBuilder buffer = new StringBuilder(value);
+            //json 模式下整个值即为要替换的内容
+            boolean masked = rule.isJson()
+                    ? maskRun(rule, buffer, 0, buffer.length(), null)
+                    : maskContent(rule, buffer, 0, buffer.length(), null);
+            return masked ? buffer.toString() : value;
+        } catch (Throwable e) {
+            //ignore, do nothing.
+        }
+        return value;
+    }
+
+    /**
+     * 只按值格式脱敏，用于没有对应字段的结构化日志的值
+     *
+     * @return 未配置值格式或未替换任何字符时返回原value
+     */
+    public String maskPatterns(String value) {
+        if (!this.enable || patterns == null || value == null || value.length() == 0) {
+            return value;
+        }
+        try {
+            if (!patterns.contains(value, 0, value.length())) {
+                return value;
+            }
+            StringBuilder buffer = new StringBuilder(value);
+            boolean masked = StreamingMasker.get().reset(null, null, null, patterns, patternRules)
+                    .process(buffer, 0, buffer.length(), buffer.length(), null);
+            return masked ? buffer.toString() : value;
+        } catch (Throwable e) {
+            //ignore, do nothing.
+        }
+        return value;
+    }
+
+    /**
+     * 对buffer的 [from, to) 区间脱敏，调用方保证 [cleanFrom, cleanTo) 中不含任何关键字(不论是否整词)，
+     * 如 {@link #templatePlaceholders(String)} 判定过的消息，只扫描其两侧。
+     * 两侧关键字之后的内容仍可能延伸进该区间并被替换。
+     *
+     * @return 是否有字符被替换
+     */
+    public boolean mask(StringBuilder buffer, int from, int to, int cleanFrom, int cleanTo) {
+        return buffer != null && scan(buffer, from, to, cleanFrom, cleanTo, null);
+    }
+
+    /**
+     * 同 {@link #mask(StringBuilder, int, int, int, int)}，但不修改text，替换区间按顺序记录到masks
+     *
+     * @return 是否有需要替换的字符
+     */
+    boolean collect(CharSequence text, int from, int to, int cleanFrom, int cleanTo, MaskList masks) {
+        return text != null && scan(text, from, to, cleanFrom, cleanTo, masks);
+    }
+
+    /**
+     * @param masks 为null时直接在text(StringBuilder)上替换
+     */
+    private boolean scan(CharSequence text, int from, int to, int cleanFrom, int cleanTo, MaskList masks) {
+        if (!this.enable || from >= to || !hasRules()) {
+            return false;
+        }
+        //抽样计时，只读时钟，不产生对象
+        boolean sampled = ScannerStats.sample();
+        long started = sampled ? System.nanoTime() : 0L;
+        boolean masked = scan0(text, from, to, cleanFrom, cleanTo, masks);
+        if (sampled) {
+            stats.recordLatency(System.nanoTime() - started);
+        }
+        return masked;
+    }
+
+    private boolean scan0(CharSequence text, int from, int to, int cleanFrom, int cleanTo, MaskList masks) {
+        try {
+            stats.scannedChars.add(to - from);
+            MatchList matches = MatchList.get();
+            //跨越区间边界的关键字：起点在区间前的终点不超过 headTo，终点在区间后的起点不早于 tailFrom
+            if (hasValues(text, from, to)) {
+                //值与关键字的替换区间由分段扫描合并，忽略不含关键字的区间
+                int candidate = prefilter(text, from, to, true);
+                return streaming().process(text, from, to, candidate < 0 ? to : candidate, masks);
+            }
+            if (matcher == null) {
+                prefilter(text, from, to, false);
+                return false;
+            }
+            int margin = matcher.maxLength() - 1;
+            int headTo = cleanFrom + margin;
+            int tailFrom = cleanTo - margin;
+            if (cleanFrom >= from && cleanTo <= to && headTo <= tailFrom) {
+                stats.lines.increment();
+                stats.cleanChars.add(tailFrom - headTo);
+                int head = prefilter.find(text, from, headTo);
+                if (head >= 0) {
+                    matcher.match(text, from, to, head, headTo, matches);
+                }
+                int tail = prefilter.find(text, tailFrom, to);
+                if (tail >= 0) {
+                    matcher.match(text, from, to, tail, to, matches);
+                }
+                if (head < 0 && tail < 0) {
+                    stats.prefilterSkipped.increment();
+                }
+            } else {
+                int candidate = prefilter(text, from, to, false);
+                if (candidate < 0) {
+                    return false;
+                }
+                if (parallel(from, to, candidate)) {
+                    return parallel.process(text, from, to, candidate, masks);
+                }
+                if (to - from > streamThreshold) {
+                    return streaming().process(text, from, to, candidate, masks);
+                }
+                matcher.match(text, from, to, candidate, matches);
+            }
+            return !matches.isEmpty() && maskMatches(rules, text, matches, from, to, masks);
+        } catch (Throwable e) {
+            //ignore, do nothing.
+        }
+        return false;
+    }
+
+    /**
+     * 分析 ParameterizedMessage 风格的模板，结果按模板缓存
+     *
+     * @return 模板中占位符 {} 的个数；模板本身可能含关键字，或关键字可能由模板与参数拼接而成时返回-1
+     */
+    public int templatePlaceholders(String template) {
+        if (templateCache == null || matcher == null || template == null) {
+            return -1;
+        }
+        int placeholders = templateCache.get(template);
+        if (placeholders == Integer.MIN_VALUE) {
+            placeholders = analyzeTemplate(template);
+            templateCache.put(template, placeholders);
+        }
+        return placeholders;
+    }
+
+    private int analyzeTemplate(String template) {
+        //含转义符时输出与模板不一致，不做分析
+        if (!templateSafe || template.indexOf('\\') >= 0 || matcher.containsAny(template)) {
+            return -1;
+        }
+        int placeholders = 0;
+        for (int i = template.indexOf("{}"); i >= 0; i = template.indexOf("{}", i + 2)) {
+            //占位符两侧为关键字字符，或两个占位符相邻时，关键字可能跨越模板与参数
+            if (i > 0 && matcher.isKeywordChar(template.charAt(i - 1))
+                    || i + 2 < template.length() && (matcher.isKeywordChar(template.charAt(i + 2)) || template.startsWith("{}", i + 2))) {
+                return -1;
+            }
+            placeholders++;
+        }
+        return placeholders;
+    }
+
+    /**
+     * 参数输出的文本是否必然不含关键字(不论是否整词)，只判断字符串、null与整数，其他类型返回false
+     */
+    public boolean isParameterClean(Object parameter) {
+        if (matcher == null) {
+            return false;
+        }
+        if (parameter == null) {
+            return nullClean;
+        }
+        if (parameter instanceof CharSequence) {
+            return !matcher.containsAny((CharSequence) parameter);
+        }
+        if (parameter instanceof Integer || parameter instanceof Long || parameter instanceof Short || parameter instanceof Byte) {
+            return digitsClean;
+        }
+        return false;
     }
 
+    /**
+     * 文本中是否有值格式的值；没有时只需按关键字扫描，可以使用不含关键字的区间、并行扫描等
+     */
+    private boolean hasValues(CharSequence text, int from, int to) {
+        return patterns != null && patterns.contains(text, from, to);
+    }
+
+    /**
+     * @param values 文本中是否有值，有值时仍需扫描
+     */
+    private int prefilter(CharSequence text, int from, int to, boolean values) {
+        stats.lines.increment();
+        int candidate = prefilter == null ? -1 : prefilter.find(text, from, to);
+        if (candidate < 0 && !values) {
+            stats.prefilterSkipped.increment();
+        }
+        return candidate;
+    }
+
+    public ScannerStats getStats() {
+        return stats;
+    }
+
+    static boolean maskMatches(Config[] rules, CharSequence buffer, MatchList matches, int from, int length, MaskList masks) {
+        boolean masked = false;
+        int coveredTo = -1;//json 值的终点，其中的命中已随值一起处理
+        for (int i = 0; i < matches.size; i++) {
+            if (matches.starts[i] < coveredTo) {
+                continue;
+            }
+            Config rule = rules[matches.rules[i]];
+            if (rule.isJson()) {
+                JsonValueWalker walker = JsonValueWalker.get();
+                boolean json = maskJson(walker, rule, buffer, from, matches.starts[i], matches.ends[i], length, masks);
+                if (walker.keyed) {
+                    masked |= json;
+                    coveredTo = (int) walker.coveredTo;
+                    continue;
+                }
+                //不是 json 的键(如 phone=138...)时按文本模式查找
+            }
+            int nextHead = i + 1 < matches.size ? matches.starts[i + 1] : length;//下一个匹配字符的首部
+            masked |= maskContent(rule, buffer, matches.ends[i] + 1, nextHead, masks);
+        }
+        return masked;
+    }
+
+    /**
+     * json 模式：命中为键时替换其后的值，不受下一个命中的限制，值的终点记录在 walker.coveredTo；
+     * 不是键时 walker.keyed 为false，没有替换
+     */
+    private static boolean maskJson(JsonValueWalker walker, Config config, CharSequence buffer, int from,
+                                    int start, int end, int length, MaskList masks) {
+        walker.begin(config, JsonValueWalker.keyQuote(start > from ? buffer.charAt(start - 1) : 0,
+                start - 1 > from ? buffer.charAt(start - 2) : 0));
+        for (int i = end + 1; i < length && walker.next(buffer.charAt(i), i); i++) {
+            //已确定的区间都在读取位置之前，原地替换不影响之后的读取
+            if (walker.rangeSize >= 32) {
+                applyRanges(walker, config.getC(), buffer, masks);
+            }
+        }
+        if (walker.active()) {
+            walker.finish(length);
+        }
+        applyRanges(walker, config.getC(), buffer, masks);
+        ScannerStats.RuleStats ruleStats = config.stats;
+        if (ruleStats != null && walker.keyed) {
+            ruleStats.matches.increment();
+            if (walker.masked) {
+                ruleStats.masks.increment();
+            }
+        }
+        return walker.masked;
+    }
+
+    private static void applyRanges(JsonValueWalker walker, char x, CharSequence buffer, MaskList masks) {
+        for (int i = 0; i < walker.rangeSize; i++) {
+            int head = (int) walker.rangeStarts[i];
+            int to = (int) walker.rangeEnds[i];
+            if (masks != null) {
+                masks.add(head, to, x);
+            } else {
+                StringBuilder target = (StringBuilder) buffer;
+                for (int k = head; k < to; k++) {
+                    target.setCharAt(k, x);
+                }
+            }
+        }
+        walker.rangeSize = 0;
+    }
+
+    /**
+     * 从 from 开始按规则查找脱敏内容并替换，不越过 nextHead。
+     * 替换只发生在 [from, nextHead) 内，之后的查找不会读到已替换的字符，因此原地替换与记录区间结果一致
+     *
+     * @param masks 不为null时只记录替换区间，否则直接在buffer(StringBuilder)上替换
+     * @see StreamingMasker 分段扫描时的同一逻辑
+     */
+    static boolean maskContent(Config config, CharSequence buffer, int from, int nextHead, MaskList masks) {
+        boolean masked = false;
+        int maxMissed = config.getMaxMissed();
+        boolean isHit = false;
+        int start = -1;
+        int end = -1;
+        int index;
+        int charCount = 1;
+        int missNum = 0;//未匹配字符数
+        int continuousIgnoreNum = 0;//连续跳过字符数
+        for (index = from; missNum <= maxMissed && index < nextHead; index += charCount) {
+            int c = Character.codePointAt(buffer, index);
+            charCount = Character.charCount(c);
+            boolean hitIgnoreSymbol = config.hitIgnoreSymbol(c);
+            boolean hitContent = config.hitContent(c);
+
+            //非首次命中，或，首次命中且非忽略字符
+            if ((isHit || !hitIgnoreSymbol) && hitContent) {
+                isHit = true;
+                if (start == -1) {
+                    start = index;
+                }
+                if (CharRuns.ACCELERATED) {
+                    //批量跳过其后连续的内容字符，停在第一个不属于内容或为代理字符的位置
+                    charCount = config.skipContent(buffer, index + charCount, nextHead) - index;
+                }
+            } else {
+                //如果上个字符符合脱敏内容格式，下一个未命中，则视为结束
+                if (isHit) {
+                    end = index;
+                    break;
+                } else {
+                    if (hitIgnoreSymbol) {
+                        //对于免去筛查的字符，连续多个时视为只有一个字符
+                        if (++continuousIgnoreNum == 1) {
+                            missNum++;
+                        }
+                    } else {
+                        //既非免筛字符也非脱敏内容，则清空连续免筛数，增加未命中数
+                        continuousIgnoreNum = 0;
+                        missNum++;
+                    }
+                }
+            }
+        }
+        if (isHit) {
+            if (end == -1) {
+                end = Math.min(index, nextHead);
+            }
+            masked = maskRun(config, buffer, start, end, masks);
+        }
+        ScannerStats.RuleStats ruleStats = config.stats;
+        if (ruleStats != null) {
+            ruleStats.matches.increment();
+            if (masked) {
+                ruleStats.masks.increment();
+            }
+        }
+        return masked;
+    }
+
+
+    /**
+     * 替换 [start, end) 中除前 skipHead、后 skipTail 个字符之外的部分
+     */
+    private static boolean maskRun(Config config, CharSequence buffer, int start, int end, MaskList masks) {
+        int head = start + config.getSkipHead();
+        int to = end - config.getSkipTail();
+        //不拆开代理对，保留部分的完整字符不被替换一半
+        if (head > start && head < to && Character.isLowSurrogate(buffer.charAt(head))
+                && Character.isHighSurrogate(buffer.charAt(head - 1))) {
+            head++;
+        }
+        if (to < end && to > head && Character.isHighSurrogate(buffer.charAt(to - 1))
+                && Character.isLowSurrogate(buffer.charAt(to))) {
+            to--;
+        }
+        if (head >= to) {
+            return false;
+        }
+        char x = config.getC();
+        //令牌由完整的值计算，替换其中 [head, to) 对应的部分
+        String token = config.tokenizer != null && end - start <= Tokenizer.MAX_VALUE
+                ? config.tokenizer.token(buffer, start, end) : null;
+        if (masks != null) {
+            masks.add(head, to, x, token, head - start);
+        } else {
+            StringBuilder target = (StringBuilder) buffer;
+            for (int k = head; k < to; k++) {
+                target.setCharAt(k, token == null ? x : token.charAt(k - start));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 扫描器的可选设置，未设置的项为默认值。编译规则时只读取，规则热更新时新旧扫描器共用同一个实例
+     */
+    static final class Options {
+        private List<DesensitizedPattern> patterns;//按值的格式脱敏的规则，可为null
+        private String engine = ENGINE_TRIE;//关键字匹配引擎
+        private int templateCacheSize = DEFAULT_TEMPLATE_CACHE_SIZE;//缓存的消息模板数，0为不缓存
+        private int streamThreshold = DEFAULT_STREAM_THRESHOLD;//超过该长度的文本分段扫描，0为总是分段
+        private int tokenCacheSize = DEFAULT_TOKEN_CACHE_SIZE;//令牌化策略每个 key 缓存的值的数量，0为不缓存
+        private String keywordMatch = MATCH_WORD;//关键字匹配方式，按标识符匹配时总是使用内置自动机
+        private int prefixWords = DEFAULT_PREFIX_WORDS;//按标识符匹配时关键字之前允许的单词数
+        private int suffixWords = DEFAULT_SUFFIX_WORDS;//按标识符匹配时关键字之后允许的单词数
+        private ScannerStats stats;//统计，为null时每个扫描器新建
+
+        Options setPatterns(List<DesensitizedPattern> patterns) {
+            this.patterns = patterns;
+            return this;
+        }
+
+        Options setEngine(String engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        Options setTemplateCacheSize(int templateCacheSize) {
+            this.templateCacheSize = templateCacheSize;
+            return this;
+        }
+
+        Options setStreamThreshold(int streamThreshold) {
+            this.streamThreshold = streamThreshold;
+            return this;
+        }
+
+        Options setTokenCacheSize(int tokenCacheSize) {
+            this.tokenCacheSize = tokenCacheSize;
+            return this;
+        }
+
+        Options setKeywordMatch(String keywordMatch) {
+            this.keywordMatch = keywordMatch;
+            return this;
+        }
+
+        Options setPrefixWords(int prefixWords) {
+            this.prefixWords = prefixWords;
+            return this;
+        }
+
+        Options setSuffixWords(int suffixWords) {
+            this.suffixWords = suffixWords;
+            return this;
+        }
+
+        Options setStats(ScannerStats stats) {
+            this.stats = stats;
+            return this;
+        }
+    }
 
     public static class Config {
         private String name;//脱敏字段名
@@ -130,11 +821,17 @@ public class LoggingScanner {
         private Integer skipTail;//跳过后n个字符
         private Character c;//替换字符
         private String ignoreSymbols;//可跳过的字符
-        private HashSet<Character> ignoreSymbolArray = new HashSet<>();
         private Integer maxMissed;//最大未命中数。超过数量则该字段脱敏失败
+        private String mode;//匹配方式
+        private String strategy;//替换策略
+        private String key;//令牌化策略的密钥
+        private String[] keywords;//词典中共用该规则的关键字，为null时关键字即name
+        private boolean json;
 
-        private Set<CharType> charTypes = new HashSet<>();//内容格式
-        private Set<Character> charArray = new HashSet<>();//字符内容
+        private CharClass contentClass = CharClass.EMPTY;//编译后的内容格式
+        private CharClass ignoreSymbolClass = CharClass.EMPTY;//编译后的可跳过字符
+        ScannerStats.RuleStats stats;//命中计数，由扫描器编译规则时设置
+        Tokenizer tokenizer;//令牌化策略，按替换字符处理时为null，由扫描器编译规则时设置
 
         public Config(String name,
                       String content,
@@ -155,31 +852,58 @@ public class LoggingScanner {
 
         public void setContent(String content) {
             this.content = content;
-            charArray.clear();
-            charTypes.clear();
-            Optional.ofNullable(content)
-                    .ifPresent(ct -> Optional.ofNullable(ct.split("\\|"))
-                            .ifPresent(strs -> {
-                                for (String s : strs) {
-                                    if (s.length() == 1) {
-                                        charArray.add(s.charAt(0));
-                                        charTypes.add(CharType._char);
-                                    } else {
-                                        Optional.ofNullable(CharType.nameOf(s.trim().toLowerCase())).ifPresent(x -> charTypes.add(x));
-                                    }
-                                }
-                            }));
-
+            this.contentClass = CharClass.ofContent(content);
         }
 
         public void setIgnoreSymbols(String ignoreSymbols) {
             this.ignoreSymbols = ignoreSymbols;
-            ignoreSymbolArray.clear();
-            if (ignoreSymbols != null) {
-                for (int i = 0; i < ignoreSymbols.length(); i++) {
-                    ignoreSymbolArray.add(ignoreSymbols.charAt(i));
-                }
-            }
+            this.ignoreSymbolClass = CharClass.ofSymbols(ignoreSymbols);
+        }
+
+        /**
+         * @param mode {@link #MODE_TEXT} 或 {@link #MODE_JSON}，忽略大小写
+         */
+        public void setMode(String mode) {
+            this.mode = mode;
+            this.json = MODE_JSON.equalsIgnoreCase(mode);
+        }
+
+        public String getMode() {
+            return this.mode;
+        }
+
+        public boolean isJson() {
+            return this.json;
+        }
+
+        /**
+         * @param strategy {@link #STRATEGY_MASK}、{@link #STRATEGY_HMAC}、{@link #STRATEGY_HASH} 或 {@link #STRATEGY_FPE}，忽略大小写
+         */
+        public void setStrategy(String strategy) {
+            this.strategy = strategy;
+        }
+
+        public String getStrategy() {
+            return this.strategy;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 设置后该规则为词典：keywords 中的每个关键字都使用该规则，name 只用于统计
+         */
+        public void setKeywords(String[] keywords) {
+            this.keywords = keywords;
+        }
+
+        public String[] getKeywords() {
+            return this.keywords;
+        }
+
+        public String getKey() {
+            return this.key;
         }
 
         public void override(Config a) {
@@ -189,6 +913,9 @@ public class LoggingScanner {
             Optional.ofNullable(a.skipHead).ifPresent(x -> this.setSkipHead(x));
             Optional.ofNullable(a.skipTail).ifPresent(x -> this.setSkipTail(x));
             Optional.ofNullable(a.ignoreSymbols).ifPresent(x -> this.setIgnoreSymbols(x));
+            Optional.ofNullable(a.mode).ifPresent(x -> this.setMode(x));
+            Optional.ofNullable(a.strategy).ifPresent(x -> this.setStrategy(x));
+            Optional.ofNullable(a.key).ifPresent(x -> this.setKey(x));
         }
 
         public void extend(Config p) {
@@ -198,58 +925,35 @@ public class LoggingScanner {
             this.setSkipHead(Optional.ofNullable(skipHead).orElse(p.skipHead));
             this.setSkipTail(Optional.ofNullable(skipTail).orElse(p.skipTail));
             this.setIgnoreSymbols(Optional.ofNullable(ignoreSymbols).orElse(p.ignoreSymbols));
+            this.setMode(Optional.ofNullable(mode).orElse(p.mode));
+            this.setStrategy(Optional.ofNullable(strategy).orElse(p.strategy));
+            this.setKey(Optional.ofNullable(key).orElse(p.key));
         }
 
         public boolean hitIgnoreSymbol(char c) {
-            if (ignoreSymbolArray.isEmpty()) {
-                return false;
-            }
-            return ignoreSymbolArray.contains(c);
+            return ignoreSymbolClass.contains(c);
         }
 
+        public boolean hitIgnoreSymbol(int codePoint) {
+            return ignoreSymbolClass.contains(codePoint);
+        }
 
         public boolean hitContent(char c) {
-            for (CharType charType : charTypes) {
-                switch (charType) {
-                    case _char:
-                        if (!charArray.isEmpty() && charArray.contains(c)) {
-                            return true;
-                        }
-                        break;
-                    case num:
-                        if ('0' <= c && c <= '9') {
-                            return true;
-                        }
-                        break;
-                    case low:
-                        if ('a' <= c && c <= 'z') {
-                            return true;
-                        }
-                        break;
-                    case up:
-                        if ('A' <= c && c <= 'Z') {
-                            return true;
-                        }
-                        break;
-                    case cn:
-                        if (19968 <= c && c <= 171941) {
-                            return true;
-                        }
-                        break;
-                    case en:
-                        if ('a' <= c && c <= 'z'
-                                || 'A' <= c && c <= 'Z') {
-                            return true;
-                        }
-                        break;
-                    case lang:
-                        if (c > 127) {
-                            return true;
-                        }
-                        break;
-                }
-            }
-            return false;
+            return contentClass.contains(c);
+        }
+
+        /**
+         * 按码点判断，BMP外的字符(如cn范围内的扩展区汉字)需用此方法
+         */
+        public boolean hitContent(int codePoint) {
+            return contentClass.contains(codePoint);
+        }
+
+        /**
+         * @return [from, to) 中第一个不属于内容格式的BMP字符或代理字符的位置
+         */
+        int skipContent(CharSequence text, int from, int to) {
+            return contentClass.skipRun(text, from, to);
         }
 
         public String getName() {
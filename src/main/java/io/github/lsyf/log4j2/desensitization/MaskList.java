@@ -0,0 +1,72 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的替换区间列表，按起点升序、互不重叠，区间为非空的 [start, end)，区间内每个字符替换为同一字符；
+ * 令牌化的区间({@link Tokenizer})替换为令牌 texts 中自 offsets 开始的等长部分。
+ * <p>
+ * 每个线程复用一个实例，见 {@link MaskingEncoder}。
+ */
+final class MaskList {
+
+    private static final ThreadLocal<MaskList> THREAD_LOCAL = new ThreadLocal<>();
+
+    int size;
+    int[] starts = new int[8];
+    int[] ends = new int[8];
+    char[] chars = new char[8];
+    String[] texts = new String[8];//替换文本，按字符替换时为null
+    int[] offsets = new int[8];
+
+    /**
+     * 获取当前线程的实例并清空；未启用ThreadLocal时(如web应用)每次新建
+     */
+    static MaskList get() {
+        if (!Constants.ENABLE_THREADLOCALS) {
+            return new MaskList();
+        }
+        MaskList list = THREAD_LOCAL.get();
+        if (list == null) {
+            list = new MaskList();
+            THREAD_LOCAL.set(list);
+        }
+        list.size = 0;
+        return list;
+    }
+
+    void add(int start, int end, char c) {
+        add(start, end, c, null, 0);
+    }
+
+    /**
+     * @param text 替换文本，[start, end) 替换为 text 中自 offset 开始的 end - start 个字符；为null时替换为c
+     */
+    void add(int start, int end, char c, String text, int offset) {
+        if (size == starts.length) {
+            int capacity = size << 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            chars = Arrays.copyOf(chars, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        chars[size] = c;
+        texts[size] = text;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * 第i个区间中位置 p 的替换字符
+     */
+    char charAt(int i, int p) {
+        String text = texts[i];
+        return text == null ? chars[i] : text.charAt(offsets[i] + p - starts[i]);
+    }
+
+}
@@ -0,0 +1,107 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 边编码边脱敏的 UTF-8 编码器：按 {@link MaskList} 的替换区间逐字符编码，直接写入 {@link ByteBufferDestination}。
+ * <p>
+ * 与 log4j 的 StringBuilderEncoder 相比，不把文本复制到中间的 CharBuffer，也不经过 CharsetEncoder；
+ * 替换区间内的字符编码时直接换成替换字符，原文本不被修改。
+ * 不成对的代理字符按 CharsetEncoder 的 REPLACE 行为输出为 '?'。
+ */
+final class MaskingEncoder {
+
+    private MaskingEncoder() {
+    }
+
+    static void encode(final CharSequence text, final MaskList masks, final ByteBufferDestination destination) {
+        synchronized (destination) {
+            ByteBuffer buffer = destination.getByteBuffer();
+            int position = 0;
+            for (int i = 0; i < masks.size; i++) {
+                buffer = encode(text, position, masks.starts[i], buffer, destination);
+                String token = masks.texts[i];
+                if (token == null) {
+                    buffer = repeat(masks.chars[i], masks.ends[i] - masks.starts[i], buffer, destination);
+                } else {
+                    int offset = masks.offsets[i];
+                    buffer = encode(token, offset, offset + masks.ends[i] - masks.starts[i], buffer, destination);
+                }
+                position = masks.ends[i];
+            }
+            encode(text, position, text.length(), buffer, destination);
+        }
+    }
+
+    private static ByteBuffer encode(final CharSequence text, final int from, final int to,
+                                     ByteBuffer buffer, final ByteBufferDestination destination) {
+        int i = from;
+        while (i < to) {
+            if (buffer.remaining() < 4) {
+                buffer = destination.drain(buffer);
+            }
+            //ASCII 连续写入，直到缓冲区剩余不足
+            int limit = Math.min(to, i + buffer.remaining() - 3);
+            char c = text.charAt(i);
+            while (c < 0x80) {
+                buffer.put((byte) c);
+                if (++i == limit) {
+                    break;
+                }
+                c = text.charAt(i);
+            }
+            if (i == limit) {
+                continue;
+            }
+            if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) '?');
+            }
+            i++;
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer repeat(final char c, final int count,
+                                     ByteBuffer buffer, final ByteBufferDestination destination) {
+        if (c < 0x80 || Character.isSurrogate(c)) {
+            byte b = c < 0x80 ? (byte) c : (byte) '?';
+            for (int n = 0; n < count; n++) {
+                if (!buffer.hasRemaining()) {
+                    buffer = destination.drain(buffer);
+                }
+                buffer.put(b);
+            }
+            return buffer;
+        }
+        for (int n = 0; n < count; n++) {
+            if (buffer.remaining() < 3) {
+                buffer = destination.drain(buffer);
+            }
+            if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,65 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的命中列表，以原始数组保存每个命中的起止位置(均为闭区间)和规则下标。
+ * <p>
+ * 每个线程复用一个实例，稳态下扫描不产生对象。
+ */
+final class MatchList {
+
+    private static final ThreadLocal<MatchList> THREAD_LOCAL = new ThreadLocal<>();
+
+    int size;
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int[] rules = new int[16];
+    int[] trail = new int[0];//IdentifierMatcher 记录最近读入自动机的字符位置，随实例复用
+
+    /**
+     * 获取当前线程的实例并清空；未启用ThreadLocal时(如web应用)每次新建
+     */
+    static MatchList get() {
+        if (!Constants.ENABLE_THREADLOCALS) {
+            return new MatchList();
+        }
+        MatchList list = THREAD_LOCAL.get();
+        if (list == null) {
+            list = new MatchList();
+            THREAD_LOCAL.set(list);
+        }
+        list.size = 0;
+        return list;
+    }
+
+    void add(int start, int end, int rule) {
+        if (size == starts.length) {
+            int capacity = size << 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            rules = Arrays.copyOf(rules, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        rules[size] = rule;
+        size++;
+    }
+
+    /**
+     * @param capacity 2的幂
+     */
+    int[] trail(int capacity) {
+        if (trail.length < capacity) {
+            trail = new int[capacity];
+        }
+        return trail;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+}
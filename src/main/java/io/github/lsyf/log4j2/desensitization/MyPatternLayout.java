@@ -19,6 +19,7 @@ import org.apache.logging.log4j.util.PropertiesUtil;
 import org.apache.logging.log4j.util.Strings;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -68,12 +69,14 @@ public final class MyPatternLayout extends AbstractStringLayout {
     private final String conversionPattern;
     private final PatternSelector patternSelector;
     private final Serializer eventSerializer;
+    private final boolean maskingEncoder;//UTF-8 且配置了脱敏时，编码时直接替换，不修改文本
 
     /**
      * Constructs a MyPatternLayout using the supplied conversion pattern.
      *
      * @param config                The Configuration.
      * @param replace               The regular expression to match.
+     * @param regexes               正则替换，在 replace 之后执行
      * @param eventPattern          conversion pattern.
      * @param patternSelector       The PatternSelector.
      * @param charset               The character set.
@@ -84,7 +87,8 @@ public final class MyPatternLayout extends AbstractStringLayout {
      * @param headerPattern         header conversion pattern.
      * @param footerPattern         footer conversion pattern.
      */
-    private MyPatternLayout(final Configuration config, final RegexReplacement replace, final DesensitizedReplacement desensitized, final String eventPattern,
+    private MyPatternLayout(final Configuration config, final RegexReplacement replace, final DesensitizedRegex[] regexes,
+                            final DesensitizedReplacement desensitized, final String eventPattern,
                             final PatternSelector patternSelector, final Charset charset, final boolean alwaysWriteExceptions,
                             final boolean disableAnsi, final boolean noConsoleNoAnsi, final String headerPattern,
                             final String footerPattern) {
@@ -92,6 +96,7 @@ public final class MyPatternLayout extends AbstractStringLayout {
                 newSerializerBuilder()
                         .setConfiguration(config)
                         .setReplace(replace)
+                        .setRegexes(regexes)
                         .setDesensitized(desensitized)
                         .setPatternSelector(patternSelector)
                         .setAlwaysWriteExceptions(alwaysWriteExceptions)
@@ -102,6 +107,7 @@ public final class MyPatternLayout extends AbstractStringLayout {
                 newSerializerBuilder()
                         .setConfiguration(config)
                         .setReplace(replace)
+                        .setRegexes(regexes)
                         .setDesensitized(desensitized)
                         .setPatternSelector(patternSelector)
                         .setAlwaysWriteExceptions(alwaysWriteExceptions)
@@ -111,9 +117,11 @@ public final class MyPatternLayout extends AbstractStringLayout {
                         .build());
         this.conversionPattern = eventPattern;
         this.patternSelector = patternSelector;
+        this.maskingEncoder = desensitized != null && StandardCharsets.UTF_8.equals(getCharset());
         this.eventSerializer = newSerializerBuilder()
                 .setConfiguration(config)
                 .setReplace(replace)
+                .setRegexes(regexes)
                 .setDesensitized(desensitized)
                 .setPatternSelector(patternSelector)
                 .setAlwaysWriteExceptions(alwaysWriteExceptions)
@@ -207,6 +215,13 @@ public final class MyPatternLayout extends AbstractStringLayout {
             super.encode(event, destination);
             return;
         }
+        if (maskingEncoder && eventSerializer instanceof MaskingSerializer) {
+            final MaskList masks = MaskList.get();
+            final StringBuilder text = ((MaskingSerializer) eventSerializer).toSerializable(event, getStringBuilder(), masks);
+            MaskingEncoder.encode(text, masks, destination);
+            trimToMaxSize(text);
+            return;
+        }
         final StringBuilder text = toText((Serializer2) eventSerializer, event, getStringBuilder());
         final Encoder<StringBuilder> encoder = getStringBuilderEncoder();
         encoder.encode(text, destination);
@@ -291,17 +306,22 @@ public final class MyPatternLayout extends AbstractStringLayout {
                 .build();
     }
 
-    private static class PatternSerializer implements Serializer, Serializer2, LocationAware {
+    /**
+     * 脱敏时只记录替换区间、不修改文本的序列化，供 {@link MaskingEncoder} 编码时替换
+     */
+    private interface MaskingSerializer {
+        StringBuilder toSerializable(LogEvent event, StringBuilder buffer, MaskList masks);
+    }
+
+    private static class PatternSerializer implements Serializer, Serializer2, MaskingSerializer, LocationAware {
 
         private final PatternFormatter[] formatters;
-        private final RegexReplacement replace;
-        private final DesensitizedReplacement desensitized;
+        private final RewritePipeline pipeline;
 
-        private PatternSerializer(final PatternFormatter[] formatters, final RegexReplacement replace, final DesensitizedReplacement desensitized) {
+        private PatternSerializer(final PatternFormatter[] formatters, final RewritePipeline pipeline) {
             super();
             this.formatters = formatters;
-            this.replace = replace;
-            this.desensitized = desensitized;
+            this.pipeline = pipeline;
         }
 
         @Override
@@ -316,23 +336,12 @@ public final class MyPatternLayout extends AbstractStringLayout {
 
         @Override
         public StringBuilder toSerializable(final LogEvent event, final StringBuilder buffer) {
-            final int len = formatters.length;
-            for (int i = 0; i < len; i++) {
-                formatters[i].format(event, buffer);
-            }
-            if (replace != null) { // creates temporary objects
-                String str = buffer.toString();
-                str = replace.format(str);
-                buffer.setLength(0);
-                buffer.append(str);
-            }
-            if (desensitized != null) { // creates temporary objects
-                String str = buffer.toString();
-                str = desensitized.format(str);
-                buffer.setLength(0);
-                buffer.append(str);
-            }
-            return buffer;
+            return toSerializable(event, buffer, null);
+        }
+
+        @Override
+        public StringBuilder toSerializable(final LogEvent event, final StringBuilder buffer, final MaskList masks) {
+            return pipeline.format(formatters, event, buffer, masks);
         }
 
         @Override
@@ -352,9 +361,11 @@ public final class MyPatternLayout extends AbstractStringLayout {
             builder.append("[formatters=");
             builder.append(Arrays.toString(formatters));
             builder.append(", replace=");
-            builder.append(replace);
+            builder.append(Arrays.toString(pipeline.getReplaces()));
+            builder.append(", regexes=");
+            builder.append(Arrays.toString(pipeline.getRegexes()));
             builder.append(", desensitized=");
-            builder.append(desensitized);
+            builder.append(pipeline.getDesensitized());
             builder.append("]");
             return builder.toString();
         }
@@ -364,6 +375,7 @@ public final class MyPatternLayout extends AbstractStringLayout {
 
         private Configuration configuration;
         private RegexReplacement replace;
+        private DesensitizedRegex[] regexes;
         private DesensitizedReplacement desensitized;
         private String pattern;
         private String defaultPattern;
@@ -383,12 +395,12 @@ public final class MyPatternLayout extends AbstractStringLayout {
                     final List<PatternFormatter> list = parser.parse(pattern == null ? defaultPattern : pattern,
                             alwaysWriteExceptions, disableAnsi, noConsoleNoAnsi);
                     final PatternFormatter[] formatters = list.toArray(new PatternFormatter[0]);
-                    return new PatternSerializer(formatters, replace, desensitized);
+                    return new PatternSerializer(formatters, new RewritePipeline(replace, regexes, desensitized));
                 } catch (final RuntimeException ex) {
                     throw new IllegalArgumentException("Cannot parse pattern '" + pattern + "'", ex);
                 }
             }
-            return new PatternSelectorSerializer(patternSelector, replace, desensitized);
+            return new PatternSelectorSerializer(patternSelector, new RewritePipeline(replace, regexes, desensitized));
         }
 
         public SerializerBuilder setConfiguration(final Configuration configuration) {
@@ -401,6 +413,11 @@ public final class MyPatternLayout extends AbstractStringLayout {
             return this;
         }
 
+        public SerializerBuilder setRegexes(final DesensitizedRegex[] regexes) {
+            this.regexes = regexes;
+            return this;
+        }
+
         public SerializerBuilder setDesensitized(final DesensitizedReplacement desensitized) {
             this.desensitized = desensitized;
             return this;
@@ -438,17 +455,15 @@ public final class MyPatternLayout extends AbstractStringLayout {
 
     }
 
-    private static class PatternSelectorSerializer implements Serializer, Serializer2, LocationAware {
+    private static class PatternSelectorSerializer implements Serializer, Serializer2, MaskingSerializer, LocationAware {
 
         private final PatternSelector patternSelector;
-        private final RegexReplacement replace;
-        private final DesensitizedReplacement desensitized;
+        private final RewritePipeline pipeline;
 
-        private PatternSelectorSerializer(final PatternSelector patternSelector, final RegexReplacement replace, final DesensitizedReplacement desensitized) {
+        private PatternSelectorSerializer(final PatternSelector patternSelector, final RewritePipeline pipeline) {
             super();
             this.patternSelector = patternSelector;
-            this.replace = replace;
-            this.desensitized = desensitized;
+            this.pipeline = pipeline;
         }
 
         @Override
@@ -463,24 +478,12 @@ public final class MyPatternLayout extends AbstractStringLayout {
 
         @Override
         public StringBuilder toSerializable(final LogEvent event, final StringBuilder buffer) {
-            final PatternFormatter[] formatters = patternSelector.getFormatters(event);
-            final int len = formatters.length;
-            for (int i = 0; i < len; i++) {
-                formatters[i].format(event, buffer);
-            }
-            if (replace != null) { // creates temporary objects
-                String str = buffer.toString();
-                str = replace.format(str);
-                buffer.setLength(0);
-                buffer.append(str);
-            }
-            if (desensitized != null) { // creates temporary objects
-                String str = buffer.toString();
-                str = desensitized.format(str);
-                buffer.setLength(0);
-                buffer.append(str);
-            }
-            return buffer;
+            return toSerializable(event, buffer, null);
+        }
+
+        @Override
+        public StringBuilder toSerializable(final LogEvent event, final StringBuilder buffer, final MaskList masks) {
+            return pipeline.format(patternSelector.getFormatters(event), event, buffer, masks);
         }
 
         @Override
@@ -495,7 +498,9 @@ public final class MyPatternLayout extends AbstractStringLayout {
             builder.append("[patternSelector=");
             builder.append(patternSelector);
             builder.append(", replace=");
-            builder.append(replace);
+            builder.append(Arrays.toString(pipeline.getReplaces()));
+            builder.append(", regexes=");
+            builder.append(Arrays.toString(pipeline.getRegexes()));
             builder.append("]");
             return builder.toString();
         }
@@ -551,6 +556,9 @@ public final class MyPatternLayout extends AbstractStringLayout {
         @PluginElement("Replace")
         private RegexReplacement regexReplacement;
 
+        @PluginElement("DesensitizedRegex")
+        private DesensitizedRegex[] regexes;
+
         @PluginElement("Desensitized")
         private DesensitizedReplacement desensitized;
 
@@ -615,6 +623,14 @@ public final class MyPatternLayout extends AbstractStringLayout {
             return this;
         }
 
+        /**
+         * @param regexes 正则替换，直接在输出 buffer 上替换
+         */
+        public Builder withRegexes(final DesensitizedRegex... regexes) {
+            this.regexes = regexes;
+            return this;
+        }
+
         public Builder withDesensitizedReplacement(final DesensitizedReplacement desensitized) {
             this.desensitized = desensitized;
             return this;
@@ -678,7 +694,7 @@ public final class MyPatternLayout extends AbstractStringLayout {
             if (configuration == null) {
                 configuration = new DefaultConfiguration();
             }
-            return new MyPatternLayout(configuration, regexReplacement, desensitized, pattern, patternSelector, charset,
+            return new MyPatternLayout(configuration, regexReplacement, regexes, desensitized, pattern, patternSelector, charset,
                     alwaysWriteExceptions, disableAnsi, noConsoleNoAnsi, header, footer);
         }
     }
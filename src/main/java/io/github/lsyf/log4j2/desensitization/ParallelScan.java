@@ -0,0 +1,198 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 很长的单条日志按段并行脱敏，结果与一次性扫描完全一致。
+ * <p>
+ * 文本切成若干段，每段在 {@link ForkJoinPool} 上独立匹配关键字：从段起点之前 最长关键字长度-1 个字符开始扫描，
+ * 只保留终点落在本段的命中，按段的顺序拼接即为一次性扫描的命中列表。
+ * 每个命中查找内容时只读到下一个命中的首部，因此段内除最后一个命中之外都可以在段内直接查找内容；
+ * 最后一个命中的内容可能延伸到后面的段，合并时在调用线程上按下一个命中的首部查找。
+ * 各段的替换区间按段的顺序合并，最后统一写入，工作线程不修改文本。
+ * <p>
+ * 配置了 json 模式的字段时，值可能覆盖之后的命中，只并行匹配关键字，查找内容在调用线程上按顺序进行。
+ */
+final class ParallelScan {
+
+    /**
+     * 每段的最小长度，过短时调度开销超过扫描本身
+     */
+    static final int MIN_SEGMENT = 16384;
+
+    private final ForkJoinPool pool;
+    private final KeywordMatcher matcher;
+    private final KeywordPrefilter prefilter;
+    private final LoggingScanner.Config[] rules;
+    private final boolean json;//存在 json 模式的字段
+
+    ParallelScan(ForkJoinPool pool, KeywordMatcher matcher, KeywordPrefilter prefilter, LoggingScanner.Config[] rules) {
+        this.pool = pool;
+        this.matcher = matcher;
+        this.prefilter = prefilter;
+        this.rules = rules;
+        boolean json = false;
+        for (LoggingScanner.Config rule : rules) {
+            json |= rule.isJson();
+        }
+        this.json = json;
+    }
+
+    /**
+     * 最多切分的段数；线程池已关闭(配置已被替换)时为1，仍在输出的日志顺序扫描。
+     * 检查之后线程池仍可能被关闭，由 {@link #process} 在提交被拒绝时顺序扫描
+     */
+    int segments(int length) {
+        if (pool.isShutdown()) {
+            return 1;
+        }
+        return Math.max(1, Math.min(length / MIN_SEGMENT, pool.getParallelism() * 4));
+    }
+
+    /**
+     * 对 text 的 [from, to) 区间脱敏，candidate 之前不存在关键字
+     *
+     * @param masks 为null时直接在text(StringBuilder)上替换
+     * @return 是否有字符被替换
+     */
+    boolean process(CharSequence text, int from, int to, int candidate, MaskList masks) {
+        int count = segments(to - candidate);
+        Segment[] segments = new Segment[count];
+        long span = to - candidate;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(text, from, to, (int) (candidate + span * i / count),
+                    (int) (candidate + span * (i + 1) / count), candidate);
+        }
+        try {
+            pool.invoke(new Batch(segments, 0, count));
+        } catch (RejectedExecutionException e) {
+            //检查之后线程池被关闭(配置重新加载)，在调用线程上顺序扫描，不能原样输出
+            MatchList matches = new MatchList();
+            matcher.match(text, from, to, candidate, matches);
+            return !matches.isEmpty() && LoggingScanner.maskMatches(rules, text, matches, from, to, masks);
+        }
+        if (json) {
+            MatchList matches = new MatchList();
+            for (Segment segment : segments) {
+                for (int i = 0; i < segment.matches.size; i++) {
+                    matches.add(segment.matches.starts[i], segment.matches.ends[i], segment.matches.rules[i]);
+                }
+            }
+            return !matches.isEmpty() && LoggingScanner.maskMatches(rules, text, matches, from, to, masks);
+        }
+        boolean masked = false;
+        for (int k = 0; k < count; k++) {
+            Segment segment = segments[k];
+            masked |= apply(segment.masks, text, masks);
+            MatchList matches = segment.matches;
+            if (matches.isEmpty()) {
+                continue;
+            }
+            //本段最后一个命中，内容查找到下一个有命中的段的第一个命中为止
+            int nextHead = to;
+            for (int n = k + 1; n < count; n++) {
+                if (!segments[n].matches.isEmpty()) {
+                    nextHead = segments[n].matches.starts[0];
+                    break;
+                }
+            }
+            int last = matches.size - 1;
+            MaskList tail = new MaskList();
+            LoggingScanner.maskContent(rules[matches.rules[last]], text, matches.ends[last] + 1, nextHead, tail);
+            masked |= apply(tail, text, masks);
+        }
+        return masked;
+    }
+
+    private static boolean apply(MaskList ranges, CharSequence text, MaskList masks) {
+        for (int i = 0; i < ranges.size; i++) {
+            if (masks != null) {
+                masks.add(ranges.starts[i], ranges.ends[i], ranges.chars[i], ranges.texts[i], ranges.offsets[i]);
+            } else {
+                StringBuilder target = (StringBuilder) text;
+                for (int k = ranges.starts[i]; k < ranges.ends[i]; k++) {
+                    target.setCharAt(k, ranges.charAt(i, k));
+                }
+            }
+        }
+        return ranges.size > 0;
+    }
+
+    /**
+     * 一段文本的命中与段内可确定的替换区间
+     */
+    private final class Segment {
+        private final CharSequence text;
+        private final int from;
+        private final int to;
+        private final int start;//只保留终点在 [start, end) 的命中
+        private final int end;
+        private final int scanFrom;
+        private final MatchList matches = new MatchList();
+        private final MaskList masks = new MaskList();
+
+        private Segment(CharSequence text, int from, int to, int start, int end, int candidate) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.end = end;
+            this.scanFrom = Math.max(candidate, start - (matcher.maxLength() - 1));
+        }
+
+        private void run() {
+            int first = prefilter.find(text, scanFrom, end);
+            if (first < 0) {
+                return;
+            }
+            matcher.match(text, from, to, first, end, matches);
+            //终点在本段之前的命中属于上一段，命中按终点升序
+            int drop = 0;
+            while (drop < matches.size && matches.ends[drop] < start) {
+                drop++;
+            }
+            if (drop > 0) {
+                System.arraycopy(matches.starts, drop, matches.starts, 0, matches.size - drop);
+                System.arraycopy(matches.ends, drop, matches.ends, 0, matches.size - drop);
+                System.arraycopy(matches.rules, drop, matches.rules, 0, matches.size - drop);
+                matches.size -= drop;
+            }
+            if (json) {
+                return;
+            }
+            for (int i = 0; i + 1 < matches.size; i++) {
+                LoggingScanner.maskContent(rules[matches.rules[i]], text, matches.ends[i] + 1, matches.starts[i + 1], masks);
+            }
+        }
+    }
+
+    /**
+     * 二分提交各段
+     */
+    private static final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Segment[] segments;
+        private final int lo;
+        private final int hi;
+
+        private Batch(Segment[] segments, int lo, int hi) {
+            this.segments = segments;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                segments[lo].run();
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Batch(segments, lo, mid), new Batch(segments, mid, hi));
+        }
+    }
+
+}
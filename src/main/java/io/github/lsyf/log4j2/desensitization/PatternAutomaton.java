@@ -0,0 +1,760 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 值格式(如手机号、身份证号)的匹配引擎：所有格式编译为一个DFA，构建后只读，可被多线程共享。
+ * <p>
+ * 格式为正则表达式的子集：字符、转义(\d \w \s 等)、字符集 [...]、任意字符 .、分组 (...)、选择 |，
+ * 以及 ? * + {n} {n,} {n,m}；不支持锚点、反向引用与非贪婪匹配。字符按 UTF-16 逐个匹配，区分大小写。
+ * <p>
+ * 值的前后不能紧邻 ASCII 字母或数字。从左到右在每个可能的起点运行DFA，取通过校验(如 Luhn)的最长的值，
+ * 多个格式长度相同时取先配置的；命中后从值的终点继续查找，命中互不重叠。
+ * 可能的起点由不限起点的DFA单遍扫描确定，只有值可能的终点之前的起点才逐个运行DFA，每个起点最多读取 {@link #MAX_LENGTH} 个字符，
+ * 不含值的文本只读一遍，扫描耗时与文本长度成正比，与格式数量无关。
+ */
+final class PatternAutomaton {
+
+    /**
+     * 值的最大长度
+     */
+    static final int MAX_LENGTH = 256;
+
+    /**
+     * 起点需要读取之后的字符才能确定时 {@link #longest} 的返回值
+     */
+    static final int UNDECIDED = -2;
+
+    static final String CHECK_LUHN = "luhn";
+    static final String CHECK_IDCARD = "idcard";
+
+    private static final int MAX_PATTERNS = 64;
+    private static final int MAX_STATES = 4096;
+    private static final int DEAD = 0;
+    private static final int START = 1;
+
+    private static final int[] ID_WEIGHTS = {7, 9, 10, 5, 8, 4, 2, 1, 6, 3, 7, 9, 10, 5, 8, 4, 2};
+    private static final String ID_CHECKS = "10X98765432";
+
+    private final int[] points;//字符类的起点，第k类为 [points[k], points[k+1])
+    private final byte[] asciiClass = new byte[128];
+    private final int classCount;
+    private final int[] table;//[state * classCount + class] -> state
+    private final long[] accepts;//每个状态可接受的格式
+    private final int[] searchTable;//不限起点的DFA，用于单遍查找值可能的终点，过于复杂时为null
+    private final boolean[] searchAccepts;
+    private final String[] checks;
+
+    /**
+     * @param patterns 各格式的表达式
+     * @param checks   各格式的校验方式，{@link #CHECK_LUHN}、{@link #CHECK_IDCARD} 或 null
+     * @throws IllegalArgumentException 表达式不合法或过于复杂
+     */
+    PatternAutomaton(String[] patterns, String[] checks) {
+        if (patterns.length == 0 || patterns.length > MAX_PATTERNS) {
+            throw new IllegalArgumentException("1 to " + MAX_PATTERNS + " patterns are supported");
+        }
+        for (String check : checks) {
+            if (check != null && !CHECK_LUHN.equals(check) && !CHECK_IDCARD.equals(check)) {
+                throw new IllegalArgumentException("Unknown check " + check);
+            }
+        }
+        this.checks = checks.clone();
+        Nfa nfa = new Nfa();
+        for (int i = 0; i < patterns.length; i++) {
+            Node node = new Parser(patterns[i]).parse();
+            int end = nfa.build(node, 0);
+            nfa.accept(end, i);
+        }
+        //字符类：所有字符集边界划分出的区间，同一区间内的字符在DFA中不可区分
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add(0);
+        for (int[] ranges : nfa.ranges) {
+            for (int k = 0; ranges != null && k < ranges.length; k += 2) {
+                bounds.add(ranges[k]);
+                if (ranges[k + 1] < Character.MAX_VALUE) {
+                    bounds.add(ranges[k + 1] + 1);
+                }
+            }
+        }
+        points = new int[bounds.size()];
+        int p = 0;
+        for (int bound : bounds) {
+            points[p++] = bound;
+        }
+        classCount = points.length;
+        if (classCount > Byte.MAX_VALUE) {
+            //ASCII 表只在类数较少时使用
+            Arrays.fill(asciiClass, (byte) -1);
+        } else {
+            for (int c = 0; c < 128; c++) {
+                asciiClass[c] = (byte) search(c);
+            }
+        }
+        BitSet start = new BitSet();
+        start.set(0);
+        nfa.closure(start);
+        List<BitSet> states = new ArrayList<>();
+        int[] table = determinize(nfa, start, false, states);
+        if (table == null) {
+            throw new IllegalArgumentException("Patterns are too complex");
+        }
+        this.table = table;
+        this.accepts = accepts(nfa, states);
+        //不限起点的DFA：每读入一个字符都加入初始状态，过于复杂时不使用
+        List<BitSet> searchStates = new ArrayList<>();
+        this.searchTable = determinize(nfa, start, true, searchStates);
+        if (searchTable == null) {
+            this.searchAccepts = null;
+        } else {
+            long[] searchAccepts = accepts(nfa, searchStates);
+            this.searchAccepts = new boolean[searchAccepts.length];
+            for (int s = 0; s < searchAccepts.length; s++) {
+                this.searchAccepts[s] = searchAccepts[s] != 0;
+            }
+        }
+    }
+
+    /**
+     * 子集构造，states 按状态编号记录对应的NFA状态集合
+     *
+     * @param unanchored 是否在每个状态中加入初始状态
+     * @return 转移表，状态数超过 {@link #MAX_STATES} 时返回null
+     */
+    private int[] determinize(Nfa nfa, BitSet start, boolean unanchored, List<BitSet> states) {
+        Map<BitSet, Integer> index = new HashMap<>();
+        states.add(new BitSet());
+        index.put(states.get(DEAD), DEAD);
+        states.add(start);
+        index.put(start, START);
+        int[] table = new int[classCount * 16];
+        for (int s = START; s < states.size(); s++) {
+            BitSet set = states.get(s);
+            if (table.length < (s + 1) * classCount) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            for (int c = 0; c < classCount; c++) {
+                BitSet next = new BitSet();
+                for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)) {
+                    int[] ranges = nfa.ranges.get(n);
+                    if (ranges != null && contains(ranges, points[c])) {
+                        next.set(nfa.targets.get(n));
+                    }
+                }
+                if (unanchored) {
+                    next.or(start);
+                }
+                if (next.isEmpty()) {
+                    continue;
+                }
+                nfa.closure(next);
+                Integer target = index.get(next);
+                if (target == null) {
+                    if (states.size() == MAX_STATES) {
+                        return null;
+                    }
+                    target = states.size();
+                    states.add(next);
+                    index.put(next, target);
+                }
+                table[s * classCount + c] = target;
+            }
+        }
+        return Arrays.copyOf(table, states.size() * classCount);
+    }
+
+    private static long[] accepts(Nfa nfa, List<BitSet> states) {
+        long[] accepts = new long[states.size()];
+        for (int s = 0; s < accepts.length; s++) {
+            BitSet set = states.get(s);
+            for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)) {
+                accepts[s] |= nfa.accepts.get(n);
+            }
+        }
+        return accepts;
+    }
+
+    private int search(int c) {
+        int k = Arrays.binarySearch(points, c);
+        return k >= 0 ? k : -k - 2;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            int k = asciiClass[c];
+            if (k >= 0) {
+                return k;
+            }
+        }
+        return search(c);
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+        for (int k = 0; k < ranges.length; k += 2) {
+            if (c >= ranges[k] && c <= ranges[k + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 值的前后边界：ASCII 字母与数字之外的字符
+     */
+    static boolean isBoundary(char c) {
+        return !(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * [from, to) 中是否有值，没有值的文本只需一遍不限起点的扫描
+     */
+    boolean contains(CharSequence text, int from, int to) {
+        return find(text, from, to, from, to, true, null) < 0;
+    }
+
+    /**
+     * 从 scanFrom 开始查找 [scanFrom, scanTo) 内起点的值，按顺序追加到 matches(闭区间，规则下标为格式下标)。
+     * <p>
+     * 不限起点的DFA同时向前扫描，找到值可能的终点(不考虑边界与校验)之后，只在其前 {@link #MAX_LENGTH} 个字符内的起点运行DFA，
+     * 没有值的文本只读一遍。
+     *
+     * @param from     文本起点，用于判断起点之前的边界
+     * @param to       可读取的终点
+     * @param complete to 是否为文本终点，否则 to 处的字符尚未读入
+     * @param matches  为null时找到第一个值即返回负数
+     * @return 下次开始查找的位置：某个起点需要读取 to 之后的字符才能确定时返回该起点，否则不早于 scanTo
+     */
+    int find(CharSequence text, int from, int to, int scanFrom, int scanTo, boolean complete, MatchList matches) {
+        int[] searchTable = this.searchTable;
+        int searchState = START;
+        int read = scanFrom;//不限起点的DFA已读到的位置
+        int acceptEnd = scanFrom;//起点之后最近的可能的终点
+        int i = scanFrom;
+        while (i < scanTo) {
+            if (searchTable != null && acceptEnd <= i) {
+                acceptEnd = -1;
+                while (read < to) {
+                    searchState = searchTable[searchState * classCount + classOf(text.charAt(read++))];
+                    if (read > i && searchAccepts[searchState]) {
+                        acceptEnd = read;
+                        break;
+                    }
+                }
+                if (acceptEnd < 0) {
+                    //之后没有值；未读完时终点附近的起点仍需逐个确定
+                    if (complete || to - MAX_LENGTH >= scanTo) {
+                        return scanTo;
+                    }
+                    i = Math.max(i, to - MAX_LENGTH);
+                    searchTable = null;
+                    continue;
+                }
+                //终点之前超过 MAX_LENGTH 的起点不会有值
+                i = Math.max(i, acceptEnd - MAX_LENGTH);
+            }
+            if (i > from && !isBoundary(text.charAt(i - 1))) {
+                i++;
+                continue;
+            }
+            long found = longest(text, i, to, complete);
+            if (found == UNDECIDED) {
+                return i;
+            }
+            if (found < 0) {
+                i++;
+                continue;
+            }
+            if (matches == null) {
+                return -1;
+            }
+            int end = (int) (found >>> 8);
+            matches.add(i, end - 1, (int) (found & 0xFF));
+            i = end;
+        }
+        return i;
+    }
+
+    /**
+     * 从 start 开始的最长的值
+     *
+     * @return (终点 << 8 | 格式下标)，终点不含；没有值时返回-1，需要读取 to 之后的字符时返回 {@link #UNDECIDED}
+     */
+    long longest(CharSequence text, int start, int to, boolean complete) {
+        int[] table = this.table;
+        int classCount = this.classCount;
+        int state = START;
+        long found = -1;
+        int limit = Math.min(to, start + MAX_LENGTH);
+        for (int i = start; ; i++) {
+            long accept = accepts[state];
+            if (accept != 0 && i > start) {
+                if (i == to && !complete) {
+                    return UNDECIDED;
+                }
+                if (i == to || isBoundary(text.charAt(i))) {
+                    int pattern = validPattern(accept, text, start, i);
+                    if (pattern >= 0) {
+                        found = (long) i << 8 | pattern;
+                    }
+                }
+            }
+            if (i >= limit) {
+                if (i == to && !complete && i < start + MAX_LENGTH) {
+                    return UNDECIDED;
+                }
+                return found;
+            }
+            state = table[state * classCount + classOf(text.charAt(i))];
+            if (state == DEAD) {
+                return found;
+            }
+        }
+    }
+
+    private int validPattern(long accept, CharSequence text, int start, int end) {
+        for (long rest = accept; rest != 0; rest &= rest - 1) {
+            int pattern = Long.numberOfTrailingZeros(rest);
+            String check = checks[pattern];
+            if (check == null
+                    || CHECK_LUHN.equals(check) && luhn(text, start, end)
+                    || CHECK_IDCARD.equals(check) && idCard(text, start, end)) {
+                return pattern;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Luhn 校验，只计算其中的数字(允许格式中含空格、横线等分隔符)
+     */
+    static boolean luhn(CharSequence text, int start, int end) {
+        int sum = 0;
+        int digits = 0;
+        for (int i = end - 1; i >= start; i--) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                continue;
+            }
+            int d = c - '0';
+            if ((digits++ & 1) == 1) {
+                d <<= 1;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+        }
+        return digits > 1 && sum % 10 == 0;
+    }
+
+    /**
+     * 18位身份证号的校验码(GB 11643)
+     */
+    static boolean idCard(CharSequence text, int start, int end) {
+        if (end - start != 18) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = text.charAt(start + i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (c - '0') * ID_WEIGHTS[i];
+        }
+        char check = Character.toUpperCase(text.charAt(end - 1));
+        return check == ID_CHECKS.charAt(sum % 11);
+    }
+
+    // ---------------------------------------------------------------- 编译
+
+    /**
+     * 表达式的语法树
+     */
+    private static final class Node {
+        private static final int CHARS = 0;
+        private static final int CONCAT = 1;
+        private static final int ALTERNATE = 2;
+        private static final int REPEAT = 3;
+
+        private final int type;
+        private int[] ranges;//CHARS：有序不重叠的闭区间
+        private final List<Node> children = new ArrayList<>();
+        private int min;
+        private int max;//-1为不限
+
+        private Node(int type) {
+            this.type = type;
+        }
+    }
+
+    private static final class Parser {
+        private static final int MAX_REPEAT = MAX_LENGTH;
+
+        private final String pattern;
+        private int pos;
+
+        private Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private Node parse() {
+            if (pattern == null || pattern.isEmpty()) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            Node node = alternate();
+            if (pos < pattern.length()) {
+                throw error("Unexpected ')'");
+            }
+            return node;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + " in pattern " + pattern);
+        }
+
+        private Node alternate() {
+            Node first = concat();
+            if (pos >= pattern.length() || pattern.charAt(pos) != '|') {
+                return first;
+            }
+            Node node = new Node(Node.ALTERNATE);
+            node.children.add(first);
+            while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                pos++;
+                node.children.add(concat());
+            }
+            return node;
+        }
+
+        private Node concat() {
+            Node node = new Node(Node.CONCAT);
+            while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+                node.children.add(repeat(atom()));
+            }
+            return node;
+        }
+
+        private Node repeat(Node atom) {
+            Node node = atom;
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                int min;
+                int max;
+                if (c == '?') {
+                    min = 0;
+                    max = 1;
+                } else if (c == '*') {
+                    min = 0;
+                    max = -1;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                } else if (c == '{') {
+                    int close = pattern.indexOf('}', pos);
+                    if (close < 0) {
+                        throw error("Unclosed '{'");
+                    }
+                    String body = pattern.substring(pos + 1, close);
+                    int comma = body.indexOf(',');
+                    try {
+                        min = Integer.parseInt((comma < 0 ? body : body.substring(0, comma)).trim());
+                        max = comma < 0 ? min : body.substring(comma + 1).trim().isEmpty()
+                                ? -1 : Integer.parseInt(body.substring(comma + 1).trim());
+                    } catch (NumberFormatException e) {
+                        throw error("Illegal repetition");
+                    }
+                    if (min < 0 || max != -1 && max < min || Math.max(min, max) > MAX_REPEAT) {
+                        throw error("Illegal repetition");
+                    }
+                    pos = close;
+                } else {
+                    break;
+                }
+                pos++;
+                if (pos < pattern.length() && (pattern.charAt(pos) == '?' || pattern.charAt(pos) == '+')) {
+                    throw error("Lazy and possessive quantifiers are not supported");
+                }
+                Node repeat = new Node(Node.REPEAT);
+                repeat.children.add(node);
+                repeat.min = min;
+                repeat.max = max;
+                node = repeat;
+            }
+            return node;
+        }
+
+        private Node atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (pattern.startsWith("?:", pos)) {
+                        pos += 2;
+                    } else if (pos < pattern.length() && pattern.charAt(pos) == '?') {
+                        throw error("Unsupported group");
+                    }
+                    Node group = alternate();
+                    if (pos >= pattern.length() || pattern.charAt(pos) != ')') {
+                        throw error("Unclosed group");
+                    }
+                    pos++;
+                    return group;
+                case '[':
+                    return chars(charSet());
+                case '.':
+                    return chars(new int[]{0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, Character.MAX_VALUE});
+                case '\\':
+                    return chars(escape());
+                case '^':
+                case '$':
+                    throw error("Anchors are not supported");
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw error("Dangling quantifier");
+                default:
+                    return chars(new int[]{c, c});
+            }
+        }
+
+        private static Node chars(int[] ranges) {
+            Node node = new Node(Node.CHARS);
+            node.ranges = ranges;
+            return node;
+        }
+
+        private int[] charSet() {
+            boolean negate = pos < pattern.length() && pattern.charAt(pos) == '^';
+            if (negate) {
+                pos++;
+            }
+            List<int[]> parts = new ArrayList<>();
+            boolean first = true;
+            while (true) {
+                if (pos >= pattern.length()) {
+                    throw error("Unclosed character class");
+                }
+                char c = pattern.charAt(pos);
+                if (c == ']' && !first) {
+                    pos++;
+                    break;
+                }
+                first = false;
+                pos++;
+                int[] part;
+                if (c == '\\') {
+                    part = escape();
+                } else {
+                    part = new int[]{c, c};
+                }
+                //区间 a-z
+                if (part.length == 2 && part[0] == part[1] && pos + 1 < pattern.length()
+                        && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    char h = pattern.charAt(pos++);
+                    int[] high = h == '\\' ? escape() : new int[]{h, h};
+                    if (high.length != 2 || high[0] != high[1] || high[0] < part[0]) {
+                        throw error("Illegal character range");
+                    }
+                    part = new int[]{part[0], high[0]};
+                }
+                parts.add(part);
+            }
+            int[] ranges = normalize(parts);
+            return negate ? complement(ranges) : ranges;
+        }
+
+        private int[] escape() {
+            if (pos >= pattern.length()) {
+                throw error("Trailing '\\'");
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return new int[]{'0', '9'};
+                case 'D':
+                    return complement(new int[]{'0', '9'});
+                case 'w':
+                    return new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+                case 'W':
+                    return complement(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+                case 's':
+                    return new int[]{'\t', '\r', ' ', ' '};
+                case 'S':
+                    return complement(new int[]{'\t', '\r', ' ', ' '});
+                case 't':
+                    return new int[]{'\t', '\t'};
+                case 'n':
+                    return new int[]{'\n', '\n'};
+                case 'r':
+                    return new int[]{'\r', '\r'};
+                case 'u':
+                    if (pos + 4 > pattern.length()) {
+                        throw error("Illegal unicode escape");
+                    }
+                    try {
+                        int u = Integer.parseInt(pattern.substring(pos, pos + 4), 16);
+                        pos += 4;
+                        return new int[]{u, u};
+                    } catch (NumberFormatException e) {
+                        throw error("Illegal unicode escape");
+                    }
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("Unsupported escape \\" + c);
+                    }
+                    return new int[]{c, c};
+            }
+        }
+
+        private static int[] normalize(List<int[]> parts) {
+            List<int[]> ranges = new ArrayList<>();
+            for (int[] part : parts) {
+                for (int k = 0; k < part.length; k += 2) {
+                    ranges.add(new int[]{part[k], part[k + 1]});
+                }
+            }
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] result = new int[ranges.size() * 2];
+            int n = 0;
+            for (int[] range : ranges) {
+                if (n > 0 && range[0] <= result[n - 1] + 1) {
+                    result[n - 1] = Math.max(result[n - 1], range[1]);
+                } else {
+                    result[n++] = range[0];
+                    result[n++] = range[1];
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        private static int[] complement(int[] ranges) {
+            int[] result = new int[ranges.length + 2];
+            int n = 0;
+            int next = 0;
+            for (int k = 0; k < ranges.length; k += 2) {
+                if (ranges[k] > next) {
+                    result[n++] = next;
+                    result[n++] = ranges[k] - 1;
+                }
+                next = ranges[k + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                result[n++] = next;
+                result[n++] = Character.MAX_VALUE;
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+
+    /**
+     * Thompson 构造的NFA：每个状态至多一条字符边，另有任意条空边
+     */
+    private static final class Nfa {
+        private final List<int[]> ranges = new ArrayList<>();//字符边的字符集，没有字符边时为null
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<int[]> epsilons = new ArrayList<>();
+        private final List<Long> accepts = new ArrayList<>();
+
+        private Nfa() {
+            add();
+        }
+
+        private int add() {
+            if (ranges.size() >= MAX_STATES * 16) {
+                throw new IllegalArgumentException("Patterns are too complex");
+            }
+            ranges.add(null);
+            targets.add(-1);
+            epsilons.add(new int[0]);
+            accepts.add(0L);
+            return ranges.size() - 1;
+        }
+
+        private void epsilon(int from, int to) {
+            int[] old = epsilons.get(from);
+            int[] edges = Arrays.copyOf(old, old.length + 1);
+            edges[old.length] = to;
+            epsilons.set(from, edges);
+        }
+
+        private void accept(int state, int pattern) {
+            accepts.set(state, accepts.get(state) | 1L << pattern);
+        }
+
+        /**
+         * 从 from 开始构建 node，返回终点状态
+         */
+        private int build(Node node, int from) {
+            switch (node.type) {
+                case Node.CHARS: {
+                    //字符边从新状态出发，from 可能已有其他字符边
+                    int begin = add();
+                    epsilon(from, begin);
+                    int end = add();
+                    ranges.set(begin, node.ranges);
+                    targets.set(begin, end);
+                    return end;
+                }
+                case Node.CONCAT: {
+                    int current = from;
+                    for (Node child : node.children) {
+                        current = build(child, current);
+                    }
+                    return current;
+                }
+                case Node.ALTERNATE: {
+                    int end = add();
+                    for (Node child : node.children) {
+                        epsilon(build(child, from), end);
+                    }
+                    return end;
+                }
+                default: {
+                    Node child = node.children.get(0);
+                    int current = from;
+                    for (int i = 0; i < node.min; i++) {
+                        current = build(child, current);
+                    }
+                    if (node.max < 0) {
+                        int loop = add();
+                        epsilon(current, loop);
+                        epsilon(build(child, loop), loop);
+                        return loop;
+                    }
+                    int end = add();
+                    epsilon(current, end);
+                    for (int i = node.min; i < node.max; i++) {
+                        current = build(child, current);
+                        epsilon(current, end);
+                    }
+                    return end;
+                }
+            }
+        }
+
+        private void closure(BitSet set) {
+            int[] stack = new int[ranges.size()];
+            int size = 0;
+            for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)) {
+                stack[size++] = n;
+            }
+            while (size > 0) {
+                for (int next : epsilons.get(stack[--size])) {
+                    if (!set.get(next)) {
+                        set.set(next);
+                        stack[size++] = next;
+                    }
+                }
+            }
+        }
+    }
+
+}
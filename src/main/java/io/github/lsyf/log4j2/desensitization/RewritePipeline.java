@@ -0,0 +1,235 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.pattern.MessagePatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternFormatter;
+import org.apache.logging.log4j.core.pattern.RegexReplacement;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.util.StringBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 布局的改写流水线：依次执行 {@link RegexReplacement}、各个 {@link DesensitizedRegex}，最后脱敏，所有阶段共用输出 event 的 buffer。
+ * <p>
+ * {@link DesensitizedRegex} 直接在 buffer 上匹配，没有匹配时不复制；有匹配时在 buffer 与线程内的备用 buffer 之间交替写入，
+ * 全部阶段结束后最多复制回 buffer 一次，不创建 String。{@link RegexReplacement} 只能按 String 替换。脱敏阶段直接替换 buffer 中的字符或只记录替换区间。
+ */
+final class RewritePipeline {
+
+    private static final int GROUP_LITERAL = DesensitizedRegex.GROUP_LITERAL;
+    private static final int GROUP_NAMED = DesensitizedRegex.GROUP_NAMED;
+
+    private final RegexReplacement[] replaces;
+    private final DesensitizedRegex[] regexes;
+    private final DesensitizedReplacement desensitized;
+    private final Stage[] stages;
+    private final ThreadLocal<State> threadLocal = new ThreadLocal<>();
+
+    RewritePipeline(final RegexReplacement replace, final DesensitizedRegex[] regexes,
+                    final DesensitizedReplacement desensitized) {
+        this.replaces = replace == null ? new RegexReplacement[0] : new RegexReplacement[]{replace};
+        this.regexes = regexes == null ? new DesensitizedRegex[0] : regexes;
+        this.desensitized = desensitized;
+        final List<Stage> stages = new ArrayList<>();
+        if (replace != null) {
+            stages.add(Stage.of(replace));
+        }
+        for (DesensitizedRegex regex : this.regexes) {
+            if (regex != null) {
+                stages.add(Stage.of(regex));
+            }
+        }
+        this.stages = stages.toArray(new Stage[0]);
+    }
+
+    RegexReplacement[] getReplaces() {
+        return replaces;
+    }
+
+    DesensitizedRegex[] getRegexes() {
+        return regexes;
+    }
+
+    DesensitizedReplacement getDesensitized() {
+        return desensitized;
+    }
+
+    /**
+     * 输出event并改写。masks为null时直接替换buffer中的字符，否则只把替换区间记录到masks
+     */
+    StringBuilder format(final PatternFormatter[] formatters, final LogEvent event,
+                         final StringBuilder buffer, final MaskList masks) {
+        //按 logger、marker、级别选择规则集；同一条日志只读取一次规则，规则热更新不影响正在输出的日志
+        final DesensitizedReplacement rules = desensitized != null ? desensitized.resolve(event) : null;
+        final LoggingScanner scanner = rules != null ? rules.getScanner() : null;
+        final LogEvent mapped = scanner != null ? rules.maskMap(scanner, event) : null;
+        final LogEvent source = mapped != null ? mapped : event;
+        //消息必然不含关键字或 MapMessage 已按键脱敏时记录其输出区间，脱敏时只扫描其两侧(MDC、异常、模式中的文本等)
+        final boolean clean = mapped != null || scanner != null && rules.isClean(scanner, source.getMessage());
+        int cleanFrom = -1;
+        int cleanTo = -1;
+        final int len = formatters.length;
+        for (int i = 0; i < len; i++) {
+            final int before = buffer.length();
+            formatters[i].format(source, buffer);
+            if (clean && cleanFrom < 0 && formatters[i].getConverter() instanceof MessagePatternConverter) {
+                cleanFrom = before;
+                cleanTo = buffer.length();
+            }
+        }
+        if (stages.length > 0 && rewrite(buffer)) {
+            //正则改写后消息的输出区间不再有效
+            cleanFrom = -1;
+            cleanTo = -1;
+        }
+        if (scanner != null) {
+            if (masks != null) { // masks while encoding
+                scanner.collect(buffer, 0, buffer.length(), cleanFrom, cleanTo, masks);
+            } else { // masks in place
+                scanner.mask(buffer, 0, buffer.length(), cleanFrom, cleanTo);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 依次执行正则替换
+     *
+     * @return buffer 是否被修改
+     */
+    boolean rewrite(final StringBuilder buffer) {
+        final State state = state();
+        StringBuilder source = buffer;
+        StringBuilder target = state.spare;
+        boolean rewritten = false;
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i].apply(state.matcher(i, stages[i]), source, target)) {
+                final StringBuilder swap = source;
+                source = target;
+                target = swap;
+                rewritten = true;
+            }
+        }
+        if (source != buffer) {
+            buffer.setLength(0);
+            buffer.append(source);
+        }
+        StringBuilders.trimToMaxSize(state.spare, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+        return rewritten;
+    }
+
+    /**
+     * 获取当前线程的备用 buffer 与 Matcher；未启用ThreadLocal时(如web应用)每次新建
+     */
+    private State state() {
+        if (!Constants.ENABLE_THREADLOCALS) {
+            return new State(stages.length);
+        }
+        State state = threadLocal.get();
+        if (state == null) {
+            state = new State(stages.length);
+            threadLocal.set(state);
+        }
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return "RewritePipeline(replaces=" + Arrays.toString(replaces) + ", regexes=" + Arrays.toString(regexes)
+                + ", desensitized=" + desensitized + ")";
+    }
+
+    private static final class State {
+        private final StringBuilder spare = new StringBuilder(Constants.INITIAL_REUSABLE_MESSAGE_SIZE);
+        private final Matcher[] matchers;
+
+        private State(final int stages) {
+            this.matchers = new Matcher[stages];
+        }
+
+        private Matcher matcher(final int i, final Stage stage) {
+            if (stage.pattern == null) {
+                return null;
+            }
+            if (matchers[i] == null) {
+                matchers[i] = stage.pattern.matcher("");
+            }
+            return matchers[i];
+        }
+    }
+
+    /**
+     * 一个正则替换：{@link DesensitizedRegex} 直接在 buffer 上替换；
+     * log4j 的 {@link RegexReplacement} 不公开正则与替换串，通过 {@link RegexReplacement#format(String)} 替换
+     */
+    private static final class Stage {
+        private final RegexReplacement fallback;
+        private final Pattern pattern;
+        private final String[] texts;//文本或分组名
+        private final int[] groups;//分组序号，GROUP_LITERAL 为文本，GROUP_NAMED 为命名分组
+
+        private Stage(final RegexReplacement fallback, final Pattern pattern, final String[] texts, final int[] groups) {
+            this.fallback = fallback;
+            this.pattern = pattern;
+            this.texts = texts;
+            this.groups = groups;
+        }
+
+        static Stage of(final RegexReplacement replace) {
+            return new Stage(replace, null, null, null);
+        }
+
+        static Stage of(final DesensitizedRegex regex) {
+            return new Stage(null, regex.getPattern(), regex.getTexts(), regex.getGroups());
+        }
+
+        /**
+         * 把 source 替换后的结果写入 target
+         *
+         * @return 是否有匹配，没有匹配时不写入 target
+         */
+        boolean apply(final Matcher matcher, final StringBuilder source, final StringBuilder target) {
+            if (matcher == null) {
+                final String str = source.toString();
+                final String formatted = fallback.format(str);
+                if (str.equals(formatted)) {
+                    return false;
+                }
+                target.setLength(0);
+                target.append(formatted);
+                return true;
+            }
+            matcher.reset(source);
+            if (!matcher.find()) {
+                matcher.reset("");
+                return false;
+            }
+            target.setLength(0);
+            int last = 0;
+            do {
+                target.append(source, last, matcher.start());
+                for (int i = 0; i < groups.length; i++) {
+                    final int group = groups[i];
+                    if (group == GROUP_LITERAL) {
+                        target.append(texts[i]);
+                    } else {
+                        final int start = group == GROUP_NAMED ? matcher.start(texts[i]) : matcher.start(group);
+                        if (start >= 0) {
+                            target.append(source, start, group == GROUP_NAMED ? matcher.end(texts[i]) : matcher.end(group));
+                        }
+                    }
+                }
+                last = matcher.end();
+            } while (matcher.find());
+            target.append(source, last, source.length());
+            matcher.reset("");
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 外部规则文件，修改后由 {@link DesensitizedReplacement#update(DesensitizedField[])} 替换规则。
+ * <p>
+ * properties 格式(UTF-8)，每个字段的属性写作 {@code 字段名.属性=值}，属性同 DesensitizedField；
+ * 不带属性的键只声明字段名，使用默认配置；带 . 但属性未知的行(如拼写错误)记录错误并忽略：
+ * <pre>
+ * phone.content=num
+ * phone.skipHead=3
+ * phone.skipTail=4
+ * idNo=
+ * </pre>
+ * 由配置的调度线程定期检查修改时间，文件解析失败时保留原规则。
+ */
+final class RulesFile implements Runnable {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    private static final Set<String> ATTRIBUTES = new HashSet<>(Arrays.asList(
+            "content", "skipHead", "skipTail", "c", "ignoreSymbols", "maxMissed", "mode", "strategy", "key"));
+
+    private final File file;
+    private final DesensitizedReplacement replacement;
+    private long lastModified;
+    private boolean missingReported;
+
+    RulesFile(File file, DesensitizedReplacement replacement) {
+        this.file = file;
+        this.replacement = replacement;
+    }
+
+    /**
+     * 文件有修改时重新加载
+     */
+    @Override
+    public void run() {
+        try {
+            long modified = file.lastModified();
+            if (modified == 0) {
+                if (!missingReported) {
+                    missingReported = true;
+                    LOGGER.error("Desensitized rules file {} not found", file);
+                }
+                return;
+            }
+            missingReported = false;
+            if (modified == lastModified) {
+                return;
+            }
+            lastModified = modified;
+            DesensitizedField[] fields;
+            try (InputStream in = new FileInputStream(file)) {
+                fields = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            replacement.update(fields);
+        } catch (Throwable e) {
+            LOGGER.error("Unable to load desensitized rules from {}, keep the current rules", file, e);
+        }
+    }
+
+    static DesensitizedField[] parse(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, DesensitizedField.Builder> builders = new LinkedHashMap<>();
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            String value = properties.getProperty(key);
+            int dot = key.lastIndexOf('.');
+            String attribute = dot > 0 ? key.substring(dot + 1) : null;
+            if (attribute == null) {
+                builders.computeIfAbsent(key, n -> DesensitizedField.newBuilder().setName(n));
+                continue;
+            }
+            if (!ATTRIBUTES.contains(attribute)) {
+                //多半是属性名拼写错误(如 skiphead)，不当作新的字段名
+                LOGGER.error("Unknown attribute '{}' in desensitized rules line '{}={}', ignored; expected one of {}",
+                        attribute, key, value, ATTRIBUTES);
+                continue;
+            }
+            String name = key.substring(0, dot);
+            DesensitizedField.Builder builder = builders.computeIfAbsent(name, n -> DesensitizedField.newBuilder().setName(n));
+            switch (attribute) {
+                case "content":
+                    builder.setContent(value);
+                    break;
+                case "skipHead":
+                    builder.setSkipHead(Integer.valueOf(value.trim()));
+                    break;
+                case "skipTail":
+                    builder.setSkipTail(Integer.valueOf(value.trim()));
+                    break;
+                case "c":
+                    builder.setC(value.isEmpty() ? null : value.charAt(0));
+                    break;
+                case "ignoreSymbols":
+                    builder.setIgnoreSymbols(value);
+                    break;
+                case "mode":
+                    builder.setMode(value.trim());
+                    break;
+                case "strategy":
+                    builder.setStrategy(value.trim());
+                    break;
+                case "key":
+                    builder.setKey(value);
+                    break;
+                default:
+                    builder.setMaxMissed(Integer.valueOf(value.trim()));
+                    break;
+            }
+        }
+        DesensitizedField[] fields = new DesensitizedField[builders.size()];
+        int i = 0;
+        for (DesensitizedField.Builder builder : builders.values()) {
+            fields[i++] = builder.build();
+        }
+        return fields;
+    }
+
+}
@@ -0,0 +1,240 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 扫描统计，计数器基于 {@link LongAdder}，多线程累加无竞争。规则热更新后继续累加。
+ * <p>
+ * 扫描耗时按 1/{@value #LATENCY_SAMPLE_RATE} 抽样，记录到以2为底的对数区间；统计过程不产生对象。
+ */
+public final class ScannerStats implements ScannerStatsMXBean {
+
+    /**
+     * 扫描耗时的抽样间隔
+     */
+    public static final int LATENCY_SAMPLE_RATE = 64;
+    private static final int LATENCY_BUCKETS = 32;
+
+    final LongAdder lines = new LongAdder();//进入扫描的行数
+    final LongAdder prefilterSkipped = new LongAdder();//被前置过滤直接放行、未进入自动机的行数
+    final LongAdder scannedChars = new LongAdder();//交给扫描器的字符数
+    final LongAdder cleanChars = new LongAdder();//消息模板判定不含关键字而跳过扫描的字符数
+    final LongAdder templateHits = new LongAdder();
+    final LongAdder templateMisses = new LongAdder();
+    final LongAdder templateEvictions = new LongAdder();
+    volatile TemplateCache templateCache;//当前规则的模板缓存，规则替换后指向新的缓存
+    final LongAdder tokenHits = new LongAdder();
+    final LongAdder tokenMisses = new LongAdder();
+    final LongAdder tokenEvictions = new LongAdder();
+    //最近一次编译规则的结果，规则替换后更新
+    volatile int keywordCount;
+    volatile long matcherBytes;
+    volatile long buildNanos;
+    //按字段名累计，规则替换后同名字段继续累加
+    private final ConcurrentHashMap<String, RuleStats> rules = new ConcurrentHashMap<>();
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+    public ScannerStats() {
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 字段的计数器，编译规则时获取并挂在 {@link LoggingScanner.Config} 上
+     */
+    RuleStats rule(String name) {
+        return rules.computeIfAbsent(name, n -> new RuleStats());
+    }
+
+    /**
+     * 本次扫描是否抽样计时
+     */
+    static boolean sample() {
+        return (ThreadLocalRandom.current().nextInt() & (LATENCY_SAMPLE_RATE - 1)) == 0;
+    }
+
+    void recordLatency(long nanos) {
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+        latency[Math.min(bucket, LATENCY_BUCKETS - 1)].increment();
+    }
+
+    @Override
+    public long getLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getPrefilterSkipped() {
+        return prefilterSkipped.sum();
+    }
+
+    @Override
+    public long getScannedChars() {
+        return scannedChars.sum();
+    }
+
+    @Override
+    public long getCleanChars() {
+        return cleanChars.sum();
+    }
+
+    @Override
+    public long getTemplateCacheHits() {
+        return templateHits.sum();
+    }
+
+    @Override
+    public long getTemplateCacheMisses() {
+        return templateMisses.sum();
+    }
+
+    @Override
+    public long getTemplateCacheEvictions() {
+        return templateEvictions.sum();
+    }
+
+    @Override
+    public int getTemplateCacheSize() {
+        TemplateCache cache = templateCache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public int getTemplateCacheCapacity() {
+        TemplateCache cache = templateCache;
+        return cache == null ? 0 : cache.capacity();
+    }
+
+    @Override
+    public long getTokenCacheHits() {
+        return tokenHits.sum();
+    }
+
+    @Override
+    public long getTokenCacheMisses() {
+        return tokenMisses.sum();
+    }
+
+    @Override
+    public long getTokenCacheEvictions() {
+        return tokenEvictions.sum();
+    }
+
+    /**
+     * 令牌缓存命中率：不需要计算摘要的查找占比
+     */
+    @Override
+    public double getTokenCacheHitRatio() {
+        long hits = tokenHits.sum();
+        long total = hits + tokenMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    @Override
+    public long getMatcherBytes() {
+        return matcherBytes;
+    }
+
+    @Override
+    public double getBuildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    /**
+     * 前置过滤命中率：跳过完整扫描的行数占比
+     */
+    @Override
+    public double getPrefilterSkipRatio() {
+        long total = lines.sum();
+        return total == 0 ? 0 : (double) prefilterSkipped.sum() / total;
+    }
+
+    @Override
+    public Map<String, Long> getRuleMatches() {
+        Map<String, Long> result = new TreeMap<>();
+        rules.forEach((name, rule) -> result.put(name, rule.matches.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getRuleMasks() {
+        Map<String, Long> result = new TreeMap<>();
+        rules.forEach((name, rule) -> result.put(name, rule.masks.sum()));
+        return result;
+    }
+
+    @Override
+    public long[] getScanLatencyHistogram() {
+        long[] histogram = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            histogram[i] = latency[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getScanLatencySamples() {
+        long total = 0;
+        for (LongAdder bucket : latency) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getScanLatencyP50Nanos() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getScanLatencyP99Nanos() {
+        return percentile(0.99);
+    }
+
+    private long percentile(double p) {
+        long[] histogram = getScanLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << LATENCY_BUCKETS;
+    }
+
+    @Override
+    public String toString() {
+        return "ScannerStats(lines=" + getLines() + ", prefilterSkipped=" + getPrefilterSkipped()
+                + ", prefilterSkipRatio=" + getPrefilterSkipRatio() + ", scannedChars=" + getScannedChars()
+                + ", cleanChars=" + getCleanChars()
+                + ", templateCacheHits=" + getTemplateCacheHits() + ", templateCacheMisses=" + getTemplateCacheMisses()
+                + ", templateCacheSize=" + getTemplateCacheSize()
+                + ", keywordCount=" + getKeywordCount() + ", matcherBytes=" + getMatcherBytes()
+                + ", tokenCacheHits=" + getTokenCacheHits() + ", tokenCacheMisses=" + getTokenCacheMisses()
+                + ", scanLatencyP50Nanos=" + getScanLatencyP50Nanos() + ", ruleMatches=" + getRuleMatches() + ")";
+    }
+
+    static final class RuleStats {
+        final LongAdder matches = new LongAdder();//关键字被匹配的次数
+        final LongAdder masks = new LongAdder();//匹配后有字符被替换的次数
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.Map;
+
+/**
+ * 扫描统计的 JMX 接口，每个规则集注册为
+ * {@code io.github.lsyf.log4j2.desensitization:type=Desensitized,context=<LoggerContext>,name=<规则集名称>}。
+ * 设置 log4j2.disable.jmx=true 时不注册。
+ */
+public interface ScannerStatsMXBean {
+
+    long getLines();
+
+    long getPrefilterSkipped();
+
+    double getPrefilterSkipRatio();
+
+    /**
+     * 交给扫描器的字符总数
+     */
+    long getScannedChars();
+
+    long getCleanChars();
+
+    long getTemplateCacheHits();
+
+    long getTemplateCacheMisses();
+
+    long getTemplateCacheEvictions();
+
+    int getTemplateCacheSize();
+
+    int getTemplateCacheCapacity();
+
+    /**
+     * 当前规则的关键字数，包括词典中的关键字
+     */
+    int getKeywordCount();
+
+    /**
+     * 当前规则的关键字自动机与前置过滤占用的内存(字节，估算)，ahocorasick 引擎为-1
+     */
+    long getMatcherBytes();
+
+    /**
+     * 最近一次编译规则的耗时
+     */
+    double getBuildMillis();
+
+    long getTokenCacheHits();
+
+    long getTokenCacheMisses();
+
+    long getTokenCacheEvictions();
+
+    /**
+     * 令牌缓存的命中率，没有查找时为0
+     */
+    double getTokenCacheHitRatio();
+
+    /**
+     * 各字段名被匹配到的次数
+     */
+    Map<String, Long> getRuleMatches();
+
+    /**
+     * 各字段名匹配后实际替换了字符的次数
+     */
+    Map<String, Long> getRuleMasks();
+
+    /**
+     * 抽样的扫描耗时分布，第i个元素为耗时在 [2^i, 2^(i+1)) 纳秒内的次数
+     */
+    long[] getScanLatencyHistogram();
+
+    long getScanLatencySamples();
+
+    /**
+     * 抽样扫描耗时的中位数，按所在区间的上界估算，单位纳秒
+     */
+    long getScanLatencyP50Nanos();
+
+    long getScanLatencyP99Nanos();
+
+}
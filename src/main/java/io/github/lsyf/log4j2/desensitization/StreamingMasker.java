@@ -0,0 +1,878 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.core.util.Constants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * 分段脱敏：按固定大小的窗口读入文本、匹配关键字、查找脱敏内容并输出，结果与一次性扫描完全一致，
+ * 占用的内存只与窗口大小和规则(关键字长度、skipHead、skipTail)有关，与文本长度无关。
+ * <p>
+ * 一次性扫描先找出全部命中，再对每个命中从关键字之后查找内容，直到下一个命中的首部。分段时：
+ * <ul>
+ * <li>相邻窗口重叠 最长关键字长度-1 个字符，每个窗口只接受终点落在本窗口新增部分的命中，命中顺序与一次性扫描相同；</li>
+ * <li>查找内容的过程可以暂停，未读到下一个命中之前只推进到尚未匹配的命中可能的最早起点；</li>
+ * <li>被替换的区间可能很长，已确定替换的部分先输出，只保留末尾 skipTail 个字符等待内容结束。</li>
+ * </ul>
+ * 查找内容的逻辑与 {@link LoggingScanner} 的 maskContent 逐行对应，修改时需同步；
+ * json 模式的字段与一次性扫描共用 {@link JsonValueWalker}，值内的命中同样跳过。
+ * <p>
+ * 配置了值格式({@link DesensitizedPattern})时，同一窗口内再按 {@link PatternAutomaton} 查找值，
+ * 值的起点需要读取窗口之后的字符才能确定时留到下个窗口。值的替换区间与关键字的替换区间合并输出，重叠部分按关键字的规则替换。
+ */
+final class StreamingMasker {
+
+    /**
+     * 每次匹配关键字的窗口大小
+     */
+    static final int WINDOW = 8192;
+
+    private static final ThreadLocal<StreamingMasker> THREAD_LOCAL = new ThreadLocal<>();
+    private static final long UNKNOWN = Long.MAX_VALUE;
+
+    private KeywordMatcher matcher;
+    private KeywordPrefilter prefilter;
+    private LoggingScanner.Config[] rules;
+    private int maxLength;
+    private PatternAutomaton patterns;
+    private LoggingScanner.Config[] patternRules;
+
+    //输入：环形缓冲区，保存 [retained, read) 的字符，下标为文本中的绝对位置
+    private char[] ring = new char[WINDOW * 2];
+    private final RingWindow window = new RingWindow();
+    private final RingWindow valueWindow = new RingWindow();//令牌化的值，缓存命中时不复制
+    private Reader reader;
+    private CharSequence text;//按区间读取时的来源
+    private int textFrom;
+    private int textEnd;//来源可读取的终点，比 limit 多一个字符用于读取跨越终点的代理对
+    private long read;
+    private boolean eof;
+    private long limit = UNKNOWN;//文本终点，读到末尾前未知
+
+    //关键字匹配
+    private final MatchList found = new MatchList();
+    private long scanFrom;//下个窗口开始扫描的位置
+    private long scanned;//终点早于该位置的命中都已找到
+    private boolean matchDone;
+    private boolean candidate;//是否有窗口通过了前置过滤
+
+    //值格式匹配
+    private final MatchList patternFound = new MatchList();
+    private long patternNext;//下次查找值的起点，之前的值都已找到
+
+    //待查找内容的命中队列
+    private int queueHead;
+    private int queueSize;
+    private long[] queueStarts = new long[16];
+    private long[] queueEnds = new long[16];
+    private int[] queueRules = new int[16];
+    private char[] queueQuotes = new char[16];//命中前的引号，见 JsonValueWalker#keyQuote
+
+    //正在查找内容的命中，字段与 maskContent 的局部变量相同
+    private boolean active;
+    private LoggingScanner.Config config;
+    private long index;
+    private int charCount;
+    private int missNum;
+    private int continuousIgnoreNum;
+    private boolean isHit;
+    private long start;
+    private long head;
+    private int headShift = -1;//head 是否落在代理对中间：-1 未知，0 否，1 是
+    private long maskedTo;//已确定替换的终点
+    private boolean anyMasked;
+    private final JsonValueWalker json = new JsonValueWalker();
+    private boolean jsonActive;//正在处理的是 json 模式的命中
+    private long jsonFrom;//json 模式的命中之后的位置，不是键时从此按文本模式查找
+    private long coveredTo;//json 值的终点，起点在此之前的命中已随值一起处理
+
+    //输出：按顺序确定的替换区间
+    private int rangeHead;
+    private int rangeSize;
+    private long[] rangeStarts = new long[16];
+    private long[] rangeEnds = new long[16];
+    private char[] rangeChars = new char[16];
+    private String[] rangeTexts = new String[16];//令牌，按字符替换时为null
+    private int[] rangeOffsets = new int[16];//区间起点对应的令牌下标
+    private int patternRangeHead;//值的替换区间
+    private int patternRangeSize;
+    private long[] patternRangeStarts = new long[16];
+    private long[] patternRangeEnds = new long[16];
+    private char[] patternRangeChars = new char[16];
+    private long emitted;
+    private Appendable out;
+    private StringBuilder target;//原地替换
+    private MaskList masks;//只记录替换区间
+    private final char[] outBuffer = new char[1024];
+    private int outSize;
+
+    /**
+     * 获取当前线程的实例；未启用ThreadLocal时(如web应用)每次新建
+     */
+    static StreamingMasker get() {
+        if (!Constants.ENABLE_THREADLOCALS) {
+            return new StreamingMasker();
+        }
+        StreamingMasker masker = THREAD_LOCAL.get();
+        if (masker == null) {
+            masker = new StreamingMasker();
+            THREAD_LOCAL.set(masker);
+        }
+        return masker;
+    }
+
+    /**
+     * @param matcher  未配置关键字时为null
+     * @param patterns 未配置值格式时为null
+     */
+    StreamingMasker reset(KeywordMatcher matcher, KeywordPrefilter prefilter, LoggingScanner.Config[] rules,
+                          PatternAutomaton patterns, LoggingScanner.Config[] patternRules) {
+        this.matcher = matcher;
+        this.prefilter = prefilter;
+        this.rules = rules;
+        this.maxLength = matcher == null ? 1 : matcher.maxLength();
+        this.patterns = patterns;
+        this.patternRules = patternRules;
+        this.patternNext = patterns == null ? UNKNOWN : 0;
+        this.reader = null;
+        this.text = null;
+        this.read = 0;
+        this.eof = false;
+        this.limit = UNKNOWN;
+        this.scanFrom = 0;
+        this.scanned = 0;
+        this.matchDone = false;
+        this.candidate = false;
+        this.queueHead = 0;
+        this.queueSize = 0;
+        this.active = false;
+        this.jsonActive = false;
+        this.coveredTo = -1;
+        this.anyMasked = false;
+        this.rangeHead = 0;
+        this.rangeSize = 0;
+        this.patternRangeHead = 0;
+        this.patternRangeSize = 0;
+        this.emitted = 0;
+        this.out = null;
+        this.target = null;
+        this.masks = null;
+        this.outSize = 0;
+        return this;
+    }
+
+    /**
+     * 读取reader的全部内容，脱敏后写入out
+     *
+     * @return 是否有字符被替换
+     */
+    boolean process(Reader reader, Appendable out) throws IOException {
+        this.reader = reader;
+        this.out = out;
+        run();
+        flush();
+        return anyMasked;
+    }
+
+    /**
+     * 对text的 [from, to) 区间脱敏，区间两端视为文本边界；masks为null时直接在text(StringBuilder)上替换
+     *
+     * @param scanFrom 调用方保证其之前不存在关键字，如前置过滤给出的候选位置
+     * @return 是否有字符被替换
+     */
+    boolean process(CharSequence text, int from, int to, int scanFrom, MaskList masks) throws IOException {
+        this.text = text;
+        this.textFrom = from;
+        //与一次性扫描相同，区间终点的高代理字符可与区间外的低代理字符组成一个码点
+        this.textEnd = Math.min(to + 1, text.length());
+        this.limit = to - from;
+        this.scanFrom = scanFrom - from;
+        this.masks = masks;
+        this.target = masks == null ? (StringBuilder) text : null;
+        run();
+        return anyMasked;
+    }
+
+    /**
+     * 是否有窗口通过了前置过滤，用于统计
+     */
+    boolean hasCandidate() {
+        return candidate;
+    }
+
+    long length() {
+        return limit;
+    }
+
+    private void run() throws IOException {
+        while (true) {
+            fill();
+            match();
+            extract();
+            if (matchDone && !active && queueSize == 0) {
+                break;
+            }
+            emit(stable());
+        }
+        emit(limit);
+    }
+
+    // ---------------------------------------------------------------- 输入
+
+    private void fill() throws IOException {
+        if (eof) {
+            return;
+        }
+        //未输出的字符，以及下个窗口整词判断需要的前一个字符、判断 json 键的引号需要的前两个字符；
+        //查找内容需要读取的字符都不早于已输出的位置
+        long retained = Math.min(emitted, Math.max(0, scanStart() - 2));
+        int space = ring.length - (int) (read - retained);
+        if (space < WINDOW) {
+            grow(retained);
+            space = ring.length - (int) (read - retained);
+        }
+        int mask = ring.length - 1;
+        while (space > 0 && !eof) {
+            int offset = (int) (read & mask);
+            int count = Math.min(space, Math.min(WINDOW, ring.length - offset));
+            int n;
+            if (reader != null) {
+                n = reader.read(ring, offset, count);
+            } else {
+                long from = textFrom + read;
+                n = (int) Math.min(count, textEnd - from);
+                if (n > 0) {
+                    copy(text, (int) from, (int) from + n, ring, offset);
+                } else {
+                    n = -1;
+                }
+            }
+            if (n < 0) {
+                eof = true;
+                if (limit == UNKNOWN) {
+                    limit = read;
+                }
+                break;
+            }
+            read += n;
+            space -= n;
+            if (read - scanStart() >= WINDOW) {
+                break;
+            }
+        }
+    }
+
+    private static void copy(CharSequence text, int from, int to, char[] dst, int offset) {
+        if (text instanceof String) {
+            ((String) text).getChars(from, to, dst, offset);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(from, to, dst, offset);
+        } else {
+            for (int i = from; i < to; i++) {
+                dst[offset++] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * 保留的内容超过缓冲区容量时(skipHead、skipTail很大)扩容，容量只与规则有关
+     */
+    private void grow(long retained) {
+        char[] bigger = new char[ring.length << 1];
+        int oldMask = ring.length - 1;
+        int newMask = bigger.length - 1;
+        for (long p = retained; p < read; p++) {
+            bigger[(int) (p & newMask)] = ring[(int) (p & oldMask)];
+        }
+        ring = bigger;
+    }
+
+    private char charAt(long position) {
+        return ring[(int) (position & (ring.length - 1))];
+    }
+
+    /**
+     * 同 {@link Character#codePointAt(CharSequence, int)}；调用时 position 之后至少已读入一个字符，或已读到末尾
+     */
+    private int codePointAt(long position) {
+        char c1 = charAt(position);
+        if (Character.isHighSurrogate(c1) && position + 1 < read) {
+            char c2 = charAt(position + 1);
+            if (Character.isLowSurrogate(c2)) {
+                return Character.toCodePoint(c1, c2);
+            }
+        }
+        return c1;
+    }
+
+    // ---------------------------------------------------------------- 匹配关键字
+
+    /**
+     * 文本是否已全部读入
+     */
+    private boolean complete() {
+        return eof || text != null && read >= textEnd - textFrom;
+    }
+
+    /**
+     * 关键字与值的下一个窗口中较早的起点
+     */
+    private long scanStart() {
+        return Math.min(scanFrom, patternNext);
+    }
+
+    private void match() {
+        boolean complete = complete();
+        if (matchDone || !complete && read - scanStart() < WINDOW) {
+            return;
+        }
+        matchPatterns(complete);
+        //未到末尾时保留最后一个字符，用于判断命中之后是否紧跟字母
+        long scanTo = complete ? limit : read - 1;
+        if (matcher != null && scanFrom < scanTo) {
+            long origin = Math.max(0, scanFrom - 1);
+            window.origin = origin;
+            window.length = (int) ((complete ? limit : read) - origin);
+            int from = (int) (scanFrom - origin);
+            int to = (int) (scanTo - origin);
+            int first = prefilter.find(window, from, to);
+            if (first >= 0) {
+                candidate = true;
+                found.size = 0;
+                matcher.match(window, 0, window.length, first, to, found);
+                for (int i = 0; i < found.size; i++) {
+                    //终点早于 scanned 的命中已由上个窗口找到
+                    if (origin + found.ends[i] >= scanned) {
+                        long start = origin + found.starts[i];
+                        //缓冲区至少保留到 origin 之前一个字符
+                        char quote = JsonValueWalker.keyQuote(start > 0 ? charAt(start - 1) : 0,
+                                start > 1 && start - 2 >= origin - 1 ? charAt(start - 2) : 0);
+                        enqueue(start, origin + found.ends[i], found.rules[i], quote);
+                    }
+                }
+            }
+        }
+        scanned = scanTo;
+        scanFrom = Math.max(scanFrom, scanTo - maxLength + 1);
+        matchDone = complete;
+    }
+
+    /**
+     * 查找值，需要读取之后的字符才能确定的起点留到下个窗口；找到的值直接确定替换区间
+     */
+    private void matchPatterns(boolean complete) {
+        if (patterns == null || patternNext >= limit) {
+            return;
+        }
+        long origin = Math.max(0, patternNext - 1);
+        long to = complete ? limit : read;
+        window.origin = origin;
+        window.length = (int) (to - origin);
+        patternFound.size = 0;
+        int next = patterns.find(window, 0, window.length, (int) (patternNext - origin), window.length, complete, patternFound);
+        patternNext = complete ? limit : origin + next;
+        for (int i = 0; i < patternFound.size; i++) {
+            LoggingScanner.Config config = patternRules[patternFound.rules[i]];
+            long start = origin + patternFound.starts[i];
+            long end = origin + patternFound.ends[i] + 1;
+            //同 LoggingScanner 的 maskRun
+            long head = start + config.getSkipHead();
+            long maskTo = end - config.getSkipTail();
+            if (head > start && head < maskTo && Character.isLowSurrogate(charAt(head))
+                    && Character.isHighSurrogate(charAt(head - 1))) {
+                head++;
+            }
+            if (maskTo < end && maskTo > head && Character.isHighSurrogate(charAt(maskTo - 1))
+                    && Character.isLowSurrogate(charAt(maskTo))) {
+                maskTo--;
+            }
+            boolean masked = head < maskTo;
+            if (masked) {
+                addPatternRange(head, maskTo, config.getC());
+                anyMasked = true;
+            }
+            ScannerStats.RuleStats ruleStats = config.stats;
+            if (ruleStats != null) {
+                ruleStats.matches.increment();
+                if (masked) {
+                    ruleStats.masks.increment();
+                }
+            }
+        }
+    }
+
+    private void addPatternRange(long from, long to, char c) {
+        if (patternRangeHead + patternRangeSize == patternRangeStarts.length) {
+            if (patternRangeHead > 0) {
+                System.arraycopy(patternRangeStarts, patternRangeHead, patternRangeStarts, 0, patternRangeSize);
+                System.arraycopy(patternRangeEnds, patternRangeHead, patternRangeEnds, 0, patternRangeSize);
+                System.arraycopy(patternRangeChars, patternRangeHead, patternRangeChars, 0, patternRangeSize);
+                patternRangeHead = 0;
+            } else {
+                int capacity = patternRangeStarts.length << 1;
+                patternRangeStarts = Arrays.copyOf(patternRangeStarts, capacity);
+                patternRangeEnds = Arrays.copyOf(patternRangeEnds, capacity);
+                patternRangeChars = Arrays.copyOf(patternRangeChars, capacity);
+            }
+        }
+        int i = patternRangeHead + patternRangeSize++;
+        patternRangeStarts[i] = from;
+        patternRangeEnds[i] = to;
+        patternRangeChars[i] = c;
+    }
+
+    private void enqueue(long start, long end, int rule, char quote) {
+        if (queueHead + queueSize == queueStarts.length) {
+            if (queueHead > 0) {
+                System.arraycopy(queueStarts, queueHead, queueStarts, 0, queueSize);
+                System.arraycopy(queueEnds, queueHead, queueEnds, 0, queueSize);
+                System.arraycopy(queueRules, queueHead, queueRules, 0, queueSize);
+                System.arraycopy(queueQuotes, queueHead, queueQuotes, 0, queueSize);
+                queueHead = 0;
+            } else {
+                int capacity = queueStarts.length << 1;
+                queueStarts = Arrays.copyOf(queueStarts, capacity);
+                queueEnds = Arrays.copyOf(queueEnds, capacity);
+                queueRules = Arrays.copyOf(queueRules, capacity);
+                queueQuotes = Arrays.copyOf(queueQuotes, capacity);
+            }
+        }
+        int i = queueHead + queueSize++;
+        queueStarts[i] = start;
+        queueEnds[i] = end;
+        queueRules[i] = rule;
+        queueQuotes[i] = quote;
+    }
+
+    private void dequeue() {
+        queueHead++;
+        if (--queueSize == 0) {
+            queueHead = 0;
+        }
+    }
+
+    /**
+     * 尚未找到的命中可能的最早起点
+     */
+    private long unmatchedFrom() {
+        return matchDone ? limit : scanned - maxLength + 1;
+    }
+
+    // ---------------------------------------------------------------- 查找内容
+
+    private void extract() {
+        while (true) {
+            if (!active) {
+                while (queueSize > 0 && queueStarts[queueHead] < coveredTo) {
+                    dequeue();
+                }
+                if (queueSize == 0) {
+                    return;
+                }
+                if (rules[queueRules[queueHead]].isJson()) {
+                    beginJson();
+                } else {
+                    begin();
+                }
+            }
+            if (jsonActive) {
+                if (!advanceJson()) {
+                    return;
+                }
+                continue;
+            }
+            long nextHead = queueSize > 0 ? queueStarts[queueHead] : matchDone ? limit : UNKNOWN;
+            if (!advance(nextHead)) {
+                return;
+            }
+        }
+    }
+
+    private void beginJson() {
+        config = rules[queueRules[queueHead]];
+        index = queueEnds[queueHead] + 1;
+        jsonFrom = index;
+        json.begin(config, queueQuotes[queueHead]);
+        dequeue();
+        active = true;
+        jsonActive = true;
+    }
+
+    /**
+     * json 值的识别不受下一个命中的限制，读到已读入的位置为止
+     *
+     * @return 是否已结束
+     */
+    private boolean advanceJson() {
+        long to = Math.min(read, limit);
+        while (index < to && json.next(charAt(index), index)) {
+            index++;
+        }
+        if (json.active()) {
+            if (index < limit) {
+                //值内的命中不会再被处理
+                if (json.covering()) {
+                    while (queueSize > 0 && queueStarts[queueHead] < index) {
+                        dequeue();
+                    }
+                }
+                drainJson();
+                return false;
+            }
+            json.finish(limit);
+        }
+        if (!json.keyed) {
+            //不是 json 的键时按文本模式查找，此前的字符尚未输出
+            jsonActive = false;
+            beginText(jsonFrom);
+            return true;
+        }
+        drainJson();
+        active = false;
+        jsonActive = false;
+        coveredTo = Math.max(coveredTo, json.coveredTo);
+        anyMasked |= json.masked;
+        ScannerStats.RuleStats ruleStats = config.stats;
+        if (ruleStats != null) {
+            ruleStats.matches.increment();
+            if (json.masked) {
+                ruleStats.masks.increment();
+            }
+        }
+        return true;
+    }
+
+    private void drainJson() {
+        for (int i = 0; i < json.rangeSize; i++) {
+            addRange(json.rangeStarts[i], json.rangeEnds[i], config.getC());
+        }
+        json.rangeSize = 0;
+    }
+
+    private void begin() {
+        config = rules[queueRules[queueHead]];
+        long from = queueEnds[queueHead] + 1;
+        dequeue();
+        beginText(from);
+    }
+
+    private void beginText(long from) {
+        index = from;
+        active = true;
+        charCount = 1;
+        missNum = 0;
+        continuousIgnoreNum = 0;
+        isHit = false;
+        start = -1;
+        headShift = -1;
+    }
+
+    /**
+     * 推进当前命中的内容查找
+     *
+     * @param nextHead 下一个命中的首部，未知时为 {@link #UNKNOWN}
+     * @return 是否已结束
+     */
+    private boolean advance(long nextHead) {
+        LoggingScanner.Config config = this.config;
+        int maxMissed = config.getMaxMissed();
+        int skipTail = config.getSkipTail();
+        long bound = nextHead == UNKNOWN ? unmatchedFrom() : nextHead;
+        long end = -1;
+        for (; missNum <= maxMissed && index < nextHead; index += charCount) {
+            if (index >= bound) {
+                return false;
+            }
+            int c = codePointAt(index);
+            charCount = Character.charCount(c);
+            boolean hitIgnoreSymbol = config.hitIgnoreSymbol(c);
+            boolean hitContent = config.hitContent(c);
+
+            if ((isHit || !hitIgnoreSymbol) && hitContent) {
+                if (!isHit) {
+                    isHit = true;
+                    start = index;
+                    head = start + config.getSkipHead();
+                    maskedTo = head;
+                }
+                //确定替换的部分：内容至少延伸到 index + charCount，替换终点不早于其前 skipTail + 1 个字符
+                long sure = index + charCount - skipTail - 1;
+                //令牌由完整的值计算，值结束前不输出；超过令牌化长度的值按替换字符处理，与一次性扫描相同
+                if (sure > maskedTo && !tokenPending(index + charCount) && headKnown(index + charCount)) {
+                    maskedTo = Math.max(maskedTo, head + headShift);
+                    if (sure > maskedTo) {
+                        addRange(maskedTo, sure, config.getC());
+                        maskedTo = sure;
+                    }
+                }
+            } else {
+                if (isHit) {
+                    end = index;
+                    break;
+                } else {
+                    if (hitIgnoreSymbol) {
+                        if (++continuousIgnoreNum == 1) {
+                            missNum++;
+                        }
+                    } else {
+                        continuousIgnoreNum = 0;
+                        missNum++;
+                    }
+                }
+            }
+        }
+        finish(end, nextHead);
+        return true;
+    }
+
+    /**
+     * 读到 head 之后判断 head 是否拆开了代理对
+     */
+    private boolean headKnown(long readTo) {
+        if (headShift < 0 && head < readTo) {
+            headShift = head > start && Character.isLowSurrogate(charAt(head))
+                    && Character.isHighSurrogate(charAt(head - 1)) ? 1 : 0;
+        }
+        return headShift >= 0;
+    }
+
+    private void finish(long end, long nextHead) {
+        active = false;
+        boolean masked = false;
+        if (isHit) {
+            if (end == -1) {
+                end = Math.min(index, nextHead);
+            }
+            long head = this.head;
+            long to = end - config.getSkipTail();
+            if (head > start && head < to && headKnown(end) && headShift == 1) {
+                head++;
+            }
+            if (to < end && to > head && Character.isHighSurrogate(charAt(to - 1))
+                    && Character.isLowSurrogate(charAt(to))) {
+                to--;
+            }
+            if (head < to) {
+                masked = true;
+                if (tokenPending(end)) {
+                    valueWindow.origin = start;
+                    valueWindow.length = (int) (end - start);
+                    String token = config.tokenizer.token(valueWindow, 0, valueWindow.length);
+                    addRange(head, to, config.getC(), token, (int) (head - start));
+                } else if (maskedTo < to) {
+                    addRange(Math.max(head, maskedTo), to, config.getC());
+                }
+            }
+        }
+        anyMasked |= masked;
+        ScannerStats.RuleStats ruleStats = config.stats;
+        if (ruleStats != null) {
+            ruleStats.matches.increment();
+            if (masked) {
+                ruleStats.masks.increment();
+            }
+        }
+    }
+
+    /**
+     * 当前命中的值读到 readTo 时是否仍按令牌替换，值需要保留到结束
+     */
+    private boolean tokenPending(long readTo) {
+        return config.tokenizer != null && readTo - start <= Tokenizer.MAX_VALUE;
+    }
+
+    private void addRange(long from, long to, char c) {
+        addRange(from, to, c, null, 0);
+    }
+
+    private void addRange(long from, long to, char c, String text, int offset) {
+        int last = rangeHead + rangeSize - 1;
+        if (text == null && rangeSize > 0 && rangeEnds[last] == from && rangeChars[last] == c && rangeTexts[last] == null) {
+            rangeEnds[last] = to;
+            return;
+        }
+        if (rangeHead + rangeSize == rangeStarts.length) {
+            if (rangeHead > 0) {
+                System.arraycopy(rangeStarts, rangeHead, rangeStarts, 0, rangeSize);
+                System.arraycopy(rangeEnds, rangeHead, rangeEnds, 0, rangeSize);
+                System.arraycopy(rangeChars, rangeHead, rangeChars, 0, rangeSize);
+                System.arraycopy(rangeTexts, rangeHead, rangeTexts, 0, rangeSize);
+                System.arraycopy(rangeOffsets, rangeHead, rangeOffsets, 0, rangeSize);
+                rangeHead = 0;
+            } else {
+                int capacity = rangeStarts.length << 1;
+                rangeStarts = Arrays.copyOf(rangeStarts, capacity);
+                rangeEnds = Arrays.copyOf(rangeEnds, capacity);
+                rangeChars = Arrays.copyOf(rangeChars, capacity);
+                rangeTexts = Arrays.copyOf(rangeTexts, capacity);
+                rangeOffsets = Arrays.copyOf(rangeOffsets, capacity);
+            }
+        }
+        int i = rangeHead + rangeSize++;
+        rangeStarts[i] = from;
+        rangeEnds[i] = to;
+        rangeChars[i] = c;
+        rangeTexts[i] = text;
+        rangeOffsets[i] = offset;
+    }
+
+    // ---------------------------------------------------------------- 输出
+
+    /**
+     * 之前的字符不会再被替换的位置
+     */
+    private long stable() {
+        long stable = Math.min(unmatchedFrom(), patternNext);
+        if (queueSize > 0) {
+            stable = Math.min(stable, queueEnds[queueHead] + 1);
+        }
+        if (active) {
+            long pending;
+            if (jsonActive) {
+                //未确定是否为键时可能退回文本模式
+                pending = json.keyed ? json.pending(index) : jsonFrom;
+            } else if (!isHit) {
+                pending = index;
+            } else if (tokenPending(index)) {
+                pending = start;
+            } else if (headShift < 0) {
+                pending = Math.max(start, head - 1);
+            } else {
+                pending = Math.max(head + headShift, maskedTo);
+            }
+            stable = Math.min(stable, pending);
+        }
+        return stable;
+    }
+
+    /**
+     * 输出 to 之前的字符，关键字与值的替换区间重叠时按关键字的区间替换
+     */
+    private void emit(long to) throws IOException {
+        if (to <= emitted) {
+            return;
+        }
+        while (emitted < to) {
+            long keywordStart = rangeSize > 0 ? Math.max(rangeStarts[rangeHead], emitted) : UNKNOWN;
+            long patternStart = patternRangeSize > 0 ? Math.max(patternRangeStarts[patternRangeHead], emitted) : UNKNOWN;
+            long next = Math.min(keywordStart, patternStart);
+            if (next >= to) {
+                break;
+            }
+            write(emitted, next);
+            long maskTo;
+            char c;
+            String text = null;
+            int offset = 0;
+            if (keywordStart == next) {
+                maskTo = Math.min(rangeEnds[rangeHead], to);
+                c = rangeChars[rangeHead];
+                text = rangeTexts[rangeHead];
+                offset = rangeOffsets[rangeHead] + (int) (next - rangeStarts[rangeHead]);
+            } else {
+                maskTo = Math.min(Math.min(patternRangeEnds[patternRangeHead], keywordStart), to);
+                c = patternRangeChars[patternRangeHead];
+            }
+            writeMask(next, maskTo, c, text, offset);
+            emitted = maskTo;
+            while (rangeSize > 0 && rangeEnds[rangeHead] <= emitted) {
+                rangeTexts[rangeHead] = null;
+                rangeHead++;
+                if (--rangeSize == 0) {
+                    rangeHead = 0;
+                }
+            }
+            while (patternRangeSize > 0 && patternRangeEnds[patternRangeHead] <= emitted) {
+                patternRangeHead++;
+                if (--patternRangeSize == 0) {
+                    patternRangeHead = 0;
+                }
+            }
+        }
+        write(emitted, to);
+        emitted = to;
+    }
+
+    private void write(long from, long to) throws IOException {
+        if (out == null) {
+            return;
+        }
+        for (long p = from; p < to; p++) {
+            if (outSize == outBuffer.length) {
+                flush();
+            }
+            outBuffer[outSize++] = charAt(p);
+        }
+    }
+
+    /**
+     * @param text 令牌，[from, to) 替换为其中自 offset 开始的部分；为null时替换为c
+     */
+    private void writeMask(long from, long to, char c, String text, int offset) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        if (target != null) {
+            for (long p = from; p < to; p++) {
+                target.setCharAt((int) (textFrom + p), text == null ? c : text.charAt(offset + (int) (p - from)));
+            }
+        } else if (masks != null) {
+            masks.add((int) (textFrom + from), (int) (textFrom + to), c, text, offset);
+        } else {
+            for (long p = from; p < to; p++) {
+                if (outSize == outBuffer.length) {
+                    flush();
+                }
+                outBuffer[outSize++] = text == null ? c : text.charAt(offset + (int) (p - from));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (outSize == 0) {
+            return;
+        }
+        if (out instanceof Writer) {
+            ((Writer) out).write(outBuffer, 0, outSize);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(outBuffer, 0, outSize);
+        } else {
+            for (int i = 0; i < outSize; i++) {
+                out.append(outBuffer[i]);
+            }
+        }
+        outSize = 0;
+    }
+
+    /**
+     * 以 origin 为起点的环形缓冲区视图，供自动机与前置过滤按窗口内的下标读取
+     */
+    private final class RingWindow implements CharSequence {
+        private long origin;
+        private int length;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return ring[(int) ((origin + index) & (ring.length - 1))];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new StringBuilder(end - start).append(this, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+
+}
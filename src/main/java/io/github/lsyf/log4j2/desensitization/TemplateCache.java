@@ -0,0 +1,92 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 消息模板(如 ParameterizedMessage 的 format)的分析结果缓存，容量固定，按 CLOCK 淘汰。
+ * <p>
+ * 读取无锁：命中只设置访问位；未命中时由调用方分析后写入，写入加锁推进时钟指针，
+ * 跳过并清除访问位为true的条目，淘汰第一个访问位为false的条目。
+ */
+final class TemplateCache {
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> map;
+    private final Entry[] ring;//时钟环，写入时加锁访问
+    private int size;
+    private int hand;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    TemplateCache(int capacity, ScannerStats stats) {
+        this.capacity = capacity;
+        this.hits = stats.templateHits;
+        this.misses = stats.templateMisses;
+        this.evictions = stats.templateEvictions;
+        this.map = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        this.ring = new Entry[capacity];
+    }
+
+    /**
+     * @return 未缓存时返回 {@link Integer#MIN_VALUE}
+     */
+    int get(String template) {
+        Entry entry = map.get(template);
+        if (entry == null) {
+            misses.increment();
+            return Integer.MIN_VALUE;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    void put(String template, int value) {
+        synchronized (ring) {
+            if (map.containsKey(template)) {
+                return;
+            }
+            int slot;
+            if (size < capacity) {
+                slot = size++;
+            } else {
+                while (ring[hand].referenced) {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % capacity;
+                }
+                slot = hand;
+                hand = (hand + 1) % capacity;
+                map.remove(ring[slot].template);
+                evictions.increment();
+            }
+            Entry entry = new Entry(template, value);
+            ring[slot] = entry;
+            map.put(template, entry);
+        }
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static final class Entry {
+        private final String template;
+        private final int value;
+        private volatile boolean referenced;//CLOCK访问位
+
+        private Entry(String template, int value) {
+            this.template = template;
+            this.value = value;
+        }
+    }
+
+}
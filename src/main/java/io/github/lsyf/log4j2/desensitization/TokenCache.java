@@ -0,0 +1,157 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 值到令牌的缓存，容量固定，按 CLOCK 淘汰，淘汰方式与 {@link TemplateCache} 相同。
+ * <p>
+ * 同一请求的多行日志通常反复出现同一个值(如手机号)，命中时只需一次查找，不再计算摘要。
+ * <p>
+ * 缓存不保存原值：键为值的两个64位指纹，种子由每个缓存随机生成，堆转储中只有指纹与令牌。
+ * 查找直接在文本的区间上计算指纹，开放寻址表中比较指纹，命中时不产生对象。
+ * 读取无锁：条目不可变，写入与淘汰加锁；读取与淘汰并发时可能未命中，由调用方重新计算并写入，结果不变。
+ */
+final class TokenCache {
+
+    private static final long M1 = 0x9E3779B97F4A7C15L;
+    private static final long M2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final int capacity;
+    private final Entry[] table;//开放寻址表，容量为2的幂，不小于 capacity 的2倍
+    private final Entry[] ring;//时钟环，写入时加锁访问
+    private final long seed1;
+    private final long seed2;
+    private int size;
+    private int hand;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    TokenCache(int capacity, ScannerStats stats) {
+        this.capacity = capacity;
+        this.hits = stats.tokenHits;
+        this.misses = stats.tokenMisses;
+        this.evictions = stats.tokenEvictions;
+        this.table = new Entry[Integer.highestOneBit(Math.max(2, capacity) * 4 - 1)];
+        this.ring = new Entry[capacity];
+        SecureRandom random = new SecureRandom();
+        this.seed1 = random.nextLong();
+        this.seed2 = random.nextLong();
+    }
+
+    /**
+     * @return [from, to) 的值未缓存时返回null
+     */
+    String get(CharSequence value, int from, int to) {
+        long h1 = fingerprint(value, from, to, seed1, M1);
+        long h2 = fingerprint(value, from, to, seed2, M2);
+        Entry[] table = this.table;
+        int mask = table.length - 1;
+        for (int i = (int) h1 & mask, probes = 0; probes < table.length; i = (i + 1) & mask, probes++) {
+            Entry entry = table[i];
+            if (entry == null) {
+                break;
+            }
+            if (entry.h1 == h1 && entry.h2 == h2) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.token;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(CharSequence value, int from, int to, String token) {
+        long h1 = fingerprint(value, from, to, seed1, M1);
+        long h2 = fingerprint(value, from, to, seed2, M2);
+        synchronized (ring) {
+            int mask = table.length - 1;
+            int i = (int) h1 & mask;
+            for (Entry entry; (entry = table[i]) != null; i = (i + 1) & mask) {
+                if (entry.h1 == h1 && entry.h2 == h2) {
+                    return;
+                }
+            }
+            int slot;
+            if (size < capacity) {
+                slot = size++;
+            } else {
+                while (ring[hand].referenced) {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % capacity;
+                }
+                slot = hand;
+                hand = (hand + 1) % capacity;
+                remove(ring[slot]);
+                evictions.increment();
+                //删除可能移动了空位
+                i = (int) h1 & mask;
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+            }
+            Entry entry = new Entry(h1, h2, token);
+            ring[slot] = entry;
+            table[i] = entry;
+        }
+    }
+
+    /**
+     * 线性探测的删除：之后同一探测链上的条目前移，不留下空洞
+     */
+    private void remove(Entry entry) {
+        int mask = table.length - 1;
+        int i = (int) entry.h1 & mask;
+        while (table[i] != entry) {
+            i = (i + 1) & mask;
+        }
+        for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+            int home = (int) table[j].h1 & mask;
+            //home 不在 (i, j] 中时可以移到 i
+            if (i <= j ? home <= i || home > j : home <= i && home > j) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = null;
+    }
+
+    private static long fingerprint(CharSequence value, int from, int to, long seed, long multiplier) {
+        long h = seed ^ (to - from);
+        for (int i = from; i < to; i++) {
+            h = (h ^ value.charAt(i)) * multiplier;
+            h ^= h >>> 29;
+        }
+        //murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+
+    int size() {
+        synchronized (ring) {
+            return size;
+        }
+    }
+
+    private static final class Entry {
+        private final long h1;
+        private final long h2;
+        private final String token;
+        private volatile boolean referenced;//CLOCK访问位
+
+        private Entry(long h1, long h2, String token) {
+            this.h1 = h1;
+            this.h2 = h2;
+            this.token = token;
+        }
+    }
+
+}
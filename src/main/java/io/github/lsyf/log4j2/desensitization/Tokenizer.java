@@ -0,0 +1,203 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * 令牌化的替换策略：同一个值总是替换为同一个令牌，排查问题时可以跨日志行关联同一用户，而不暴露原值。
+ * <p>
+ * 令牌由完整的值计算，与值等长，只替换 skipHead、skipTail 之间的部分，因此输出长度、保留部分与按字符替换相同：
+ * <ul>
+ * <li>{@link LoggingScanner#STRATEGY_HMAC}：HMAC-SHA256(key, 值) 的十六进制；</li>
+ * <li>{@link LoggingScanner#STRATEGY_HASH}：SHA-256(key, 值) 的十六进制，key 可选，作为盐；</li>
+ * <li>{@link LoggingScanner#STRATEGY_FPE}：保留格式的替换，数字仍为数字、字母仍为同样大小写的字母、汉字仍为汉字，
+ * 其他字符不变，替换量由 HMAC-SHA256(key, 值) 决定。</li>
+ * </ul>
+ * 值超过 64(fpe 为 16)个字符时按计数器追加摘要块。超过 {@link #MAX_VALUE} 个字符的值仍按替换字符处理，
+ * 分段扫描时才不需要为等待值的结束而保留过长的文本。
+ * <p>
+ * 计算结果缓存在 {@link TokenCache} 中，缓存命中时不计算摘要，也不产生对象；未命中时复制值并生成新的令牌。
+ */
+final class Tokenizer {
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    /**
+     * 按令牌替换的值的最大长度
+     */
+    static final int MAX_VALUE = 256;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int CJK_FROM = 0x4E00;
+    private static final int CJK_COUNT = 0x9FA5 - CJK_FROM + 1;
+
+    private final boolean fpe;
+    private final byte[] key;
+    private final Mac mac;//原型，每次计算复制一份；hash 策略为null
+    private final MessageDigest digest;//原型，hmac、fpe 策略为null
+    private final TokenCache cache;//容量为0时为null
+
+    private Tokenizer(boolean fpe, byte[] key, Mac mac, MessageDigest digest, TokenCache cache) {
+        this.fpe = fpe;
+        this.key = key;
+        this.mac = mac;
+        this.digest = digest;
+        this.cache = cache;
+    }
+
+    /**
+     * @param strategy  为null或 {@link LoggingScanner#STRATEGY_MASK} 时返回null
+     * @param cacheSize 缓存的值的数量，0为不缓存
+     * @return 策略未知、缺少 key 时记录错误并返回null，按替换字符处理
+     */
+    static Tokenizer of(String strategy, String key, int cacheSize, ScannerStats stats) {
+        if (strategy == null || LoggingScanner.STRATEGY_MASK.equalsIgnoreCase(strategy)) {
+            return null;
+        }
+        boolean hash = LoggingScanner.STRATEGY_HASH.equalsIgnoreCase(strategy);
+        boolean fpe = LoggingScanner.STRATEGY_FPE.equalsIgnoreCase(strategy);
+        if (!hash && !fpe && !LoggingScanner.STRATEGY_HMAC.equalsIgnoreCase(strategy)) {
+            LOGGER.error("Unknown desensitized strategy '{}', mask with the replacement char", strategy);
+            return null;
+        }
+        if (!hash && (key == null || key.isEmpty())) {
+            LOGGER.error("Desensitized strategy '{}' requires a key, mask with the replacement char", strategy);
+            return null;
+        }
+        if (hash && (key == null || key.isEmpty())) {
+            LOGGER.warn("Desensitized strategy '{}' without a key is an unsalted SHA-256, short values such as phone numbers "
+                    + "can be recovered by enumeration; configure a key or use '{}'", strategy, LoggingScanner.STRATEGY_HMAC);
+        }
+        byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        try {
+            TokenCache cache = cacheSize > 0 ? new TokenCache(cacheSize, stats) : null;
+            if (hash) {
+                return new Tokenizer(false, keyBytes, null, MessageDigest.getInstance(HASH_ALGORITHM), cache);
+            }
+            return new Tokenizer(fpe, keyBytes, newMac(keyBytes), null, cache);
+        } catch (GeneralSecurityException e) {
+            LOGGER.error("Desensitized strategy '{}' is not supported, mask with the replacement char", strategy, e);
+            return null;
+        }
+    }
+
+    private static Mac newMac(byte[] key) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+        return mac;
+    }
+
+    /**
+     * @return 与 value 等长的令牌
+     */
+    String token(String value) {
+        return token(value, 0, value.length());
+    }
+
+    /**
+     * 按 text 中 [start, end) 的值计算令牌，缓存命中时不复制值
+     *
+     * @return 与值等长的令牌
+     */
+    String token(CharSequence text, int start, int end) {
+        if (cache == null) {
+            return compute(text.subSequence(start, end).toString());
+        }
+        String token = cache.get(text, start, end);
+        if (token == null) {
+            token = compute(text.subSequence(start, end).toString());
+            cache.put(text, start, end, token);
+        }
+        return token;
+    }
+
+    private String compute(String value) {
+        byte[] input = value.getBytes(StandardCharsets.UTF_8);
+        int perBlock = fpe ? 16 : 64;//每个摘要块可用的字符数：fpe 每个字符使用两个字节，十六进制每个字节两个字符
+        char[] token = new char[value.length()];
+        byte[] bytes = null;
+        try {
+            Mac mac = this.mac == null ? null : copy(this.mac);
+            MessageDigest digest = this.digest == null ? null : copy(this.digest);
+            for (int k = 0; k < token.length; k++) {
+                int i = k % perBlock;
+                if (i == 0) {
+                    bytes = block(mac, digest, input, k / perBlock);
+                }
+                if (fpe) {
+                    token[k] = substitute(value.charAt(k), ((bytes[2 * i] & 0xFF) << 8) | (bytes[2 * i + 1] & 0xFF));
+                } else {
+                    token[k] = HEX[(bytes[i >> 1] >> ((i & 1) == 0 ? 4 : 0)) & 0xF];
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            //原型已初始化成功，不会发生
+            throw new IllegalStateException(e);
+        }
+        return new String(token);
+    }
+
+    private Mac copy(Mac mac) throws GeneralSecurityException {
+        try {
+            return (Mac) mac.clone();
+        } catch (CloneNotSupportedException e) {
+            return newMac(key);
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) throws GeneralSecurityException {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+    }
+
+    /**
+     * 第n个摘要块，n大于0时在值之后追加计数器
+     */
+    private byte[] block(Mac mac, MessageDigest digest, byte[] input, int n) {
+        byte[] counter = {(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n};
+        if (mac != null) {
+            mac.update(input);
+            if (n > 0) {
+                mac.update(counter);
+            }
+            return mac.doFinal();
+        }
+        digest.update(key);
+        digest.update(input);
+        if (n > 0) {
+            digest.update(counter);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 同类字符之间的替换：数字、小写字母、大写字母、常用汉字各自循环移位，其他字符不变
+     */
+    static char substitute(char c, int shift) {
+        if (c >= '0' && c <= '9') {
+            return (char) ('0' + (c - '0' + shift) % 10);
+        }
+        if (c >= 'a' && c <= 'z') {
+            return (char) ('a' + (c - 'a' + shift) % 26);
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) ('A' + (c - 'A' + shift) % 26);
+        }
+        if (c >= CJK_FROM && c < CJK_FROM + CJK_COUNT) {
+            return (char) (CJK_FROM + (c - CJK_FROM + shift) % CJK_COUNT);
+        }
+        return c;
+    }
+
+}
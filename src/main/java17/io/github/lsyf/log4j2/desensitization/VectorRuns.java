@@ -0,0 +1,93 @@
+package io.github.lsyf.log4j2.desensitization;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link CharRuns} 的向量实现，只在加载了 jdk.incubator.vector 模块时由 {@link CharRuns} 调用。
+ * <p>
+ * 文本按块复制到线程内的char数组(StringBuilder/String 的 getChars 本身是批量复制)，每次比较一个向量宽度的字符。
+ * 第一块只复制两个向量宽度，之后每块加倍：命中通常很近，不为一次短查找复制整块文本。
+ * char按无符号比较，比较区间前先把最高位取反，转换为有符号short的比较。
+ */
+final class VectorRuns {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+    private static final int MAX_CHUNK = 1024;
+    private static final short SIGN = (short) 0x8000;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_CHUNK]);
+
+    private VectorRuns() {
+    }
+
+    static int indexOfAny(char[] chars, CharSequence text, int from, int to) {
+        final char[] buffer = BUFFER.get();
+        int chunk = LANES * 2;
+        for (int base = from; base < to; base += chunk, chunk = Math.min(chunk * 2, MAX_CHUNK)) {
+            final int n = Math.min(chunk, to - base);
+            copy(text, base, n, buffer);
+            int j = 0;
+            for (; j <= n - LANES; j += LANES) {
+                ShortVector v = ShortVector.fromCharArray(SPECIES, buffer, j);
+                VectorMask<Short> hit = v.eq((short) chars[0]);
+                for (int k = 1; k < chars.length; k++) {
+                    hit = hit.or(v.eq((short) chars[k]));
+                }
+                if (hit.anyTrue()) {
+                    return base + j + hit.firstTrue();
+                }
+            }
+            for (; j < n; j++) {
+                for (char x : chars) {
+                    if (buffer[j] == x) {
+                        return base + j;
+                    }
+                }
+            }
+        }
+        return to;
+    }
+
+    static int skipRun(char[] ranges, CharSequence text, int from, int to) {
+        final char[] buffer = BUFFER.get();
+        int chunk = LANES * 2;
+        for (int base = from; base < to; base += chunk, chunk = Math.min(chunk * 2, MAX_CHUNK)) {
+            final int n = Math.min(chunk, to - base);
+            copy(text, base, n, buffer);
+            int j = 0;
+            for (; j <= n - LANES; j += LANES) {
+                ShortVector v = ShortVector.fromCharArray(SPECIES, buffer, j).lanewise(VectorOperators.XOR, SIGN);
+                VectorMask<Short> in = v.compare(VectorOperators.GE, (short) (ranges[0] ^ SIGN))
+                        .and(v.compare(VectorOperators.LE, (short) (ranges[1] ^ SIGN)));
+                for (int r = 2; r < ranges.length; r += 2) {
+                    in = in.or(v.compare(VectorOperators.GE, (short) (ranges[r] ^ SIGN))
+                            .and(v.compare(VectorOperators.LE, (short) (ranges[r + 1] ^ SIGN))));
+                }
+                if (!in.allTrue()) {
+                    return base + j + in.not().firstTrue();
+                }
+            }
+            for (; j < n; j++) {
+                if (!CharRuns.inRanges(ranges, buffer[j])) {
+                    return base + j;
+                }
+            }
+        }
+        return to;
+    }
+
+    private static void copy(CharSequence text, int from, int n, char[] buffer) {
+        if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(from, from + n, buffer, 0);
+        } else if (text instanceof String) {
+            ((String) text).getChars(from, from + n, buffer, 0);
+        } else {
+            for (int i = 0; i < n; i++) {
+                buffer[i] = text.charAt(from + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.lsyf.log4j2.desensitization;
+
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableMessageFactory;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class DesensitizePatternConverterTest {
+
+    @Test
+    public void testMaskOnlyWrappedPattern() {
+        DefaultConfiguration config = new DefaultConfiguration();
+        DesensitizedReplacement.newBuilder()
+                .setName("pii")
+                .setConfiguration(config)
+                .setEnable(true)
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("name").setContent("en|num").setSkipHead(1).setSkipTail(1).build()
+                })
+                .build();
+        PatternLayout layout = PatternLayout.newBuilder()
+                .withConfiguration(config)
+                .withPattern("%c name=%X{x} - %desensitize{%m}{pii}")
+                .build();
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("name")
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage("name=abcdef"))
+                .build();
+        Assert.assertEquals("name name= - name=a****f", layout.toSerializable(event));
+    }
+
+    @Test
+    public void testCleanMessage() {
+        DefaultConfiguration config = new DefaultConfiguration();
+        DesensitizedReplacement replacement = DesensitizedReplacement.newBuilder()
+                .setName("pii")
+                .setConfiguration(config)
+                .setEnable(true)
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("name").setContent("en|num").setSkipHead(1).setSkipTail(1).build()
+                })
+                .build();
+        Assert.assertTrue(replacement.isClean(new ParameterizedMessage("{} ok", "abcdef")));
+        Assert.assertTrue(replacement.isClean(ReusableMessageFactory.INSTANCE.newMessage("order {} created", 12L)));
+        Assert.assertFalse(replacement.isClean(new ParameterizedMessage("{} ok", "name=1")));
+        Assert.assertFalse(replacement.isClean(new ParameterizedMessage("name {}", "abcdef")));
+
+        //消息本身不含关键字，但前面的关键字之后的内容仍会延伸进消息
+        PatternLayout layout = PatternLayout.newBuilder()
+                .withConfiguration(config)
+                .withPattern("%desensitize{name=%m}{pii}")
+                .build();
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("test")
+                .setLevel(Level.INFO)
+                .setMessage(new ParameterizedMessage("{} ok", "abcdef"))
+                .build();
+        Assert.assertEquals("name=a****f ok", layout.toSerializable(event));
+        Assert.assertEquals(3, replacement.getStats().getTemplateCacheMisses());
+        Assert.assertEquals(2, replacement.getStats().getTemplateCacheHits());
+    }
+}
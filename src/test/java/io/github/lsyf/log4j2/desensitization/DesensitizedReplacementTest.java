@@ -0,0 +1,409 @@
+package io.github.lsyf.log4j2.desensitization;
+
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.config.xml.XmlConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.impl.MutableLogEvent;
+import org.apache.logging.log4j.message.MapMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.apache.logging.log4j.status.StatusData;
+import org.apache.logging.log4j.status.StatusListener;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+
+public class DesensitizedReplacementTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DesensitizedReplacement newReplacement(boolean mapKeys) {
+        return DesensitizedReplacement.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setEnable(true)
+                .setMapKeys(mapKeys)
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build(),
+                        DesensitizedField.newBuilder().setName("name").setContent("en").setSkipHead(1).build()
+                })
+                .build();
+    }
+
+    private LogEvent newEvent(org.apache.logging.log4j.message.Message message) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("test")
+                .setLevel(Level.INFO)
+                .setMessage(message)
+                .build();
+    }
+
+    @Test
+    public void testMaskMap() {
+        DesensitizedReplacement replacement = newReplacement(true);
+
+        StringMapMessage message = new StringMapMessage()
+                .with("Phone", "13812345678")
+                .with("name", "zhang")
+                .with("note", "phone=13812345678");
+        LogEvent masked = replacement.maskMap(newEvent(message));
+        Assert.assertEquals("138****5678", ((MapMessage<?, ?>) masked.getMessage()).get("Phone"));
+        Assert.assertEquals("z****", ((MapMessage<?, ?>) masked.getMessage()).get("name"));
+        //只按键名处理，值中的文本不扫描
+        Assert.assertEquals("phone=13812345678", ((MapMessage<?, ?>) masked.getMessage()).get("note"));
+        //原消息不变
+        Assert.assertEquals("13812345678", message.get("Phone"));
+
+        //消息以外的输出仍扫描
+        SortedArrayStringMap mdc = new SortedArrayStringMap();
+        mdc.putValue("phone", "13812345678");
+        MyPatternLayout layout = MyPatternLayout.newBuilder()
+                .withConfiguration(new DefaultConfiguration())
+                .withPattern("%m | phone=%X{phone}")
+                .withDesensitizedReplacement(replacement)
+                .build();
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("test")
+                .setLevel(Level.INFO)
+                .setMessage(message)
+                .setContextData(mdc)
+                .build();
+        Assert.assertEquals(masked.getMessage().getFormattedMessage() + " | phone=138****5678", layout.toSerializable(event));
+
+        MutableLogEvent mutable = new MutableLogEvent();
+        mutable.initFrom(newEvent(new MapMessage<>().with("phone", 13812345678L)));
+        Assert.assertEquals("138****5678", ((MapMessage<?, ?>) replacement.maskMap(mutable).getMessage()).get("phone"));
+
+        //无命中返回原event，非MapMessage返回null
+        LogEvent untouched = newEvent(new StringMapMessage().with("id", "13812345678"));
+        Assert.assertSame(untouched, replacement.maskMap(untouched));
+        Assert.assertNull(replacement.maskMap(newEvent(new SimpleMessage("phone=13812345678"))));
+        Assert.assertNull(newReplacement(false).maskMap(newEvent(message)));
+    }
+
+    @Test
+    public void testStatsMBean() throws Exception {
+        DesensitizedReplacement replacement = DesensitizedReplacement.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setEnable(true)
+                .setName("statsTest")
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build(),
+                        DesensitizedField.newBuilder().setName("name").setContent("en").setSkipHead(1).build()
+                })
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            replacement.format("phone=13812345678 phone=none");
+            replacement.format("nothing to mask");
+        }
+        ScannerStats stats = replacement.getStats();
+        Assert.assertEquals(2000, stats.getLines());
+        Assert.assertEquals(1000, stats.getPrefilterSkipped());
+        Assert.assertEquals(1000 * ("phone=13812345678 phone=none".length() + "nothing to mask".length()), stats.getScannedChars());
+        Assert.assertEquals(Long.valueOf(2000), stats.getRuleMatches().get("phone"));
+        Assert.assertEquals(Long.valueOf(1000), stats.getRuleMasks().get("phone"));
+        Assert.assertEquals(Long.valueOf(0), stats.getRuleMatches().get("name"));
+        long samples = stats.getScanLatencySamples();
+        Assert.assertTrue(samples > 0 && samples < 2000);
+        Assert.assertTrue(stats.getScanLatencyP50Nanos() <= stats.getScanLatencyP99Nanos());
+
+        //规则替换后同名字段继续累加
+        replacement.update(new DesensitizedField[]{
+                DesensitizedField.newBuilder().setName("phone").setContent("num").build()
+        });
+        replacement.format("phone=13812345678");
+        Assert.assertEquals(Long.valueOf(2001), stats.getRuleMatches().get("phone"));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName("io.github.lsyf.log4j2.desensitization:type=Desensitized,name=statsTest,*"), null);
+        Assert.assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        Assert.assertEquals(2001L, server.getAttribute(name, "Lines"));
+        Assert.assertNotNull(server.getAttribute(name, "RuleMatches"));
+        Assert.assertEquals(32, ((long[]) server.getAttribute(name, "ScanLatencyHistogram")).length);
+    }
+
+    @Test
+    public void testUpdate() {
+        DesensitizedReplacement replacement = newReplacement(false);
+        Assert.assertEquals("phone=138****5678", replacement.format("phone=13812345678"));
+        LoggingScanner before = replacement.getScanner();
+
+        replacement.update(new DesensitizedField[]{
+                DesensitizedField.newBuilder().setName("mobile").setContent("num").setSkipHead(3).setSkipTail(4).build()
+        });
+        Assert.assertEquals("phone=13812345678", replacement.format("phone=13812345678"));
+        Assert.assertEquals("mobile=138****5678", replacement.format("mobile=13812345678"));
+        //替换前读到的规则不受影响
+        Assert.assertEquals("phone=138****5678", before.processLog("phone=13812345678"));
+        //新旧规则共用统计
+        Assert.assertEquals(4, replacement.getStats().getLines());
+    }
+
+    @Test
+    public void testRulesFile() throws Exception {
+        File file = folder.newFile("rules.properties");
+        Files.write(file.toPath(), "手机号.content=num\n手机号.skipHead=3\n手机号.skipTail=4\nname.content=en\nname.c=#\nidNo=\n"
+                .getBytes(StandardCharsets.UTF_8));
+        DesensitizedReplacement replacement = DesensitizedReplacement.newBuilder()
+                .setEnable(true)
+                .setRulesFile(file.getPath())
+                .build();
+        Assert.assertEquals(3, replacement.getFields().length);
+        Assert.assertEquals("手机号:138****5678", replacement.format("手机号:13812345678"));
+        Assert.assertEquals("name=#####", replacement.format("name=zhang"));
+
+        RulesFile watcher = new RulesFile(file, replacement);
+        watcher.run();
+        //格式错误时保留原规则
+        Files.write(file.toPath(), "name.skipHead=x\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(file.lastModified() + 2000));
+        watcher.run();
+        Assert.assertEquals("name=#####", replacement.format("name=zhang"));
+
+        Files.write(file.toPath(), "name.skipHead=1\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(file.lastModified() + 2000));
+        watcher.run();
+        Assert.assertEquals("name=z****", replacement.format("name=zhang"));
+        Assert.assertEquals("手机号:13812345678", replacement.format("手机号:13812345678"));
+
+        //未知属性不会成为新的字段名
+        DesensitizedField[] parsed = RulesFile.parse(new java.io.StringReader("phone.skiphead=3\nphone.content=num\n"));
+        Assert.assertEquals(1, parsed.length);
+        Assert.assertEquals("phone", parsed[0].getName());
+        Assert.assertNull(parsed[0].getSkipHead());
+    }
+
+    @Test
+    public void testPatterns() throws Exception {
+        String xml = "<Configuration><Desensitized name=\"values\" enable=\"true\" mapKeys=\"true\">"
+                + "<DesensitizedField name=\"name\" content=\"en\" skipHead=\"1\"/>"
+                + "<DesensitizedPattern type=\"phone\"/>"
+                + "<DesensitizedPattern name=\"card\" type=\"bankcard\" c=\"#\"/>"
+                + "</Desensitized></Configuration>";
+        XmlConfiguration config = new XmlConfiguration(null,
+                new ConfigurationSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        config.initialize();
+        DesensitizedReplacement replacement = DesensitizedReplacement.lookup(config, "values");
+        Assert.assertEquals(2, replacement.getPatterns().length);
+        Assert.assertEquals("name=z**** tel 138****5678 card 411111######1111",
+                replacement.format("name=zhang tel 13812345678 card 4111111111111111"));
+
+        //没有对应字段的值按值格式脱敏
+        StringMapMessage message = new StringMapMessage()
+                .with("name", "zhang")
+                .with("note", "call 13812345678");
+        LogEvent masked = replacement.maskMap(newEvent(message));
+        Assert.assertEquals("z****", ((MapMessage<?, ?>) masked.getMessage()).get("name"));
+        Assert.assertEquals("call 138****5678", ((MapMessage<?, ?>) masked.getMessage()).get("note"));
+
+        //格式不合法时规则集不生效
+        Assert.assertNull(DesensitizedReplacement.newBuilder()
+                .setEnable(true)
+                .setPatterns(new DesensitizedPattern[]{DesensitizedPattern.newBuilder().setPattern("(\\d+").build()})
+                .build());
+    }
+
+    @Test
+    public void testScopes() throws Exception {
+        String xml = "<Configuration>"
+                + "<Desensitized name=\"app\" enable=\"true\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"3\" skipTail=\"4\"/>"
+                + "<DesensitizedScope loggers=\"org.springframework, metrics\" rules=\"none\"/>"
+                + "<DesensitizedScope markers=\"AUDIT\" rules=\"strict\"/>"
+                + "<DesensitizedScope loggers=\"com.acme\" levels=\"debug,trace\" rules=\"none\"/>"
+                + "</Desensitized>"
+                + "<Desensitized name=\"strict\" enable=\"true\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"0\" skipTail=\"0\" c=\"#\"/>"
+                + "</Desensitized></Configuration>";
+        XmlConfiguration config = new XmlConfiguration(null,
+                new ConfigurationSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        config.initialize();
+        DesensitizedReplacement app = DesensitizedReplacement.lookup(config, "app");
+        DesensitizedReplacement strict = DesensitizedReplacement.lookup(config, "strict");
+        Assert.assertEquals(3, app.getScopes().length);
+        MyPatternLayout layout = MyPatternLayout.newBuilder()
+                .withConfiguration(config)
+                .withPattern("%m")
+                .withDesensitizedReplacement(app)
+                .build();
+        Marker audit = MarkerManager.getMarker("AUDIT");
+        Object[][] cases = {
+                {"org.springframework.web.Servlet", Level.INFO, null, "phone=13812345678"},
+                {"metrics", Level.INFO, null, "phone=13812345678"},
+                {"org.springframeworkx", Level.INFO, null, "phone=138****5678"},
+                {"app", Level.INFO, audit, "phone=###########"},
+                {"app", Level.INFO, MarkerManager.getMarker("AUDIT.LOGIN").setParents(audit), "phone=###########"},
+                {"org.springframework", Level.INFO, audit, "phone=13812345678"},
+                {"com.acme.Service", Level.DEBUG, null, "phone=13812345678"},
+                {"com.acme.Service", Level.INFO, null, "phone=138****5678"},
+                {null, Level.INFO, null, "phone=138****5678"},
+        };
+        for (Object[] c : cases) {
+            LogEvent event = Log4jLogEvent.newBuilder()
+                    .setLoggerName((String) c[0])
+                    .setLevel((Level) c[1])
+                    .setMarker((Marker) c[2])
+                    .setMessage(new SimpleMessage("phone=13812345678"))
+                    .build();
+            Assert.assertEquals(Arrays.toString(c), c[3], layout.toSerializable(event));
+        }
+        //同一 logger 的结果缓存，marker、级别仍逐条判断
+        LogEvent info = Log4jLogEvent.newBuilder().setLoggerName("com.acme.Service").setLevel(Level.INFO).build();
+        Assert.assertSame(app, app.resolve(info));
+        Assert.assertSame(strict, app.resolve(Log4jLogEvent.newBuilder().setLoggerName("com.acme.Service")
+                .setLevel(Level.DEBUG).setMarker(audit).build()));
+        Assert.assertNull(app.resolve(Log4jLogEvent.newBuilder().setLoggerName("metrics").setLevel(Level.INFO).build()));
+
+        //只声明范围的规则集
+        Assert.assertNotNull(DesensitizedReplacement.newBuilder()
+                .setEnable(true)
+                .setScopes(new DesensitizedScope[]{DesensitizedScope.newBuilder().setLoggers("x").setRules("none").build()})
+                .build());
+        Assert.assertNull(DesensitizedScope.newBuilder().setLevels("loud").build());
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        File file = folder.newFile("fields.txt");
+        Files.write(file.toPath(), "# 数据目录\ncust_mobile\n\n  cust_id_no  \n客户手机\nphone\n"
+                .getBytes(StandardCharsets.UTF_8));
+        String xml = "<Configuration><Desensitized name=\"catalog\" enable=\"true\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"3\" skipTail=\"4\"/>"
+                + "<DesensitizedDictionary name=\"catalog\" file=\"" + file.getPath().replace("\\", "/") + "\">"
+                + "<DesensitizedField content=\"num|en\" skipHead=\"2\" skipTail=\"2\" c=\"#\"/>"
+                + "</DesensitizedDictionary>"
+                + "</Desensitized></Configuration>";
+        XmlConfiguration config = new XmlConfiguration(null,
+                new ConfigurationSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        config.initialize();
+        DesensitizedReplacement replacement = DesensitizedReplacement.lookup(config, "catalog");
+        Assert.assertEquals(1, replacement.getDictionaries().length);
+        Assert.assertEquals(4, replacement.getDictionaries()[0].getKeywords().length);
+        //单独配置的字段优先
+        Assert.assertEquals("cust_mobile=13#######78 CUST_ID_NO:11######9X 客户手机=13#######78 phone=138****5678",
+                replacement.format("cust_mobile=13812345678 CUST_ID_NO:110101199X 客户手机=13812345678 phone=13812345678"));
+        Assert.assertEquals(4, replacement.getStats().getKeywordCount());
+
+        //文件不存在时词典不生效
+        Assert.assertNull(DesensitizedDictionary.newBuilder().setFile(new File(folder.getRoot(), "missing.txt").getPath()).build());
+    }
+
+    @Test
+    public void testIdentifierMatch() throws Exception {
+        String xml = "<Configuration><Desensitized name=\"ids\" enable=\"true\" mapKeys=\"true\" keywordMatch=\"identifier\" prefixWords=\"1\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"3\" skipTail=\"4\"/>"
+                + "</Desensitized></Configuration>";
+        XmlConfiguration config = new XmlConfiguration(null,
+                new ConfigurationSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        config.initialize();
+        DesensitizedReplacement replacement = DesensitizedReplacement.lookup(config, "ids");
+        Assert.assertEquals("userPhone=138****5678 PHONE_NO=138****5678 oldUserPhone=13812345678",
+                replacement.format("userPhone=13812345678 PHONE_NO=13812345678 oldUserPhone=13812345678"));
+
+        //MapMessage 的键按同样的规则匹配
+        StringMapMessage message = new StringMapMessage()
+                .with("user_phone", "13812345678")
+                .with("iphone", "13812345678");
+        LogEvent masked = replacement.maskMap(newEvent(message));
+        Assert.assertEquals("138****5678", ((MapMessage<?, ?>) masked.getMessage()).get("user_phone"));
+        Assert.assertEquals("13812345678", ((MapMessage<?, ?>) masked.getMessage()).get("iphone"));
+
+        //未知的匹配方式按整词匹配，按标识符匹配时忽略 engine，都记录警告
+        List<String> warnings = new ArrayList<>();
+        StatusListener listener = new StatusListener() {
+            @Override
+            public void log(StatusData data) {
+                warnings.add(data.getMessage().getFormattedMessage());
+            }
+
+            @Override
+            public Level getStatusLevel() {
+                return Level.WARN;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        StatusLogger.getLogger().registerListener(listener);
+        try {
+            DesensitizedField phone = DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build();
+            DesensitizedReplacement word = DesensitizedReplacement.newBuilder().setEnable(true).setKeywordMatch("identifer")
+                    .setFields(new DesensitizedField[]{phone}).build();
+            Assert.assertEquals("userPhone=13812345678 phone=138****5678", word.format("userPhone=13812345678 phone=13812345678"));
+            DesensitizedReplacement identifier = DesensitizedReplacement.newBuilder().setEnable(true)
+                    .setKeywordMatch(LoggingScanner.MATCH_IDENTIFIER).setEngine(LoggingScanner.ENGINE_AHOCORASICK)
+                    .setFields(new DesensitizedField[]{phone}).build();
+            Assert.assertEquals("userPhone=138****5678", identifier.format("userPhone=13812345678"));
+        } finally {
+            StatusLogger.getLogger().removeListener(listener);
+        }
+        Assert.assertEquals(warnings.toString(), 2, warnings.size());
+        Assert.assertTrue(warnings.get(0), warnings.get(0).startsWith("Unknown keywordMatch 'identifer'"));
+        Assert.assertTrue(warnings.get(1), warnings.get(1).startsWith("Engine 'ahocorasick'"));
+    }
+
+    @Test
+    public void testParallelPoolStoppedOnReconfigure() throws Exception {
+        String xml = "<Configuration><Desensitized name=\"pooled\" enable=\"true\" parallelThreshold=\"1\" parallelism=\"2\">"
+                + "<DesensitizedField name=\"phone\" content=\"num\" skipHead=\"3\" skipTail=\"4\"/>"
+                + "</Desensitized></Configuration>";
+        StringBuilder line = new StringBuilder();
+        while (line.length() < ParallelScan.MIN_SEGMENT * 3) {
+            line.append("phone=13812345678 nothing here ");
+        }
+        String expected = line.toString().replace("13812345678", "138****5678");
+        LoggerContext context = new LoggerContext("pooled");
+        XmlConfiguration config = null;
+        try {
+            //每次重新加载都创建新的线程池，旧的随旧配置关闭
+            for (int i = 0; i < 5; i++) {
+                config = new XmlConfiguration(context,
+                        new ConfigurationSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+                context.setConfiguration(config);
+                Assert.assertEquals(expected, DesensitizedReplacement.lookup(config, "pooled").format(line.toString()));
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (poolThreads("pooled") > 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(poolThreads("pooled") <= 2);
+            //已关闭的规则集顺序扫描
+            DesensitizedReplacement stopped = DesensitizedReplacement.lookup(config, "pooled");
+            stopped.stop();
+            Assert.assertEquals(expected, stopped.format(line.toString()));
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static long poolThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().startsWith("Desensitized-" + name + "-"))
+                .count();
+    }
+}
@@ -0,0 +1,290 @@
+package io.github.lsyf.log4j2.desensitization;
+
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ReusableMessageFactory;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 预热后每条日志分配0字节，每个用例只覆盖一条路径：layout 编码、模板缓存、%desensitize 转换器、分段扫描、令牌化策略
+ */
+public class GarbageFreeTest {
+
+    private static final String[] MESSAGES = {"name=张三丰 phone=13812345678 €", "nothing here, all clean",
+            "{\"user\":[\"a\",1]}", "mobile=13812345678 id 11010519491231002X"};
+
+    /**
+     * 丢弃输出的目标，本身不分配内存
+     */
+    private static class NullDestination implements ByteBufferDestination {
+        private final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer drain(ByteBuffer buf) {
+            buf.clear();
+            return buf;
+        }
+
+        @Override
+        public void writeBytes(ByteBuffer data) {
+            data.position(data.limit());
+        }
+
+        @Override
+        public void writeBytes(byte[] data, int offset, int length) {
+        }
+    }
+
+    private interface Case {
+        void run() throws Throwable;
+    }
+
+    @Before
+    public void assumeMeasurable() {
+        Assume.assumeTrue(Constants.ENABLE_THREADLOCALS
+                && ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    }
+
+    /**
+     * 在新线程中执行，线程内复用的消息与缓冲区不受其他测试影响
+     */
+    private static void inThread(Case test) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(() -> {
+            try {
+                test.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * 预热至线程内的缓冲区扩容到稳定大小后，task 分配的字节数为0
+     */
+    private static void assertGarbageFree(String label, Runnable task) {
+        for (int n = 0; n < 50; n++) {
+            task.run();
+        }
+        Assert.assertEquals(label, 0, allocatedBytes(task));
+    }
+
+    /**
+     * 当前线程执行 task 期间分配的字节数，扣除测量本身的分配。
+     * 取多次测量的最小值，排除JIT编译切换期间的偶发分配；每条日志都分配时每次测量都不为0
+     */
+    private static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int n = 0; n < 5 && min > 0; n++) {
+            long start = threads.getThreadAllocatedBytes(id);
+            long baseline = threads.getThreadAllocatedBytes(id) - start;
+            start = threads.getThreadAllocatedBytes(id);
+            task.run();
+            min = Math.min(min, threads.getThreadAllocatedBytes(id) - start - baseline);
+        }
+        return min;
+    }
+
+    private static DesensitizedReplacement desensitized(DefaultConfiguration configuration, DesensitizedField... fields) {
+        return DesensitizedReplacement.newBuilder()
+                .setConfiguration(configuration)
+                .setEnable(true)
+                .setFields(fields)
+                .setPatterns(new DesensitizedPattern[]{DesensitizedPattern.newBuilder().setType("idcard").build()})
+                .setScopes(new DesensitizedScope[]{DesensitizedScope.newBuilder().setLoggers("metrics").setRules("none").build()})
+                .build();
+    }
+
+    private static DesensitizedReplacement desensitized(DefaultConfiguration configuration) {
+        return desensitized(configuration,
+                DesensitizedField.newBuilder().setName("name").setContent("lang|en").setSkipHead(1).setSkipTail(1).build(),
+                DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build(),
+                DesensitizedField.newBuilder().setName("user").setMode(LoggingScanner.MODE_JSON).build());
+    }
+
+    private static MyPatternLayout layout(Charset charset, DesensitizedReplacement desensitized) {
+        return MyPatternLayout.newBuilder()
+                .withConfiguration(new DefaultConfiguration())
+                .withPattern("%p %c %m%n")
+                .withCharset(charset)
+                .withRegexes(DesensitizedRegex.newBuilder().setRegex("mobile").setReplacement("phone").build())
+                .withDesensitizedReplacement(desensitized)
+                .build();
+    }
+
+    private static LogEvent event(Message message) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("test")
+                .setLevel(Level.INFO)
+                .setMessage(message)
+                .build();
+    }
+
+    /**
+     * 超过分段扫描阈值的行
+     */
+    private static String longLine() {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < LoggingScanner.DEFAULT_STREAM_THRESHOLD + 1000) {
+            longLine.append("phone=13812345678 name=张三丰 {\"user\":{\"id\":12}} nothing here ");
+        }
+        return longLine.toString();
+    }
+
+    @Test
+    public void testLayoutEncode() throws Throwable {
+        inThread(() -> {
+            DesensitizedReplacement desensitized = desensitized(new DefaultConfiguration());
+            for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+                MyPatternLayout layout = layout(charset, desensitized);
+                NullDestination destination = new NullDestination();
+                for (String message : MESSAGES) {
+                    LogEvent event = event(new SimpleMessage(message));
+                    assertGarbageFree(charset + " " + message, () -> {
+                        for (int i = 0; i < 200; i++) {
+                            layout.encode(event, destination);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 模板缓存判定为不含关键字的消息，只扫描参数两侧
+     */
+    @Test
+    public void testTemplate() throws Throwable {
+        inThread(() -> {
+            MyPatternLayout layout = layout(StandardCharsets.UTF_8, desensitized(new DefaultConfiguration()));
+            NullDestination destination = new NullDestination();
+            //线程内复用的消息，释放后再次获取得到同一个实例
+            ReusableMessageFactory factory = new ReusableMessageFactory();
+            Message parameterized = factory.newMessage("order {} created", "A-1");
+            Assert.assertTrue(parameterized instanceof ReusableParameterizedMessage);
+            LogEvent templated = event(parameterized);
+            assertGarbageFree("template", () -> {
+                for (int i = 0; i < 200; i++) {
+                    ReusableMessageFactory.release(parameterized);
+                    Assert.assertSame(parameterized, factory.newMessage("order {} created by {}", "A-1", "mobile=13812345678"));
+                    layout.encode(templated, destination);
+                    ReusableMessageFactory.release(parameterized);
+                    factory.newMessage("order {} created", "A-1");
+                    layout.encode(templated, destination);
+                }
+            });
+            ReusableMessageFactory.release(parameterized);
+        });
+    }
+
+    @Test
+    public void testConverter() throws Throwable {
+        inThread(() -> {
+            DefaultConfiguration configuration = new DefaultConfiguration();
+            desensitized(configuration);
+            DesensitizePatternConverter converter = DesensitizePatternConverter.newInstance(configuration, new String[]{"%m"});
+            StringBuilder buffer = new StringBuilder();
+            for (String message : MESSAGES) {
+                LogEvent event = event(new SimpleMessage(message));
+                assertGarbageFree(message, () -> {
+                    for (int i = 0; i < 200; i++) {
+                        buffer.setLength(0);
+                        converter.format(event, buffer);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 超过 log4j 可复用长度的行，layout 的缓冲区每次都会被收缩，只测分段扫描
+     */
+    @Test
+    public void testStreaming() throws Throwable {
+        inThread(() -> {
+            DefaultConfiguration configuration = new DefaultConfiguration();
+            DesensitizedReplacement desensitized = desensitized(configuration);
+            DesensitizePatternConverter converter = DesensitizePatternConverter.newInstance(configuration, new String[]{"%m"});
+            String message = longLine();
+            LogEvent event = event(new SimpleMessage(message));
+            StringBuilder buffer = new StringBuilder(message);
+            assertGarbageFree("streaming", () -> {
+                for (int i = 0; i < 4; i++) {
+                    buffer.setLength(0);
+                    buffer.append(message);
+                    desensitized.mask(buffer);
+                    buffer.setLength(0);
+                    converter.format(event, buffer);
+                }
+            });
+        });
+    }
+
+    /**
+     * 令牌化策略：缓存命中时按区间查找令牌，不复制值
+     */
+    @Test
+    public void testTokenStrategy() throws Throwable {
+        inThread(() -> {
+            DefaultConfiguration configuration = new DefaultConfiguration();
+            DesensitizedReplacement desensitized = desensitized(configuration,
+                    DesensitizedField.newBuilder().setName("name").setContent("lang|en").setSkipHead(1).setSkipTail(1)
+                            .setStrategy(LoggingScanner.STRATEGY_FPE).setKey("secret").build(),
+                    DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4)
+                            .setStrategy(LoggingScanner.STRATEGY_HMAC).setKey("secret").build());
+            MyPatternLayout layout = layout(StandardCharsets.UTF_8, desensitized);
+            NullDestination destination = new NullDestination();
+            String message = MESSAGES[0];
+            LogEvent event = event(new SimpleMessage(message));
+            StringBuilder buffer = new StringBuilder(message);
+            String masked = desensitized.format(message);
+            Assert.assertNotEquals(message, masked);
+            Assert.assertFalse(masked, masked.contains("*"));
+            assertGarbageFree("token", () -> {
+                for (int i = 0; i < 200; i++) {
+                    layout.encode(event, destination);
+                    buffer.setLength(0);
+                    buffer.append(message);
+                    desensitized.mask(buffer);
+                }
+            });
+            String longLine = longLine();
+            StringBuilder longBuffer = new StringBuilder(longLine);
+            assertGarbageFree("token streaming", () -> {
+                for (int i = 0; i < 4; i++) {
+                    longBuffer.setLength(0);
+                    longBuffer.append(longLine);
+                    desensitized.mask(longBuffer);
+                }
+            });
+        });
+    }
+}
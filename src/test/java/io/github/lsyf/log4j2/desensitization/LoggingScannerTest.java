@@ -0,0 +1,985 @@
+package io.github.lsyf.log4j2.desensitization;
+
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+
+public class LoggingScannerTest {
+
+    static LoggingScanner scanner = new LoggingScanner(true, Arrays.asList(
+            new LoggingScanner.Config("__default__", "en|num", null, null, '*', " ", null),
+            new LoggingScanner.Config("phone", "num", 6, 4, null, null, null),
+            new LoggingScanner.Config("name", "en| |lang", 1, 1, null, ",\"，' ", null)
+    ));
+
+    @Test
+    public void testProcessLog() {
+        Assert.assertEquals("phone=123412**************1234", scanner.processLog("phone=123412341234123412341234"));
+        Assert.assertEquals("name=a*****w", scanner.processLog("name=ass dfw"));
+        Assert.assertEquals("\"name\" : \"a*****w\"", scanner.processLog("\"name\" : \"ass dfw\""));
+        Assert.assertEquals("username=ass dfw", scanner.processLog("username=ass dfw"));
+    }
+
+    @Test
+    public void testMaskInPlace() {
+        String[] lines = {
+                "phone=123412341234123412341234",
+                "PHONE: 13812345678, name=ass dfw",
+                "nothing sensitive here",
+                "",
+        };
+        for (String line : lines) {
+            StringBuilder buffer = new StringBuilder(line);
+            boolean masked = scanner.mask(buffer);
+            Assert.assertEquals(scanner.processLog(line), buffer.toString());
+            Assert.assertEquals(!line.equals(buffer.toString()), masked);
+        }
+    }
+
+    @Test
+    public void testSupplementaryCharacters() {
+        LoggingScanner cn = new LoggingScanner(true, Arrays.asList(
+                new LoggingScanner.Config("name", "cn", 1, 1, '*', null, 1)));
+        Assert.assertEquals("name=\uD840\uDC00**\uD840\uDC02",
+                cn.processLog("name=\uD840\uDC00\uD840\uDC01\uD840\uDC02"));
+        Assert.assertEquals("name=张*丰", cn.processLog("name=张三丰"));
+        Assert.assertEquals("name=abc", cn.processLog("name=abc"));
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        List<LoggingScanner.Config> trieConfigs = new ArrayList<>();
+        List<LoggingScanner.Config> acConfigs = new ArrayList<>();
+        for (String name : new String[]{"__default__", "phone", "name", "idNo", "手机号", "e-mail"}) {
+            trieConfigs.add(new LoggingScanner.Config(name, "num|en|lang", 2, 1, '*', " :=\"", 3));
+            acConfigs.add(new LoggingScanner.Config(name, "num|en|lang", 2, 1, '*', " :=\"", 3));
+        }
+        LoggingScanner trie = new LoggingScanner(true, trieConfigs, LoggingScanner.ENGINE_TRIE);
+        LoggingScanner ac = new LoggingScanner(true, acConfigs, LoggingScanner.ENGINE_AHOCORASICK);
+        String[] pieces = {"phone", "PHONE", "Name", "idno", "IDNO", "手机号", "e-mail", "x", "ab", "1", "8",
+                " ", "=", ":", "\"", "张", "，", "\uD840\uDC01", "_", "phon", "nam"};
+        Random random = new Random(7);
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(24);
+            for (int i = 0; i < count; i++) {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String line = sb.toString();
+            Assert.assertEquals(line, ac.processLog(line), trie.processLog(line));
+        }
+    }
+
+    @Test
+    public void testPrefilter() {
+        KeywordPrefilter prefilter = new KeywordPrefilter(new String[]{"phone", "idno"});
+        Assert.assertEquals(-1, prefilter.find("nothing to see", 0, 14));
+        Assert.assertEquals(-1, prefilter.find("iphone pi", 0, 9));
+        Assert.assertEquals(4, prefilter.find("my: PHONE=1", 0, 11));
+        Assert.assertEquals(0, prefilter.find("IdNo", 0, 4));
+        Assert.assertEquals(-1, prefilter.find("p", 0, 1));
+
+        LoggingScanner scanner = new LoggingScanner(true, Arrays.asList(
+                new LoggingScanner.Config("phone", "num", 3, 2, '*', null, 1)));
+        scanner.processLog("nothing to see");
+        scanner.processLog("phone=123456");
+        Assert.assertEquals(2, scanner.getStats().getLines());
+        Assert.assertEquals(1, scanner.getStats().getPrefilterSkipped());
+    }
+
+    /**
+     * 批量跳过与逐字符判断一致，覆盖各种向量宽度的边界与代理字符
+     */
+    @Test
+    public void testCharRuns() {
+        String[] pieces = {"1", "23", "a", "Z", "p", "P", "n", " ", "=", "张", "𠀁", "İ", "é"};
+        CharClass[] classes = {CharClass.ofContent("num"), CharClass.ofContent("en|num"), CharClass.ofContent("lang"),
+                CharClass.ofContent("num|x|Y|_")};
+        char[] chars = {'p', 'P', 'n', 'N', 'İ'};
+        Random random = new Random(22);
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(80);
+            //长串相同类别的字符，跨越多个向量
+            String run = pieces[random.nextInt(4)];
+            for (int i = 0; i < count; i++) {
+                sb.append(random.nextInt(3) == 0 ? pieces[random.nextInt(pieces.length)] : run);
+            }
+            int from = sb.length() == 0 ? 0 : random.nextInt(sb.length());
+            for (CharClass c : classes) {
+                int expected = from;
+                while (expected < sb.length() && !Character.isSurrogate(sb.charAt(expected)) && c.contains(sb.charAt(expected))) {
+                    expected++;
+                }
+                Assert.assertEquals(sb.toString(), expected, c.skipRun(sb, from, sb.length()));
+                if (c.ranges() != null) {
+                    Assert.assertEquals(sb.toString(), expected, CharRuns.skipRun(c.ranges(), sb, from, sb.length()));
+                }
+            }
+            int expected = from;
+            while (expected < sb.length() && new String(chars).indexOf(sb.charAt(expected)) < 0) {
+                expected++;
+            }
+            Assert.assertEquals(sb.toString(), expected, CharRuns.indexOfAny(chars, sb.toString(), from, sb.length()));
+        }
+        Assert.assertArrayEquals(new char[]{'0', '9', 'A', 'Z', 'a', 'z'}, CharClass.ofContent("en|num").ranges());
+        Assert.assertNull(CharClass.ofContent("𠀁").ranges());
+    }
+
+    @Test
+    public void testCleanRegion() {
+        String[] pieces = {"phone", "Name", "idno", "x", "ab", "1", " ", "=", ":", "张", "_", "phon", "nam", "{}", "e"};
+        Object[] parameters = {"ab", "phone=1", "x y", 12L, -3, null, "ph", "one", "名"};
+        for (String engine : new String[]{LoggingScanner.ENGINE_TRIE, LoggingScanner.ENGINE_AHOCORASICK}) {
+            List<LoggingScanner.Config> configs = new ArrayList<>();
+            for (String name : new String[]{"phone", "name", "idNo"}) {
+                configs.add(new LoggingScanner.Config(name, "num|en|lang", 1, 1, '*', " :=", 3));
+            }
+            LoggingScanner scanner = new LoggingScanner(true, configs, engine);
+            Random random = new Random(11);
+            int clean = 0;
+            for (int n = 0; n < 20000; n++) {
+                String prefix = random(random, pieces, 6);
+                String template = random(random, pieces, 8);
+                String suffix = random(random, pieces, 6);
+                Object[] args = new Object[random.nextInt(4)];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = parameters[random.nextInt(parameters.length)];
+                }
+                int placeholders = scanner.templatePlaceholders(template);
+                boolean isClean = placeholders >= 0;
+                for (int i = 0; i < Math.min(placeholders, args.length); i++) {
+                    isClean &= scanner.isParameterClean(args[i]);
+                }
+                String message = new ParameterizedMessage(template, args).getFormattedMessage();
+                String line = prefix + message + suffix;
+                if (isClean) {
+                    clean++;
+                    Assert.assertSame(message, scanner.processLog(message));
+                    StringBuilder expected = new StringBuilder(line);
+                    scanner.mask(expected);
+                    StringBuilder actual = new StringBuilder(line);
+                    scanner.mask(actual, 0, actual.length(), prefix.length(), prefix.length() + message.length());
+                    Assert.assertEquals(line, expected.toString(), actual.toString());
+                }
+            }
+            Assert.assertTrue(clean > 1000);
+            Assert.assertTrue(scanner.getStats().getTemplateCacheHits() > 0);
+        }
+    }
+
+    private static List<LoggingScanner.Config> streamingConfigs() {
+        return Arrays.asList(
+                new LoggingScanner.Config("phone", "num", 3, 4, '*', " =", 3),
+                new LoggingScanner.Config("name", "lang|en", 1, 1, '#', null, null),
+                new LoggingScanner.Config("idNo", "num|x", 6, 4, '*', null, 5),
+                new LoggingScanner.Config("k", "cn", 0, 0, '某', null, 2)
+        );
+    }
+
+    /**
+     * 每次只返回随机长度的一小段
+     */
+    private static class ChunkedReader extends Reader {
+        private final String text;
+        private final Random random;
+        private int position;
+
+        ChunkedReader(String text, Random random) {
+            this.text = text;
+            this.random = random;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(length, 1 + random.nextInt(700)), text.length() - position);
+            text.getChars(position, position + n, buffer, offset);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        String[] pieces = {"phone", "Name", "idNo", "k", "x", "ab", "e", "phon", "1", "2345", " ", "=", ",", "张",
+                "\uD840\uDC01", "\uD840", "\uDC01"};
+        for (String engine : new String[]{LoggingScanner.ENGINE_TRIE, LoggingScanner.ENGINE_AHOCORASICK}) {
+            LoggingScanner oneShot = new LoggingScanner(true, streamingConfigs(),
+                    new LoggingScanner.Options().setEngine(engine).setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            LoggingScanner streaming = new LoggingScanner(true, streamingConfigs(),
+                    new LoggingScanner.Options().setEngine(engine).setTemplateCacheSize(0).setStreamThreshold(0));
+            Random random = new Random(5);
+            int masked = 0;
+            for (int n = 0; n < 300; n++) {
+                //长文本跨越多个窗口，其中夹杂很长的数字、空白和汉字，使脱敏内容跨越窗口
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextBoolean() ? random.nextInt(200) : random.nextInt(40000);
+                while (sb.length() < length) {
+                    if (random.nextInt(50) == 0) {
+                        String[] runs = {"7", " ", "张", "\uD840\uDC01", "x"};
+                        String run = runs[random.nextInt(runs.length)];
+                        for (int i = random.nextInt(StreamingMasker.WINDOW * 2); i > 0; i--) {
+                            sb.append(run);
+                        }
+                    } else {
+                        sb.append(pieces[random.nextInt(pieces.length)]);
+                    }
+                }
+                String line = sb.toString();
+                String expected = oneShot.processLog(line);
+                if (!expected.equals(line)) {
+                    masked++;
+                }
+                Assert.assertEquals(expected, streaming.processLog(line));
+
+                StringBuilder out = new StringBuilder();
+                Assert.assertEquals(!expected.equals(line), streaming.processLog(new ChunkedReader(line, random), out));
+                Assert.assertEquals(expected, out.toString());
+
+                //区间的两端视为文本边界
+                int from = line.isEmpty() ? 0 : random.nextInt(line.length());
+                int to = from + (line.length() == from ? 0 : random.nextInt(line.length() - from + 1));
+                StringBuilder expectedRegion = new StringBuilder(line);
+                oneShot.mask(expectedRegion, from, to);
+                StringBuilder actualRegion = new StringBuilder(line);
+                streaming.mask(actualRegion, from, to);
+                Assert.assertEquals(expectedRegion.toString(), actualRegion.toString());
+
+                MaskList masks = new MaskList();
+                streaming.collect(line, from, to, -1, -1, masks);
+                StringBuilder collected = new StringBuilder(line);
+                for (int i = 0; i < masks.size; i++) {
+                    Assert.assertTrue(masks.starts[i] < masks.ends[i] && (i == 0 || masks.ends[i - 1] <= masks.starts[i]));
+                    for (int k = masks.starts[i]; k < masks.ends[i]; k++) {
+                        collected.setCharAt(k, masks.chars[i]);
+                    }
+                }
+                Assert.assertEquals(expectedRegion.toString(), collected.toString());
+            }
+            Assert.assertTrue(masked > 100);
+            //一次性扫描2次(整行、区间)，分段扫描4次(整行、Reader、区间、只记录区间)
+            Assert.assertEquals(oneShot.getStats().getRuleMasks(), streaming.getStats().getRuleMasks().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue() / 2)));
+        }
+    }
+
+    private static LoggingScanner.Config jsonConfig(String name, int skipHead, int skipTail) {
+        LoggingScanner.Config config = new LoggingScanner.Config(name, null, skipHead, skipTail, '*', null, null);
+        config.setMode(LoggingScanner.MODE_JSON);
+        return config;
+    }
+
+    @Test
+    public void testJsonMode() {
+        LoggingScanner json = new LoggingScanner(true, Arrays.asList(
+                jsonConfig("phone", 3, 4), jsonConfig("user", 0, 0), jsonConfig("name", 1, 1), jsonConfig("memo", 2, 3),
+                new LoggingScanner.Config("idNo", "num", 2, 2, '*', null, null)));
+        Assert.assertEquals("{\"phone\":\"138****5678\",\"id\":1}", json.processLog("{\"phone\":\"13812345678\",\"id\":1}"));
+        Assert.assertEquals("{\"Phone\" : 138****5678}", json.processLog("{\"Phone\" : 13812345678}"));
+        //对象和数组中的值都替换，键与 true/false/null 不替换，值内的关键字不再单独处理
+        Assert.assertEquals("{\"user\":{\"phone\":\"***********\",\"tags\":[\"**\",**],\"vip\":true,\"n\":null}, \"phone\":\"138****5678\"}",
+                json.processLog("{\"user\":{\"phone\":\"13812345678\",\"tags\":[\"a1\",-2],\"vip\":true,\"n\":null}, \"phone\":\"13812345678\"}"));
+        //不是键时按文本模式处理
+        Assert.assertEquals("phone=138****5678 \"phone_no\":\"13812345678\" \"phone\" 138****5678",
+                json.processLog("phone=13812345678 \"phone_no\":\"13812345678\" \"phone\" 13812345678"));
+        //单引号，以及在另一个字符串中转义的 json
+        Assert.assertEquals("{'phone':'138****5678','name':'z***g'}", json.processLog("{'phone':'13812345678','name':'zhang'}"));
+        Assert.assertEquals("{\"body\":\"{\\\"phone\\\":\\\"138****5678\\\",\\n\\\"user\\\":{\\\"id\\\":**}}\"}",
+                json.processLog("{\"body\":\"{\\\"phone\\\":\\\"13812345678\\\",\\n\\\"user\\\":{\\\"id\\\":12}}\"}"));
+        //转义的 json 中再转义的引号与 unicode 转义不拆开
+        Assert.assertEquals("\\\"name\\\":\\\"a*************d\\\"", json.processLog("\\\"name\\\":\\\"a\\\\\\\"b\\\\u0041cd\\\""));
+        Assert.assertEquals("\\\"memo\\\":\\\"a\\\\\\\"*\\\\u0041cd\\\"", json.processLog("\\\"memo\\\":\\\"a\\\\\\\"b\\\\u0041cd\\\""));
+        //不拆开转义序列
+        Assert.assertEquals("{\"name\":\"a**********d\"}", json.processLog("{\"name\":\"a\\\"b\\u0041cd\"}"));
+        Assert.assertEquals("{\"memo\":\"a\\\"*\\u0041cd\"}", json.processLog("{\"memo\":\"a\\\"b\\u0041cd\"}"));
+        //文本在值的中间结束时按末尾计算 skipTail
+        Assert.assertEquals("{\"name\":\"z***g", json.processLog("{\"name\":\"zhang"));
+        Assert.assertEquals("z***g", json.maskValue(json.ruleOf("name"), "zhang"));
+    }
+
+    @Test
+    public void testJsonStreaming() throws IOException {
+        String[] pieces = {"{", "}", "[", "]", ",", ":", " ", "\"", "\\", "\\\"", "\\u0041", "phone", "user", "memo", "idNo",
+                "\"phone\":", "\"user\":", "\"memo\": ", "\"idNo\":", "12", "-3.5e2", "true", "ab", "张", "\uD840\uDC01",
+                "'", "'memo':", "=", "phone=", "\\\"phone\\\":", "\\\"user\\\":", "\\\\", "\\\\\\\"", "\\n"};
+        for (String engine : new String[]{LoggingScanner.ENGINE_TRIE, LoggingScanner.ENGINE_AHOCORASICK}) {
+            LoggingScanner oneShot = new LoggingScanner(true, Arrays.asList(jsonConfig("phone", 3, 4), jsonConfig("user", 0, 0),
+                    jsonConfig("memo", 2, 3), new LoggingScanner.Config("idNo", "num", 2, 2, '#', " ", 3)),
+                    new LoggingScanner.Options().setEngine(engine).setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            LoggingScanner streaming = new LoggingScanner(true, Arrays.asList(jsonConfig("phone", 3, 4), jsonConfig("user", 0, 0),
+                    jsonConfig("memo", 2, 3), new LoggingScanner.Config("idNo", "num", 2, 2, '#', " ", 3)),
+                    new LoggingScanner.Options().setEngine(engine).setTemplateCacheSize(0).setStreamThreshold(0));
+            Random random = new Random(17);
+            int masked = 0;
+            for (int n = 0; n < 400; n++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextBoolean() ? random.nextInt(300) : random.nextInt(30000);
+                while (sb.length() < length) {
+                    if (random.nextInt(40) == 0) {
+                        //很长的字符串或数字值，跨越多个窗口
+                        String[] runs = {"7", "x", "\\n", "\uD840\uDC01", " "};
+                        String run = runs[random.nextInt(runs.length)];
+                        for (int i = random.nextInt(StreamingMasker.WINDOW * 2); i > 0; i--) {
+                            sb.append(run);
+                        }
+                    } else {
+                        sb.append(pieces[random.nextInt(pieces.length)]);
+                    }
+                }
+                String line = sb.toString();
+                String expected = oneShot.processLog(line);
+                if (!expected.equals(line)) {
+                    masked++;
+                }
+                Assert.assertEquals(expected, streaming.processLog(line));
+                StringBuilder out = new StringBuilder();
+                streaming.processLog(new ChunkedReader(line, random), out);
+                Assert.assertEquals(expected, out.toString());
+            }
+            Assert.assertTrue(masked > 100);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        String[] pieces = {"phone", "Name", "idNo", "k", "x", "ab", "phon", "1", "2345", " ", "=", "张", "\uD840\uDC01",
+                "{", "}", "\"", ":", "\"user\":", "\"phone\":"};
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (boolean withJson : new boolean[]{false, true}) {
+            List<LoggingScanner.Config> configs = new ArrayList<>(streamingConfigs());
+            List<LoggingScanner.Config> parallelConfigs = new ArrayList<>(streamingConfigs());
+            if (withJson) {
+                configs.add(jsonConfig("user", 0, 0));
+                parallelConfigs.add(jsonConfig("user", 0, 0));
+            }
+            LoggingScanner sequential = new LoggingScanner(true, configs,
+                    new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            LoggingScanner parallel = new LoggingScanner(true, parallelConfigs,
+                    new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            parallel.setParallel(1, pool);
+            Random random = new Random(23);
+            for (int n = 0; n < 40; n++) {
+                //命中稀疏或密集，夹杂跨越多个段的长内容
+                StringBuilder sb = new StringBuilder();
+                int length = 40000 + random.nextInt(300000);
+                int density = 1 + random.nextInt(2000);
+                while (sb.length() < length) {
+                    if (random.nextInt(density) == 0) {
+                        sb.append(' ');
+                        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+                            sb.append(pieces[random.nextInt(pieces.length)]);
+                        }
+                        sb.append(' ');
+                    } else if (random.nextInt(3000) == 0) {
+                        String[] runs = {"7", " ", "张", "x"};
+                        String run = runs[random.nextInt(runs.length)];
+                        for (int i = random.nextInt(ParallelScan.MIN_SEGMENT * 3); i > 0; i--) {
+                            sb.append(run);
+                        }
+                    } else {
+                        sb.append((char) ('a' + random.nextInt(26)));
+                    }
+                }
+                String line = sb.toString();
+                Assert.assertEquals(sequential.processLog(line), parallel.processLog(line));
+
+                int from = random.nextInt(line.length() / 4);
+                int to = line.length() - random.nextInt(line.length() / 4);
+                StringBuilder expectedRegion = new StringBuilder(line);
+                sequential.mask(expectedRegion, from, to);
+                StringBuilder actualRegion = new StringBuilder(line);
+                parallel.mask(actualRegion, from, to);
+                Assert.assertEquals(expectedRegion.toString(), actualRegion.toString());
+
+                MaskList expectedMasks = new MaskList();
+                sequential.collect(line, from, to, -1, -1, expectedMasks);
+                MaskList actualMasks = new MaskList();
+                parallel.collect(line, from, to, -1, -1, actualMasks);
+                Assert.assertEquals(expectedMasks.size, actualMasks.size);
+                for (int i = 0; i < expectedMasks.size; i++) {
+                    Assert.assertEquals(expectedMasks.starts[i], actualMasks.starts[i]);
+                    Assert.assertEquals(expectedMasks.ends[i], actualMasks.ends[i]);
+                    Assert.assertEquals(expectedMasks.chars[i], actualMasks.chars[i]);
+                }
+            }
+            Assert.assertTrue(parallel.getStats().getRuleMasks().values().stream().mapToLong(Long::longValue).sum() > 100);
+            Assert.assertEquals(sequential.getStats().getRuleMasks(), parallel.getStats().getRuleMasks());
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * 检查线程池之后、提交之前线程池被关闭(stop())，提交被拒绝时顺序扫描，不能原样输出
+     */
+    @Test
+    public void testParallelAfterStop() {
+        for (boolean withJson : new boolean[]{false, true}) {
+            //isShutdown() 始终为false：关闭后段数仍大于1，模拟检查之后才关闭
+            ForkJoinPool pool = new ForkJoinPool(4) {
+                @Override
+                public boolean isShutdown() {
+                    return false;
+                }
+            };
+            List<LoggingScanner.Config> configs = new ArrayList<>(streamingConfigs());
+            if (withJson) {
+                configs.add(jsonConfig("user", 0, 0));
+            }
+            LoggingScanner sequential = new LoggingScanner(true, configs,
+                    new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            LoggingScanner parallel = new LoggingScanner(true, configs,
+                    new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE));
+            parallel.setParallel(1, pool);
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < ParallelScan.MIN_SEGMENT * 8) {
+                sb.append("phone=13812345678 name=张三丰 idNo=11010519491231002X {\"user\":\"abc\"} nothing here ");
+            }
+            String line = sb.toString();
+            String expected = sequential.processLog(line);
+            Assert.assertNotEquals(line, expected);
+            Assert.assertEquals(expected, parallel.processLog(line));
+
+            pool.shutdown();
+            Assert.assertEquals(expected, parallel.processLog(line));
+            StringBuilder region = new StringBuilder(line);
+            parallel.mask(region, 0, region.length());
+            Assert.assertEquals(expected, region.toString());
+            MaskList expectedMasks = new MaskList();
+            sequential.collect(line, 0, line.length(), -1, -1, expectedMasks);
+            MaskList actualMasks = new MaskList();
+            parallel.collect(line, 0, line.length(), -1, -1, actualMasks);
+            Assert.assertEquals(expectedMasks.size, actualMasks.size);
+        }
+    }
+
+    private static List<DesensitizedPattern> valuePatterns() {
+        return Arrays.asList(
+                DesensitizedPattern.newBuilder().setType("phone").build(),
+                DesensitizedPattern.newBuilder().setType("idcard").build(),
+                DesensitizedPattern.newBuilder().setType("bankcard").setC('#').build(),
+                DesensitizedPattern.newBuilder().setType("email").build(),
+                DesensitizedPattern.newBuilder().setName("order").setPattern("(?:NO|no)-\\d{4}(-\\d+)?|\\u4e2d+").setSkipHead(2).setSkipTail(0).build());
+    }
+
+    @Test
+    public void testValuePatterns() {
+        LoggingScanner scanner = new LoggingScanner(true, null,
+                new LoggingScanner.Options().setPatterns(valuePatterns()).setTemplateCacheSize(0));
+        Assert.assertEquals("电话138****5678，", scanner.processLog("电话13812345678，"));
+        //前后紧邻字母或数字时不是独立的值
+        Assert.assertEquals("x13812345678 138123456789", scanner.processLog("x13812345678 138123456789"));
+        //校验位
+        Assert.assertEquals("id:110105********002X, 110105194912310021", scanner.processLog("id:11010519491231002X, 110105194912310021"));
+        Assert.assertEquals("card 411111######1111 6222021234567890123", scanner.processLog("card 4111111111111111 6222021234567890123"));
+        Assert.assertEquals("mail: zh******.com.", scanner.processLog("mail: zhang@qq.com."));
+        Assert.assertEquals("NO***** no******* 中中 中中*", scanner.processLog("NO-1234 no-1234-5 中中 中中中"));
+        Assert.assertEquals("138****5678", scanner.maskPatterns("13812345678"));
+        Map<String, Long> matches = scanner.getStats().getRuleMatches();
+        Assert.assertEquals(Long.valueOf(2), matches.get("phone"));
+        Assert.assertEquals(Long.valueOf(1), matches.get("idcard"));
+        Assert.assertEquals(Long.valueOf(4), matches.get("order"));
+        Assert.assertEquals(Long.valueOf(3), scanner.getStats().getRuleMasks().get("order"));
+
+        //与关键字同时命中时，重叠部分按关键字的规则替换
+        LoggingScanner both = new LoggingScanner(true, Arrays.asList(new LoggingScanner.Config("phone", "num", 3, 4, '#', null, null)),
+                new LoggingScanner.Options().setTemplateCacheSize(0).setPatterns(Arrays.asList(
+                        DesensitizedPattern.newBuilder().setType("phone").setSkipHead(0).setSkipTail(0).build())));
+        Assert.assertEquals("phone=***####**** tel=***********", both.processLog("phone=13812345678 tel=13812345678"));
+        StringBuilder buffer = new StringBuilder("[x] phone=13812345678 tel=13812345678");
+        Assert.assertTrue(both.mask(buffer, 4, buffer.length(), 4, 10));
+        Assert.assertEquals("[x] phone=***####**** tel=***********", buffer.toString());
+        MaskList masks = new MaskList();
+        Assert.assertTrue(both.collect("phone=13812345678", 0, 17, -1, -1, masks));
+        Assert.assertEquals(3, masks.size);
+        Assert.assertArrayEquals(new int[]{6, 9, 13}, Arrays.copyOf(masks.starts, 3));
+        Assert.assertArrayEquals(new int[]{9, 13, 17}, Arrays.copyOf(masks.ends, 3));
+
+        //没有值的日志只按关键字扫描：跳过不含关键字的区间，前置过滤照常计数
+        ScannerStats stats = new ScannerStats();
+        LoggingScanner mixed = new LoggingScanner(true, Arrays.asList(new LoggingScanner.Config("phone", "num", 3, 4, '*', null, null)),
+                new LoggingScanner.Options().setPatterns(valuePatterns()).setTemplateCacheSize(0).setStats(stats));
+        Assert.assertEquals("hello a.b.c.d-e_f 2024", mixed.processLog("hello a.b.c.d-e_f 2024"));
+        Assert.assertEquals(1, stats.getPrefilterSkipped());
+        buffer = new StringBuilder("[x] order created at noon, phone=138123456");
+        Assert.assertTrue(mixed.mask(buffer, 4, buffer.length(), 4, 26));
+        Assert.assertEquals("[x] order created at noon, phone=138**3456", buffer.toString());
+        Assert.assertEquals(22 - 2 * 4, stats.getCleanChars());
+        PatternAutomaton automaton = new PatternAutomaton(new String[]{"[a-z.]+@[a-z]+\\.com"}, new String[]{null});
+        StringBuilder dots = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            dots.append("a.");
+        }
+        Assert.assertFalse(automaton.contains(dots, 0, dots.length()));
+        dots.append("b@qq.com");
+        Assert.assertTrue(automaton.contains(dots, 0, dots.length()));
+
+        try {
+            new LoggingScanner(true, null,
+                    new LoggingScanner.Options().setPatterns(Arrays.asList(DesensitizedPattern.newBuilder().setPattern("^\\d+").build())));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //anchors are not supported
+        }
+    }
+
+    /**
+     * 值格式的参考实现：逐个起点、逐个长度用 java.util.regex 判断
+     */
+    private static String referencePatterns(String text, List<DesensitizedPattern> patterns) {
+        Pattern[] compiled = new Pattern[patterns.size()];
+        for (int k = 0; k < compiled.length; k++) {
+            compiled[k] = Pattern.compile(patterns.get(k).effectivePattern());
+        }
+        StringBuilder sb = new StringBuilder(text);
+        int i = 0;
+        while (i < text.length()) {
+            if (i > 0 && !PatternAutomaton.isBoundary(text.charAt(i - 1))) {
+                i++;
+                continue;
+            }
+            int found = -1;
+            for (int e = Math.min(text.length(), i + PatternAutomaton.MAX_LENGTH); e > i && found < 0; e--) {
+                if (e < text.length() && !PatternAutomaton.isBoundary(text.charAt(e))) {
+                    continue;
+                }
+                for (int k = 0; k < compiled.length; k++) {
+                    String check = patterns.get(k).effectiveCheck();
+                    if (compiled[k].matcher(text.subSequence(i, e)).matches() && (check == null
+                            || (PatternAutomaton.CHECK_LUHN.equals(check) ? PatternAutomaton.luhn(text, i, e) : PatternAutomaton.idCard(text, i, e)))) {
+                        DesensitizedPattern p = patterns.get(k);
+                        int head = i + p.effectiveSkipHead();
+                        int to = e - p.effectiveSkipTail();
+                        for (int x = head; x < to; x++) {
+                            sb.setCharAt(x, p.getC() == null ? '*' : p.getC());
+                        }
+                        found = e;
+                        break;
+                    }
+                }
+            }
+            i = found < 0 ? i + 1 : found;
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testValuePatternsStreaming() throws IOException {
+        String[] pieces = {"13812345678", "11010519491231002X", "440301199001011234", "4111111111111111", "6222021234567890128",
+                "zhang@qq.com", "a.b", "@", ".", "-", "1", "x", " ", ",", "中", "NO-1234", "-5", "_"};
+        List<DesensitizedPattern> patterns = valuePatterns();
+        LoggingScanner scanner = new LoggingScanner(true, null,
+                new LoggingScanner.Options().setPatterns(patterns).setTemplateCacheSize(0));
+        Random random = new Random(5);
+        int masked = 0;
+        for (int n = 0; n < 300; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(10) == 0 ? StreamingMasker.WINDOW * 2 + random.nextInt(4000) : random.nextInt(200);
+            while (sb.length() < length) {
+                if (random.nextInt(200) == 0) {
+                    //很长的数字或字母串，超过值的最大长度
+                    char c = random.nextBoolean() ? '8' : 'a';
+                    for (int i = random.nextInt(PatternAutomaton.MAX_LENGTH * 2); i > 0; i--) {
+                        sb.append(c);
+                    }
+                }
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String line = sb.toString();
+            String expected = referencePatterns(line, patterns);
+            if (!expected.equals(line)) {
+                masked++;
+            }
+            Assert.assertEquals(expected, scanner.processLog(line));
+            StringBuilder out = new StringBuilder();
+            scanner.processLog(new ChunkedReader(line, random), out);
+            Assert.assertEquals(expected, out.toString());
+        }
+        Assert.assertTrue(masked > 100);
+    }
+
+    private static String random(Random random, String[] pieces, int max) {
+        StringBuilder sb = new StringBuilder();
+        int count = random.nextInt(max);
+        for (int i = 0; i < count; i++) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testTemplateCache() {
+        ScannerStats stats = new ScannerStats();
+        TemplateCache cache = new TemplateCache(2, stats);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(1, cache.get("a"));
+        //a 被访问过，淘汰 b
+        cache.put("c", 3);
+        Assert.assertEquals(Integer.MIN_VALUE, cache.get("b"));
+        Assert.assertEquals(1, cache.get("a"));
+        Assert.assertEquals(3, cache.get("c"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, stats.getTemplateCacheEvictions());
+        Assert.assertEquals(3, stats.getTemplateCacheHits());
+        Assert.assertEquals(1, stats.getTemplateCacheMisses());
+
+        Assert.assertEquals(2, scanner.templatePlaceholders("order {} created at {}"));
+        Assert.assertEquals(-1, scanner.templatePlaceholders("phone {}"));
+        Assert.assertEquals(-1, scanner.templatePlaceholders("pho{}"));
+        Assert.assertEquals(-1, scanner.templatePlaceholders("order {}{}"));
+    }
+
+    private static LoggingScanner.Config tokenConfig(String name, String content, int skipHead, int skipTail, String strategy) {
+        LoggingScanner.Config config = new LoggingScanner.Config(name, content, skipHead, skipTail, '*', null, null);
+        config.setStrategy(strategy);
+        config.setKey("secret");
+        return config;
+    }
+
+    @Test
+    public void testTokenStrategies() {
+        ScannerStats stats = new ScannerStats();
+        LoggingScanner tokens = new LoggingScanner(true, Arrays.asList(
+                tokenConfig("phone", "num", 3, 4, LoggingScanner.STRATEGY_HMAC),
+                tokenConfig("mobile", "num", 3, 4, LoggingScanner.STRATEGY_HMAC),
+                tokenConfig("card", "num", 0, 4, LoggingScanner.STRATEGY_FPE),
+                tokenConfig("name", "lang|en", 1, 0, LoggingScanner.STRATEGY_FPE),
+                tokenConfig("email", "en|num|@|.", 0, 0, LoggingScanner.STRATEGY_HASH),
+                tokenConfig("idNo", "num", 0, 0, "unknown")
+        ), new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE)
+                .setTokenCacheSize(2).setStats(stats));
+
+        String first = tokens.processLog("phone=13812345678");
+        Assert.assertTrue(first, Pattern.matches("phone=138[0-9a-f]{4}5678", first));
+        Assert.assertNotEquals("phone=138****5678", first);
+        //同一个值总是得到同一个令牌，不同字段使用相同的策略与 key 时也相同
+        Assert.assertEquals(first, tokens.processLog("phone=13812345678"));
+        Assert.assertEquals(first.replace("phone", "mobile"), tokens.processLog("mobile=13812345678"));
+        Assert.assertNotEquals(first, tokens.processLog("phone=13812340000").replace("0000", "5678"));
+
+        String card = tokens.processLog("card=6222020012345678");
+        Assert.assertTrue(card, Pattern.matches("card=\\d{12}5678", card));
+        String name = tokens.processLog("name=张三丰 Li");
+        Assert.assertTrue(name, Pattern.matches("name=张[\u4e00-\u9fa5]{2} [A-Z][a-z]", name));
+        String email = tokens.processLog("email=ab@c.com");
+        Assert.assertTrue(email, Pattern.matches("email=[0-9a-f]{8}", email));
+        Assert.assertEquals("idNo=*****", tokens.processLog("idNo=12345"));
+
+        //超过令牌化长度的值按替换字符处理
+        char[] digits = new char[Tokenizer.MAX_VALUE + 1];
+        Arrays.fill(digits, '7');
+        String longValue = new String(digits);
+        Assert.assertEquals("phone=777" + longValue.substring(7).replace('7', '*') + "7777",
+                tokens.processLog("phone=" + longValue));
+
+        //令牌长度与值相同，超过一个摘要块时追加计数器块
+        Tokenizer hmac = Tokenizer.of(LoggingScanner.STRATEGY_HMAC, "secret", 0, new ScannerStats());
+        String token = hmac.token(longValue.substring(0, 200));
+        Assert.assertEquals(200, token.length());
+        Assert.assertNotEquals(token.substring(0, 64), token.substring(64, 128));
+        Assert.assertNotEquals(token, Tokenizer.of(LoggingScanner.STRATEGY_HMAC, "other", 0, new ScannerStats())
+                .token(longValue.substring(0, 200)));
+        Assert.assertNull(Tokenizer.of(LoggingScanner.STRATEGY_FPE, null, 0, new ScannerStats()));
+
+        //缓存容量为2：phone 与 mobile 共用一个缓存，第三个值淘汰未再访问的值
+        Assert.assertEquals(0, stats.getTokenCacheEvictions());
+        tokens.processLog("phone=13900000000");
+        Assert.assertTrue(stats.getTokenCacheHits() >= 2);
+        Assert.assertTrue(stats.getTokenCacheEvictions() >= 1);
+        Assert.assertTrue(stats.getTokenCacheHitRatio() > 0 && stats.getTokenCacheHitRatio() < 1);
+    }
+
+    @Test
+    public void testTokenCache() {
+        ScannerStats stats = new ScannerStats();
+        TokenCache cache = new TokenCache(2, stats);
+        cache.put("a", 0, 1, "1");
+        cache.put("xbx", 1, 2, "2");
+        Assert.assertEquals("1", cache.get("[a]", 1, 2));
+        //a 被访问过，淘汰 b
+        cache.put("c", 0, 1, "3");
+        Assert.assertNull(cache.get("b", 0, 1));
+        Assert.assertEquals("3", cache.get("c", 0, 1));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, stats.getTokenCacheEvictions());
+        Assert.assertEquals(2, stats.getTokenCacheHits());
+        Assert.assertEquals(1, stats.getTokenCacheMisses());
+
+        //反复淘汰后探测链仍完整
+        TokenCache small = new TokenCache(3, new ScannerStats());
+        for (int i = 0; i < 1000; i++) {
+            String value = Integer.toString(i);
+            small.put(value, 0, value.length(), value);
+            Assert.assertEquals(value, small.get("=" + value, 1, value.length() + 1));
+        }
+        Assert.assertEquals(3, small.size());
+
+        //命中时直接返回缓存的令牌，不复制值
+        Tokenizer hmac = Tokenizer.of(LoggingScanner.STRATEGY_HMAC, "secret", 16, new ScannerStats());
+        String token = hmac.token("13812345678");
+        Assert.assertSame(token, hmac.token("phone=13812345678", 6, 17));
+        Assert.assertSame(token, hmac.token(new StringBuilder("13812345678,"), 0, 11));
+        Assert.assertNotNull(Tokenizer.of(LoggingScanner.STRATEGY_HASH, null, 16, new ScannerStats()));
+    }
+
+    @Test
+    public void testTokenStreaming() throws IOException {
+        String[] pieces = {"phone", "name", "k", "x", "1", "2345", " ", "=", ",", "张", "\uD840\uDC01"};
+        LoggingScanner oneShot = new LoggingScanner(true, Arrays.asList(
+                tokenConfig("phone", "num", 3, 4, LoggingScanner.STRATEGY_HMAC),
+                tokenConfig("name", "lang| ", 1, 1, LoggingScanner.STRATEGY_FPE)
+        ), new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(Integer.MAX_VALUE).setTokenCacheSize(16));
+        LoggingScanner streaming = new LoggingScanner(true, Arrays.asList(
+                tokenConfig("phone", "num", 3, 4, LoggingScanner.STRATEGY_HMAC),
+                tokenConfig("name", "lang| ", 1, 1, LoggingScanner.STRATEGY_FPE)
+        ), new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(0).setTokenCacheSize(16));
+        Random random = new Random(31);
+        int tokenized = 0;
+        for (int n = 0; n < 200; n++) {
+            //值的长度在令牌化长度上下，部分跨越窗口
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextBoolean() ? random.nextInt(200) : random.nextInt(30000);
+            while (sb.length() < length) {
+                if (random.nextInt(30) == 0) {
+                    sb.append(random.nextBoolean() ? "phone=" : "name=");
+                    String[] runs = {"7", "张", " "};
+                    String run = runs[random.nextInt(runs.length)];
+                    int count = random.nextInt(10) == 0 ? random.nextInt(StreamingMasker.WINDOW) : random.nextInt(Tokenizer.MAX_VALUE + 8);
+                    for (int i = count; i > 0; i--) {
+                        sb.append(run);
+                    }
+                } else {
+                    sb.append(pieces[random.nextInt(pieces.length)]);
+                }
+            }
+            String line = sb.toString();
+            String expected = oneShot.processLog(line);
+            if (Pattern.compile("phone=777[0-9a-f]").matcher(expected).find()) {
+                tokenized++;
+            }
+            Assert.assertEquals(expected, streaming.processLog(line));
+
+            StringBuilder out = new StringBuilder();
+            streaming.processLog(new ChunkedReader(line, random), out);
+            Assert.assertEquals(expected, out.toString());
+
+            StringBuilder inPlace = new StringBuilder(line);
+            streaming.mask(inPlace, 0, line.length());
+            Assert.assertEquals(expected, inPlace.toString());
+
+            MaskList masks = new MaskList();
+            streaming.collect(line, 0, line.length(), -1, -1, masks);
+            StringBuilder collected = new StringBuilder(line);
+            for (int i = 0; i < masks.size; i++) {
+                for (int k = masks.starts[i]; k < masks.ends[i]; k++) {
+                    collected.setCharAt(k, masks.charAt(i, k));
+                }
+            }
+            Assert.assertEquals(expected, collected.toString());
+        }
+        Assert.assertTrue(tokenized > 20);
+    }
+
+    /**
+     * 紧凑自动机与平铺转移表的匹配结果相同
+     */
+    @Test
+    public void testCompactAutomaton() {
+        String alphabet = "abcdeAB_-1张号";
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            String[] keywords = new String[1 + random.nextInt(60)];
+            for (int k = 0; k < keywords.length; k++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1 + random.nextInt(k % 7 == 0 ? 2 : 6); i > 0; i--) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                keywords[k] = sb.toString();
+            }
+            KeywordMatcher dense = new KeywordAutomaton(keywords);
+            KeywordMatcher compact = new CompactKeywordAutomaton(keywords);
+            Assert.assertEquals(dense.maxLength(), compact.maxLength());
+            for (int n = 0; n < 500; n++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = random.nextInt(40); i > 0; i--) {
+                    sb.append(random.nextInt(8) == 0 ? " =" : alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String text = sb.toString();
+                MatchList expected = new MatchList();
+                MatchList actual = new MatchList();
+                dense.match(text, 0, text.length(), 0, text.length(), expected);
+                compact.match(text, 0, text.length(), 0, text.length(), actual);
+                Assert.assertEquals(text, expected.size, actual.size);
+                for (int i = 0; i < expected.size; i++) {
+                    Assert.assertEquals(text, expected.starts[i], actual.starts[i]);
+                    Assert.assertEquals(text, expected.ends[i], actual.ends[i]);
+                    Assert.assertEquals(text, expected.rules[i], actual.rules[i]);
+                }
+                Assert.assertEquals(text, dense.containsAny(text), compact.containsAny(text));
+            }
+        }
+
+        //关键字很多时自动使用紧凑实现，内存远小于平铺转移表
+        String[] keywords = new String[20000];
+        for (int k = 0; k < keywords.length; k++) {
+            keywords[k] = "col_" + Integer.toString(k * 7919, 36) + "_" + (char) ('a' + k % 26);
+        }
+        KeywordMatcher matcher = KeywordAutomaton.compile(keywords);
+        Assert.assertTrue(matcher instanceof CompactKeywordAutomaton);
+        Assert.assertTrue(matcher.memoryBytes() * 4 < new KeywordAutomaton(keywords).memoryBytes());
+        Assert.assertTrue(KeywordAutomaton.compile(new String[]{"phone"}) instanceof KeywordAutomaton);
+    }
+
+    @Test
+    public void testDictionary() {
+        String[] keywords = new String[5000];
+        for (int k = 0; k < keywords.length; k++) {
+            keywords[k] = "field_" + k;
+        }
+        keywords[7] = " Field_Seven ";
+        LoggingScanner.Config dictionary = new LoggingScanner.Config("catalog", "num", 1, 1, '#', null, null);
+        dictionary.setKeywords(keywords);
+        LoggingScanner scanner = new LoggingScanner(true, Arrays.asList(
+                dictionary,
+                new LoggingScanner.Config("field_9", "num", 0, 0, '*', null, null)));
+        Assert.assertEquals("field_12=1###5 FIELD_4999:9##9 field_seven=1#3 field_9=****",
+                scanner.processLog("field_12=12345 FIELD_4999:9009 field_seven=123 field_9=1234"));
+        Assert.assertEquals("field_5000=12345", scanner.processLog("field_5000=12345"));
+        ScannerStats stats = scanner.getStats();
+        Assert.assertEquals(5000, stats.getKeywordCount());
+        Assert.assertEquals(Long.valueOf(3), stats.getRuleMasks().get("catalog"));
+        Assert.assertEquals(Long.valueOf(1), stats.getRuleMasks().get("field_9"));
+        Assert.assertTrue(stats.getMatcherBytes() > 0);
+        Assert.assertTrue(stats.getBuildMillis() > 0);
+    }
+
+    private static LoggingScanner identifierScanner(int streamThreshold, int prefixWords, int suffixWords) {
+        return new LoggingScanner(true, Arrays.asList(
+                new LoggingScanner.Config("phone", "num", 3, 4, '*', " =:\"", 3),
+                new LoggingScanner.Config("id_no", "num|x", 2, 2, '#', null, 3),
+                new LoggingScanner.Config("e-mail", "en|num|@|.", 1, 0, '*', null, 3),
+                new LoggingScanner.Config("name", "lang|en", 1, 0, '*', null, 3)
+        ), new LoggingScanner.Options().setTemplateCacheSize(0).setStreamThreshold(streamThreshold).setTokenCacheSize(0)
+                .setKeywordMatch(LoggingScanner.MATCH_IDENTIFIER).setPrefixWords(prefixWords).setSuffixWords(suffixWords));
+    }
+
+    @Test
+    public void testIdentifierMatch() {
+        LoggingScanner scanner = identifierScanner(Integer.MAX_VALUE, 2, 1);
+        String[][] cases = {
+                {"userPhone=13812345678", "userPhone=138****5678"},
+                {"user_phone=13812345678", "user_phone=138****5678"},
+                {"mobilePhoneNo: 13812345678", "mobilePhoneNo: 138****5678"},
+                {"PHONE_NUMBER=13812345678", "PHONE_NUMBER=138****5678"},
+                {"phone-number=13812345678", "phone-number=138****5678"},
+                {"HTTPPhone=13812345678", "HTTPPhone=138****5678"},
+                {"phone13812345678", "phone138****5678"},
+                {"{\"custIdNo\":\"11010119900101\"}", "{\"custIdNo\":\"11##########01\"}"},
+                {"ID_NO=11010119900101 idno=11010119900101", "ID_NO=11##########01 idno=11##########01"},
+                {"userEmail=a@b.com", "userEmail=a******"},
+                {"userName=zhang", "userName=z****"},
+                //不是单词边界、前后缀过多或全小写连写时不匹配
+                {"iphone=13812345678", "iphone=13812345678"},
+                {"userphone=13812345678", "userphone=13812345678"},
+                {"phones=13812345678", "phones=13812345678"},
+                {"oldUserMobilePhone=13812345678", "oldUserMobilePhone=13812345678"},
+                {"phoneNumberValue=13812345678", "phoneNumberValue=13812345678"},
+                {"nameless=abc", "nameless=abc"},
+        };
+        for (String[] c : cases) {
+            Assert.assertEquals(c[0], c[1], scanner.processLog(c[0]));
+        }
+        //前后缀的单词数可配置
+        LoggingScanner tolerant = identifierScanner(Integer.MAX_VALUE, 3, 2);
+        Assert.assertEquals("oldUserMobilePhone=138****5678 phoneNumberValue=138****5678",
+                tolerant.processLog("oldUserMobilePhone=13812345678 phoneNumberValue=13812345678"));
+        LoggingScanner exact = identifierScanner(Integer.MAX_VALUE, 0, 0);
+        Assert.assertEquals("phone_no=13812345678 phone=138****5678 Phone=138****5678",
+                exact.processLog("phone_no=13812345678 phone=13812345678 Phone=13812345678"));
+        //整词匹配不受影响
+        Assert.assertEquals("userPhone=13812345678", new LoggingScanner(true, Arrays.asList(
+                new LoggingScanner.Config("phone", "num", 3, 4, '*', null, 3))).processLog("userPhone=13812345678"));
+
+        Assert.assertEquals("phone", scanner.ruleOf("userPhone").getName());
+        Assert.assertEquals("id_no", scanner.ruleOf("custIdNo").getName());
+        Assert.assertNull(scanner.ruleOf("userPhoneAndName"));
+        Assert.assertNull(scanner.ruleOf("iphone"));
+    }
+
+    /**
+     * 按标识符匹配时分段扫描、并行扫描、跨越两种自动机的结果与一次性扫描相同
+     */
+    @Test
+    public void testIdentifierMatchSegments() throws IOException {
+        String[] pieces = {"phone", "Phone", "PHONE", "user", "User", "_", "-", "No", "id", "Id", "ID", "no", "e", "mail",
+                "Name", "x", "1", "2345", " ", "=", "\"", "张", "\uD840\uDC01"};
+        LoggingScanner oneShot = identifierScanner(Integer.MAX_VALUE, 2, 1);
+        LoggingScanner streaming = identifierScanner(0, 2, 1);
+        LoggingScanner parallel = identifierScanner(Integer.MAX_VALUE, 2, 1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setParallel(1, pool);
+        Random random = new Random(41);
+        for (int n = 0; n < 60; n++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(4) == 0 ? 40000 + random.nextInt(40000) : random.nextInt(3000);
+            while (sb.length() < length) {
+                if (random.nextInt(4) == 0) {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                } else {
+                    sb.append(pieces[random.nextInt(pieces.length)]);
+                }
+            }
+            String line = sb.toString();
+            String expected = oneShot.processLog(line);
+            Assert.assertEquals(expected, streaming.processLog(line));
+            Assert.assertEquals(expected, parallel.processLog(line));
+            StringBuilder out = new StringBuilder();
+            streaming.processLog(new ChunkedReader(line, random), out);
+            Assert.assertEquals(expected, out.toString());
+        }
+        pool.shutdown();
+        Assert.assertTrue(oneShot.getStats().getRuleMasks().values().stream().mapToLong(Long::longValue).sum() > 100);
+
+        String[] keywords = {"phone", "phoneno", "idno", "email", "no", "p"};
+        IdentifierMatcher dense = new IdentifierMatcher(new KeywordAutomaton(keywords), 2, 1);
+        IdentifierMatcher compact = new IdentifierMatcher(new CompactKeywordAutomaton(keywords), 2, 1);
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String text = sb.toString();
+            MatchList expected = new MatchList();
+            MatchList actual = new MatchList();
+            dense.match(text, 0, text.length(), 0, text.length(), expected);
+            compact.match(text, 0, text.length(), 0, text.length(), actual);
+            Assert.assertEquals(text, expected.size, actual.size);
+            for (int i = 0; i < expected.size; i++) {
+                Assert.assertEquals(text, expected.starts[i], actual.starts[i]);
+                Assert.assertEquals(text, expected.ends[i], actual.ends[i]);
+                Assert.assertEquals(text, expected.rules[i], actual.rules[i]);
+            }
+            Assert.assertEquals(text, dense.containsAny(text), compact.containsAny(text));
+        }
+    }
+}
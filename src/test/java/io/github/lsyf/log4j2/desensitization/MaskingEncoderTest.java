@@ -0,0 +1,204 @@
+package io.github.lsyf.log4j2.desensitization;
+
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.pattern.RegexReplacement;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+
+public class MaskingEncoderTest {
+
+    /**
+     * 缓冲区很小，编码过程中多次drain
+     */
+    private static class Collector implements ByteBufferDestination {
+        private final ByteBuffer buffer = ByteBuffer.allocate(7);
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer drain(ByteBuffer buf) {
+            buf.flip();
+            out.write(buf.array(), 0, buf.limit());
+            buf.clear();
+            return buf;
+        }
+
+        @Override
+        public void writeBytes(ByteBuffer data) {
+            while (data.hasRemaining()) {
+                out.write(data.get());
+            }
+        }
+
+        @Override
+        public void writeBytes(byte[] data, int offset, int length) {
+            out.write(data, offset, length);
+        }
+
+        byte[] toByteArray() {
+            drain(buffer);
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testEncodeWithMasks() {
+        String[] pieces = {"a", "Z", "=", "é", "张", "€", "𠀁", "\uD840", "\uDC01", " "};
+        char[] maskChars = {'*', '#', '某', 'é'};
+        Random random = new Random(3);
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder text = new StringBuilder();
+            int count = random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            MaskList masks = new MaskList();
+            StringBuilder expected = new StringBuilder(text);
+            int position = 0;
+            while (position < text.length() && random.nextBoolean()) {
+                int start = position + random.nextInt(text.length() - position);
+                int end = start + 1 + random.nextInt(text.length() - start);
+                char c = maskChars[random.nextInt(maskChars.length)];
+                masks.add(start, end, c);
+                for (int k = start; k < end; k++) {
+                    expected.setCharAt(k, c);
+                }
+                position = end;
+            }
+            Collector collector = new Collector();
+            MaskingEncoder.encode(text, masks, collector);
+            Assert.assertArrayEquals(expected.toString(), expected.toString().getBytes(StandardCharsets.UTF_8), collector.toByteArray());
+        }
+    }
+
+    @Test
+    public void testLayoutEncode() {
+        DesensitizedReplacement desensitized = DesensitizedReplacement.newBuilder()
+                .setEnable(true)
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("name").setContent("lang|en").setSkipHead(1).setSkipTail(1).build(),
+                        DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build()
+                })
+                .build();
+        MyPatternLayout layout = MyPatternLayout.newBuilder()
+                .withConfiguration(new DefaultConfiguration())
+                .withPattern("%p %m%n")
+                .withCharset(StandardCharsets.UTF_8)
+                .withDesensitizedReplacement(desensitized)
+                .build();
+        for (String message : new String[]{"name=张三丰 phone=13812345678 €", "nothing here", "name=𠀁𠀂𠀃"}) {
+            LogEvent event = Log4jLogEvent.newBuilder()
+                    .setLoggerName("test")
+                    .setLevel(Level.INFO)
+                    .setMessage(new SimpleMessage(message))
+                    .build();
+            Collector collector = new Collector();
+            layout.encode(event, collector);
+            String expected = layout.toSerializable(event);
+            Assert.assertNotEquals(message.startsWith("name"), expected.contains(message));
+            Assert.assertArrayEquals(expected, expected.getBytes(StandardCharsets.UTF_8), collector.toByteArray());
+        }
+    }
+
+    @Test
+    public void testRewritePipeline() {
+        String[][] cases = {
+                {"\\d+", "<$0>"},
+                {"(a)(b)?", "$2$1"},
+                {"(?<word>[a-z]+)=", "${word}:"},
+                {"x*", "-"},
+                {"\\$", "\\$\\\\"},
+                {"(1)(2)(3)(4)(5)(6)(7)(8)(9)(0)", "$10$11"},
+                {"none", "x"},
+                {"a", "$9"},
+        };
+        String text = "ab a=1 word=23 $ 12345678901 €𠀁";
+        DesensitizedRegex[] regexes = new DesensitizedRegex[cases.length - 1];
+        String expected = text;
+        for (int i = 0; i < cases.length; i++) {
+            RegexReplacement replace = RegexReplacement.createRegexReplacement(Pattern.compile(cases[i][0]), cases[i][1]);
+            DesensitizedRegex regex = DesensitizedRegex.newBuilder().setRegex(cases[i][0]).setReplacement(cases[i][1]).build();
+            if (i == cases.length - 1) {
+                //分组不存在，配置时即报错
+                Assert.assertNull(regex);
+                break;
+            }
+            regexes[i] = regex;
+            String single = replace.format(text);
+            StringBuilder buffer = new StringBuilder(text);
+            Assert.assertEquals(!single.equals(text), new RewritePipeline(null, new DesensitizedRegex[]{regex}, null).rewrite(buffer));
+            Assert.assertEquals(cases[i][0], single, buffer.toString());
+            //log4j 的 Replace 按 String 替换，结果相同
+            buffer = new StringBuilder(text);
+            Assert.assertEquals(!single.equals(text), new RewritePipeline(replace, null, null).rewrite(buffer));
+            Assert.assertEquals(cases[i][0], single, buffer.toString());
+            expected = replace.format(expected);
+        }
+        StringBuilder buffer = new StringBuilder(text);
+        new RewritePipeline(null, regexes, null).rewrite(buffer);
+        Assert.assertEquals(expected, buffer.toString());
+    }
+
+    @Test
+    public void testLayoutReplaceAndEncode() {
+        DesensitizedReplacement desensitized = DesensitizedReplacement.newBuilder()
+                .setEnable(true)
+                .setFields(new DesensitizedField[]{
+                        DesensitizedField.newBuilder().setName("phone").setContent("num").setSkipHead(3).setSkipTail(4).build()
+                })
+                .build();
+        MyPatternLayout layout = MyPatternLayout.newBuilder()
+                .withConfiguration(new DefaultConfiguration())
+                .withPattern("%p %m%n")
+                .withCharset(StandardCharsets.UTF_8)
+                .withRegexReplacement(RegexReplacement.createRegexReplacement(Pattern.compile("mobile"), "phone"))
+                .withDesensitizedReplacement(desensitized)
+                .build();
+        MyPatternLayout regexLayout = MyPatternLayout.newBuilder()
+                .withConfiguration(new DefaultConfiguration())
+                .withPattern("%p %m%n")
+                .withCharset(StandardCharsets.UTF_8)
+                .withRegexes(DesensitizedRegex.newBuilder().setRegex("mobile").setReplacement("phone").build())
+                .withDesensitizedReplacement(desensitized)
+                .build();
+        String[][] cases = {
+                {"mobile=13812345678 €", "INFO phone=138****5678 €\n"},
+                {"phone={}", "INFO phone=138****5678\n"},
+                {"nothing here", "INFO nothing here\n"},
+        };
+        for (String[] c : cases) {
+            LogEvent event = Log4jLogEvent.newBuilder()
+                    .setLoggerName("test")
+                    .setLevel(Level.INFO)
+                    .setMessage(new ParameterizedMessage(c[0], "13812345678"))
+                    .build();
+            String expected = c[1].replace("\n", System.lineSeparator());
+            Assert.assertEquals(expected, layout.toSerializable(event));
+            Assert.assertEquals(expected, regexLayout.toSerializable(event));
+            Collector collector = new Collector();
+            layout.encode(event, collector);
+            Assert.assertArrayEquals(expected, expected.getBytes(StandardCharsets.UTF_8), collector.toByteArray());
+            collector = new Collector();
+            regexLayout.encode(event, collector);
+            Assert.assertArrayEquals(expected, expected.getBytes(StandardCharsets.UTF_8), collector.toByteArray());
+        }
+    }
+}